@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import co.elastic.logging.log4j2.EcsLayout;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.FileAppender;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.layout.template.json.JsonTemplateLayout;
+import org.apache.logging.log4j.layout.template.json.JsonTemplateLayout.EventTemplateAdditionalField;
+import org.apache.logging.log4j.message.ObjectMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the same events through log4j2's {@link EcsLayout} and {@link JsonTemplateLayout} with its ECS template
+ * to a buffered {@link FileAppender}.
+ * <p>
+ * Reports the throughput, the latency percentiles (including p0.99) and, via {@link BenchmarkRunner}, the bytes allocated per event.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Log4j2LayoutComparisonBenchmark {
+
+    public enum LayoutType {
+        ECS_LAYOUT,
+        JSON_TEMPLATE_LAYOUT
+    }
+
+    @Param
+    public LayoutType layoutType;
+
+    @Param
+    public EventType eventType;
+
+    private LoggerContext context;
+    private Logger logger;
+    private File logFile;
+    private Throwable exception;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = LogFiles.createLogFile("log4j2-" + layoutType);
+        context = new LoggerContext("benchmark");
+        Configuration configuration = new DefaultConfiguration();
+        FileAppender appender = FileAppender.newBuilder()
+                .setName("file")
+                .setConfiguration(configuration)
+                .setLayout(createLayout(configuration))
+                .withFileName(logFile.getAbsolutePath())
+                .withAppend(false)
+                .setBufferedIo(true)
+                .setImmediateFlush(false)
+                .build();
+        appender.start();
+        configuration.addAppender(appender);
+        LoggerConfig rootLogger = configuration.getRootLogger();
+        for (String appenderName : rootLogger.getAppenders().keySet()) {
+            rootLogger.removeAppender(appenderName);
+        }
+        rootLogger.addAppender(appender, null, null);
+        rootLogger.setLevel(Level.INFO);
+        context.start(configuration);
+        logger = context.getLogger(Fixtures.LOGGER_NAME);
+        // the state is thread-scoped, so the setup runs on the benchmark thread
+        ThreadContext.clearMap();
+        ThreadContext.putAll(Fixtures.mdc(eventType));
+        exception = Fixtures.exception(eventType);
+    }
+
+    private Layout<?> createLayout(Configuration configuration) {
+        switch (layoutType) {
+            case JSON_TEMPLATE_LAYOUT:
+                return JsonTemplateLayout.newBuilder()
+                        .setConfiguration(configuration)
+                        .setEventTemplateUri("classpath:EcsLayout.json")
+                        .setEventTemplateAdditionalFields(new EventTemplateAdditionalField[]{
+                                EventTemplateAdditionalField.newBuilder()
+                                        .setKey("service.name")
+                                        .setValue(Fixtures.SERVICE_NAME)
+                                        .build()
+                        })
+                        .build();
+            default:
+                return EcsLayout.newBuilder()
+                        .setConfiguration(configuration)
+                        .setServiceName(Fixtures.SERVICE_NAME)
+                        .build();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ThreadContext.clearMap();
+        context.stop();
+        LogFiles.delete(logFile);
+    }
+
+    @Benchmark
+    public void log() {
+        switch (eventType) {
+            case PARAMETERIZED:
+                logger.info(Fixtures.PARAMETERIZED_MESSAGE, Fixtures.PARAMETERS);
+                break;
+            case OBJECT:
+                logger.info(new ObjectMessage(Fixtures.OBJECT));
+                break;
+            default:
+                logger.info(Fixtures.PLAIN_MESSAGE, exception);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates the files the comparison benchmarks log to.
+ * <p>
+ * The files are created on a tmpfs ({@code /dev/shm}) if available so that the benchmarks measure the layouts and appenders
+ * rather than the disk.
+ * The directory can be changed with the {@code ecs.benchmarks.logDir} system property, for example
+ * {@code java -jar benchmarks.jar -jvmArgsAppend -Decs.benchmarks.logDir=/mnt/ramdisk ComparisonBenchmark}.
+ * </p>
+ */
+final class LogFiles {
+
+    private LogFiles() {
+    }
+
+    static File createLogFile(String prefix) throws IOException {
+        File logFile = File.createTempFile(prefix, ".json", getLogDir());
+        logFile.deleteOnExit();
+        return logFile;
+    }
+
+    static void delete(File logFile) {
+        if (logFile != null && !logFile.delete()) {
+            logFile.deleteOnExit();
+        }
+    }
+
+    private static File getLogDir() {
+        String logDir = System.getProperty("ecs.benchmarks.logDir");
+        if (logDir != null) {
+            return new File(logDir);
+        }
+        File tmpfs = new File("/dev/shm");
+        if (tmpfs.isDirectory() && tmpfs.canWrite()) {
+            return tmpfs;
+        }
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+}
@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.util.FileSize;
+import co.elastic.logging.logback.EcsEncoder;
+import net.logstash.logback.encoder.LogstashEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the same events through logback's {@link EcsEncoder} and {@link LogstashEncoder} to a buffered {@link FileAppender}.
+ * <p>
+ * Reports the throughput, the latency percentiles (including p0.99) and, via {@link BenchmarkRunner}, the bytes allocated per event.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogbackEncoderComparisonBenchmark {
+
+    public enum EncoderType {
+        ECS_ENCODER,
+        LOGSTASH_ENCODER
+    }
+
+    @Param
+    public EncoderType encoderType;
+
+    @Param
+    public EventType eventType;
+
+    private LoggerContext context;
+    private Logger logger;
+    private File logFile;
+    private Throwable exception;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = LogFiles.createLogFile("logback-" + encoderType);
+        context = new LoggerContext();
+        Encoder<ILoggingEvent> encoder = createEncoder();
+        encoder.setContext(context);
+        encoder.start();
+        FileAppender<ILoggingEvent> appender = new FileAppender<ILoggingEvent>();
+        appender.setContext(context);
+        appender.setFile(logFile.getAbsolutePath());
+        appender.setAppend(false);
+        appender.setBufferSize(new FileSize(8192));
+        appender.setImmediateFlush(false);
+        appender.setEncoder(encoder);
+        appender.start();
+        logger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        logger.detachAndStopAllAppenders();
+        logger.addAppender(appender);
+        logger.setLevel(Level.INFO);
+        logger = context.getLogger(Fixtures.LOGGER_NAME);
+        // the state is thread-scoped, so the setup runs on the benchmark thread
+        MDC.setContextMap(Fixtures.mdc(eventType));
+        exception = Fixtures.exception(eventType);
+    }
+
+    private Encoder<ILoggingEvent> createEncoder() {
+        switch (encoderType) {
+            case LOGSTASH_ENCODER:
+                LogstashEncoder logstashEncoder = new LogstashEncoder();
+                logstashEncoder.setCustomFields("{\"service.name\":\"" + Fixtures.SERVICE_NAME + "\"}");
+                return logstashEncoder;
+            default:
+                EcsEncoder ecsEncoder = new EcsEncoder();
+                ecsEncoder.setServiceName(Fixtures.SERVICE_NAME);
+                return ecsEncoder;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MDC.clear();
+        context.stop();
+        LogFiles.delete(logFile);
+    }
+
+    @Benchmark
+    public void log() {
+        switch (eventType) {
+            case PARAMETERIZED:
+                logger.info(Fixtures.PARAMETERIZED_MESSAGE, Fixtures.PARAMETERS);
+                break;
+            case OBJECT:
+                logger.info("{}", Fixtures.OBJECT);
+                break;
+            default:
+                logger.info(Fixtures.PLAIN_MESSAGE, exception);
+        }
+    }
+}
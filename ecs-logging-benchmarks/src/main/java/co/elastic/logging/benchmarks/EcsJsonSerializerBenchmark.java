@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import co.elastic.logging.EcsJsonSerializer;
+import co.elastic.logging.FieldWriter;
+import co.elastic.logging.FieldWriterPlan;
+import co.elastic.logging.JsonUtils;
+import co.elastic.logging.SerializationContext;
+import co.elastic.logging.StackTraceCache;
+import co.elastic.logging.StackTraceOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks the building blocks of all adapters in isolation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EcsJsonSerializerBenchmark {
+
+    private static final String ESCAPE_HEAVY_MESSAGE = "{\"json\":\"embedded in a message\"}\n\tC:\\path\\to\\file éè ☃";
+    private static final String NEW_LINE = System.getProperty("line.separator");
+    private static final Pattern NEW_LINE_PATTERN = Pattern.compile("\\r\\n|\\n|\\r");
+    private static final FieldWriter<String> EVENT_FIELDS = new FieldWriter<String>() {
+        @Override
+        public void writeTo(StringBuilder builder, String message, SerializationContext context) {
+            EcsJsonSerializer.serializeLogLevel(builder, "INFO", context);
+            EcsJsonSerializer.serializeLoggerName(builder, Fixtures.LOGGER_NAME, context);
+            EcsJsonSerializer.serializeFormattedMessage(builder, message, context);
+            EcsJsonSerializer.serializeThreadName(builder, Fixtures.THREAD_NAME, context);
+        }
+    };
+
+    private final StringBuilder builder = new StringBuilder(8192);
+    private final StackTraceCache stackTraceCache = new StackTraceCache(16);
+    private char[] staticFields;
+    private FieldWriterPlan<String> nestedPlan;
+
+    @Setup
+    public void setUp() {
+        staticFields = EcsJsonSerializer.compileStaticFields(Fixtures.SERVICE_NAME, "1.0.0", "production", "node-1", null, null);
+        nestedPlan = FieldWriterPlan.<String>builder()
+                .setNestedOutput(true)
+                .add(EVENT_FIELDS)
+                .addStaticFields(staticFields)
+                .build();
+    }
+
+    @Benchmark
+    public StringBuilder quoteAsStringAscii() {
+        builder.setLength(0);
+        JsonUtils.quoteAsString(Fixtures.PLAIN_MESSAGE, builder);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder quoteAsStringEscapeHeavy() {
+        builder.setLength(0);
+        JsonUtils.quoteAsString(ESCAPE_HEAVY_MESSAGE, builder);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder serializeTimestamp() {
+        builder.setLength(0);
+        EcsJsonSerializer.serializeObjectStart(builder, Fixtures.TIMESTAMP);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder serializeMdc() {
+        builder.setLength(0);
+        EcsJsonSerializer.serializeMDC(builder, Fixtures.MDC);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder serializeException() {
+        builder.setLength(0);
+        EcsJsonSerializer.serializeException(builder, Fixtures.EXCEPTION, false);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder serializeExceptionCached() {
+        builder.setLength(0);
+        EcsJsonSerializer.serializeException(builder, Fixtures.EXCEPTION, false, stackTraceCache, StackTraceOptions.DEFAULT);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder serializeEvent() {
+        builder.setLength(0);
+        EcsJsonSerializer.serializeObjectStart(builder, Fixtures.TIMESTAMP);
+        EcsJsonSerializer.serializeLogLevel(builder, "INFO");
+        EcsJsonSerializer.serializeFormattedMessage(builder, Fixtures.PLAIN_MESSAGE);
+        EcsJsonSerializer.serializeStaticFields(builder, staticFields);
+        EcsJsonSerializer.serializeThreadName(builder, Fixtures.THREAD_NAME);
+        EcsJsonSerializer.serializeLoggerName(builder, Fixtures.LOGGER_NAME);
+        EcsJsonSerializer.serializeObjectEnd(builder);
+        return builder;
+    }
+
+    @Benchmark
+    public StringBuilder serializeEventNested() {
+        builder.setLength(0);
+        EcsJsonSerializer.serializeObjectStart(builder, Fixtures.TIMESTAMP);
+        nestedPlan.writeEvent(builder, 0, Fixtures.PLAIN_MESSAGE);
+        return builder;
+    }
+
+    /**
+     * Splits a text stack trace into array elements with a single-pass scanner that escapes while it looks for new lines.
+     */
+    @Benchmark
+    public StringBuilder serializeTextStackTraceAsArray() {
+        builder.setLength(0);
+        EcsJsonSerializer.serializeException(builder, "java.lang.IllegalStateException", "Failed to process order order-4711",
+                Fixtures.TEXT_STACK_TRACE, true);
+        return builder;
+    }
+
+    /**
+     * The baseline for {@link #serializeTextStackTraceAsArray()}:
+     * splits a text stack trace into array elements with a regex and escapes each line in a second pass.
+     */
+    @Benchmark
+    public StringBuilder serializeTextStackTraceAsArrayRegex() {
+        builder.setLength(0);
+        builder.append("\"error.type\":\"");
+        JsonUtils.quoteAsString("java.lang.IllegalStateException", builder);
+        builder.append("\",\"error.message\":\"");
+        JsonUtils.quoteAsString("Failed to process order order-4711", builder);
+        builder.append("\",\"error.stack_trace\":[");
+        formatStackTraceAsArrayRegex(builder, Fixtures.TEXT_STACK_TRACE);
+        builder.append("]");
+        return builder;
+    }
+
+    private static void formatStackTraceAsArrayRegex(StringBuilder builder, CharSequence stackTrace) {
+        builder.append(NEW_LINE);
+        Matcher matcher = NEW_LINE_PATTERN.matcher(stackTrace);
+        if (matcher.find()) {
+            int index = 0;
+            do {
+                int start = matcher.start();
+                int end = matcher.end();
+                if (index == 0 && index == start && start == end) {
+                    continue;
+                }
+                appendStackTraceLine(builder, stackTrace, index, start);
+                builder.append(',');
+                builder.append(NEW_LINE);
+                index = end;
+            } while (matcher.find());
+
+            int length = stackTrace.length();
+            if (index < length) {
+                appendStackTraceLine(builder, stackTrace, index, length);
+            } else {
+                EcsJsonSerializer.removeIfEndsWith(builder, NEW_LINE);
+                EcsJsonSerializer.removeIfEndsWith(builder, ",");
+            }
+        } else {
+            appendStackTraceLine(builder, stackTrace, 0, stackTrace.length());
+        }
+    }
+
+    private static void appendStackTraceLine(StringBuilder builder, CharSequence stackTrace, int start, int end) {
+        builder.append("\t\"");
+        JsonUtils.quoteAsString(stackTrace, start, end, builder);
+        builder.append("\"");
+    }
+}
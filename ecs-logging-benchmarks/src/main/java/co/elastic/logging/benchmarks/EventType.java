@@ -0,0 +1,52 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+/**
+ * The kinds of events each adapter benchmark is run with.
+ */
+public enum EventType {
+    /**
+     * A constant message.
+     */
+    PLAIN,
+    /**
+     * A message with placeholders that are resolved by the logging framework.
+     */
+    PARAMETERIZED,
+    /**
+     * A short message with {@link Fixtures#MDC_SIZE} MDC entries.
+     */
+    MDC,
+    /**
+     * A message with an exception that has a cause and a realistic stack depth.
+     */
+    EXCEPTION,
+    /**
+     * A structured message, such as log4j2's {@code ObjectMessage}.
+     * Frameworks without structured messages log an object that is rendered via {@link Object#toString()}.
+     */
+    OBJECT
+}
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The data the events of all adapter benchmarks are made of, so that the results are comparable across adapters.
+ */
+final class Fixtures {
+
+    static final String LOGGER_NAME = "co.elastic.logging.benchmarks.OrderService";
+    static final String THREAD_NAME = "http-nio-8080-exec-1";
+    static final String SERVICE_NAME = "benchmark-service";
+    static final String PLAIN_MESSAGE = "Processed order for customer, sending confirmation email to the customer";
+    static final String PARAMETERIZED_MESSAGE = "Processed order {} for customer {} in {} ms";
+    /**
+     * {@link #PARAMETERIZED_MESSAGE} in the {@link java.text.MessageFormat} style of JUL
+     */
+    static final String INDEXED_PARAMETERIZED_MESSAGE = "Processed order {0} for customer {1} in {2} ms";
+    static final Object[] PARAMETERS = {"order-4711", "customer-0815", 42};
+    static final String FORMATTED_MESSAGE = "Processed order order-4711 for customer customer-0815 in 42 ms";
+    static final int MDC_SIZE = 16;
+    static final Map<String, String> MDC = createMdc();
+    static final Map<String, Object> OBJECT = createObject();
+    static final Throwable EXCEPTION = createException();
+    static final int TEXT_STACK_TRACE_FRAMES = 200;
+    /**
+     * A stack trace as it's rendered by a pattern, such as the {@code exceptionPattern} of log4j2 or the {@code throwableConverter} of logback
+     */
+    static final String TEXT_STACK_TRACE = createTextStackTrace();
+    static final long TIMESTAMP = 1_700_000_000_123L;
+
+    private Fixtures() {
+    }
+
+    private static Map<String, String> createMdc() {
+        Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put("trace.id", "0af7651916cd43dd8448eb211c80319c");
+        mdc.put("transaction.id", "b7ad6b7169203331");
+        mdc.put("span.id", "00f067aa0ba902b7");
+        for (int i = mdc.size(); i < MDC_SIZE; i++) {
+            mdc.put("labels.key" + i, "value with \"quotes\" and a\ttab " + i);
+        }
+        return Collections.unmodifiableMap(mdc);
+    }
+
+    private static Map<String, Object> createObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("message", FORMATTED_MESSAGE);
+        object.put("order.id", "order-4711");
+        object.put("order.total", 99.95);
+        object.put("order.items", 3);
+        object.put("customer.vip", true);
+        return Collections.unmodifiableMap(object);
+    }
+
+    private static Throwable createException() {
+        try {
+            recurse(30);
+            throw new AssertionError();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static String createTextStackTrace() {
+        String lineSeparator = System.getProperty("line.separator");
+        StringBuilder stackTrace = new StringBuilder()
+                .append("java.lang.IllegalStateException: Failed to process order order-4711").append(lineSeparator);
+        for (int i = 0; i < TEXT_STACK_TRACE_FRAMES; i++) {
+            stackTrace.append("\tat co.elastic.logging.benchmarks.OrderService.process(OrderService.java:").append(i + 1).append(')')
+                    .append(lineSeparator);
+        }
+        return stackTrace.toString();
+    }
+
+    private static void recurse(int depth) {
+        if (depth == 0) {
+            try {
+                Integer.parseInt("not a number");
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Failed to process order order-4711", e);
+            }
+        }
+        recurse(depth - 1);
+    }
+
+    static Map<String, String> mdc(EventType eventType) {
+        return eventType == EventType.MDC ? MDC : Collections.<String, String>emptyMap();
+    }
+
+    static Throwable exception(EventType eventType) {
+        return eventType == EventType.EXCEPTION ? EXCEPTION : null;
+    }
+}
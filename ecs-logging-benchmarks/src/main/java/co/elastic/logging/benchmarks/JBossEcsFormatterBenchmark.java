@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import co.elastic.logging.jboss.logmanager.EcsFormatter;
+import org.jboss.logmanager.ExtLogRecord;
+import org.jboss.logmanager.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JBossEcsFormatterBenchmark {
+
+    @Param
+    public EventType eventType;
+
+    private EcsFormatter formatter;
+    private ExtLogRecord record;
+
+    @Setup
+    public void setUp() {
+        formatter = new EcsFormatter();
+        formatter.setServiceName(Fixtures.SERVICE_NAME);
+        switch (eventType) {
+            case PARAMETERIZED:
+                record = new ExtLogRecord(Level.INFO, Fixtures.INDEXED_PARAMETERIZED_MESSAGE, ExtLogRecord.FormatStyle.MESSAGE_FORMAT, Fixtures.LOGGER_NAME);
+                record.setParameters(Fixtures.PARAMETERS);
+                break;
+            case OBJECT:
+                record = new ExtLogRecord(Level.INFO, "{0}", ExtLogRecord.FormatStyle.MESSAGE_FORMAT, Fixtures.LOGGER_NAME);
+                record.setParameters(new Object[]{Fixtures.OBJECT});
+                break;
+            default:
+                record = new ExtLogRecord(Level.INFO, Fixtures.PLAIN_MESSAGE, ExtLogRecord.FormatStyle.NO_FORMAT, Fixtures.LOGGER_NAME);
+                record.setThrown(Fixtures.exception(eventType));
+        }
+        for (Map.Entry<String, String> entry : Fixtures.mdc(eventType).entrySet()) {
+            record.putMdc(entry.getKey(), entry.getValue());
+        }
+        record.setLoggerName(Fixtures.LOGGER_NAME);
+        record.setThreadName(Fixtures.THREAD_NAME);
+        record.setMillis(Fixtures.TIMESTAMP);
+    }
+
+    @Benchmark
+    public String format() {
+        return formatter.format(record);
+    }
+}
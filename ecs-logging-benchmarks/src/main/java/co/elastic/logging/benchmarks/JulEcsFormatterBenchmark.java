@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import co.elastic.logging.jul.EcsFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JulEcsFormatterBenchmark {
+
+    @Param
+    public EventType eventType;
+
+    private EcsFormatter formatter;
+    private LogRecord record;
+
+    @Setup
+    public void setUp() {
+        final Map<String, String> mdc = Fixtures.mdc(eventType);
+        // JUL doesn't have an MDC, the APM agent provides it by overriding getMdcEntries
+        formatter = new EcsFormatter() {
+            @Override
+            protected Map<String, String> getMdcEntries() {
+                return mdc;
+            }
+        };
+        formatter.setServiceName(Fixtures.SERVICE_NAME);
+        switch (eventType) {
+            case PARAMETERIZED:
+                record = new LogRecord(Level.INFO, Fixtures.INDEXED_PARAMETERIZED_MESSAGE);
+                record.setParameters(Fixtures.PARAMETERS);
+                break;
+            case OBJECT:
+                record = new LogRecord(Level.INFO, "{0}");
+                record.setParameters(new Object[]{Fixtures.OBJECT});
+                break;
+            default:
+                record = new LogRecord(Level.INFO, Fixtures.PLAIN_MESSAGE);
+                record.setThrown(Fixtures.exception(eventType));
+        }
+        record.setLoggerName(Fixtures.LOGGER_NAME);
+        record.setMillis(Fixtures.TIMESTAMP);
+    }
+
+    @Benchmark
+    public String format() {
+        return formatter.format(record);
+    }
+}
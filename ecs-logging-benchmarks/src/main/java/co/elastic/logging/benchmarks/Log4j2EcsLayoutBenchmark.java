@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import co.elastic.logging.log4j2.EcsLayout;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.ByteBufferDestinationHelper;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ObjectMessage;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Log4j2EcsLayoutBenchmark {
+
+    @Param
+    public EventType eventType;
+
+    private EcsLayout layout;
+    private LogEvent event;
+    private final NullDestination destination = new NullDestination();
+
+    @Setup
+    public void setUp() {
+        layout = EcsLayout.newBuilder()
+                .setConfiguration(new DefaultConfiguration())
+                .setServiceName(Fixtures.SERVICE_NAME)
+                .build();
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        for (Map.Entry<String, String> entry : Fixtures.mdc(eventType).entrySet()) {
+            contextData.putValue(entry.getKey(), entry.getValue());
+        }
+        event = Log4jLogEvent.newBuilder()
+                .setLoggerName(Fixtures.LOGGER_NAME)
+                .setThreadName(Fixtures.THREAD_NAME)
+                .setLevel(Level.INFO)
+                .setTimeMillis(Fixtures.TIMESTAMP)
+                .setMessage(createMessage())
+                .setContextData(contextData)
+                .setThrown(Fixtures.exception(eventType))
+                .build();
+    }
+
+    private Message createMessage() {
+        switch (eventType) {
+            case PARAMETERIZED:
+                return new ParameterizedMessage(Fixtures.PARAMETERIZED_MESSAGE, Fixtures.PARAMETERS);
+            case OBJECT:
+                return new ObjectMessage(Fixtures.OBJECT);
+            default:
+                return new SimpleMessage(Fixtures.PLAIN_MESSAGE);
+        }
+    }
+
+    @Benchmark
+    public String toSerializable() {
+        return layout.toSerializable(event);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        layout.encode(event, destination);
+        return destination.getByteBuffer();
+    }
+
+    /**
+     * Discards the encoded bytes, like an appender whose I/O is infinitely fast.
+     */
+    private static class NullDestination implements ByteBufferDestination {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public ByteBuffer drain(ByteBuffer buf) {
+            buf.clear();
+            return buf;
+        }
+
+        @Override
+        public void writeBytes(ByteBuffer data) {
+            ByteBufferDestinationHelper.writeToUnsynchronized(data, this);
+        }
+
+        @Override
+        public void writeBytes(byte[] data, int offset, int length) {
+            ByteBufferDestinationHelper.writeToUnsynchronized(data, offset, length, this);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import co.elastic.logging.log4j.EcsLayout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Log4jEcsLayoutBenchmark {
+
+    @Param
+    public EventType eventType;
+
+    private EcsLayout layout;
+    private LoggingEvent event;
+
+    @Setup
+    public void setUp() {
+        layout = new EcsLayout();
+        layout.setServiceName(Fixtures.SERVICE_NAME);
+        layout.activateOptions();
+        Throwable exception = Fixtures.exception(eventType);
+        event = new LoggingEvent(Logger.class.getName(), Logger.getLogger(Fixtures.LOGGER_NAME), Fixtures.TIMESTAMP, Level.INFO,
+                createMessage(), Fixtures.THREAD_NAME, exception != null ? new ThrowableInformation(exception) : null,
+                null, null, Fixtures.mdc(eventType));
+    }
+
+    private Object createMessage() {
+        switch (eventType) {
+            case PARAMETERIZED:
+                // log4j 1.x doesn't support placeholders, applications typically format the message themselves
+                return new Object() {
+                    @Override
+                    public String toString() {
+                        return MessageFormat.format(Fixtures.INDEXED_PARAMETERIZED_MESSAGE, Fixtures.PARAMETERS);
+                    }
+                };
+            case OBJECT:
+                return Fixtures.OBJECT;
+            default:
+                return Fixtures.PLAIN_MESSAGE;
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        return layout.format(event);
+    }
+}
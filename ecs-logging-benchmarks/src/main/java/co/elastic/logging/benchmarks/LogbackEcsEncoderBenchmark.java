@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.elastic.logging.logback.EcsEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogbackEcsEncoderBenchmark {
+
+    @Param
+    public EventType eventType;
+
+    private EcsEncoder encoder;
+    private LoggingEvent event;
+
+    @Setup
+    public void setUp() {
+        LoggerContext context = new LoggerContext();
+        encoder = new EcsEncoder();
+        encoder.setContext(context);
+        encoder.setServiceName(Fixtures.SERVICE_NAME);
+        encoder.start();
+        Logger logger = context.getLogger(Fixtures.LOGGER_NAME);
+        switch (eventType) {
+            case PARAMETERIZED:
+                event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, Fixtures.PARAMETERIZED_MESSAGE, null, Fixtures.PARAMETERS);
+                break;
+            case OBJECT:
+                event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "{}", null, new Object[]{Fixtures.OBJECT});
+                break;
+            default:
+                event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, Fixtures.PLAIN_MESSAGE, Fixtures.exception(eventType), null);
+        }
+        event.setThreadName(Fixtures.THREAD_NAME);
+        event.setTimeStamp(Fixtures.TIMESTAMP);
+        event.setMDCPropertyMap(Fixtures.mdc(eventType));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(event);
+    }
+}
@@ -0,0 +1,4 @@
+package co.elastic.logging.benchmarks.jmh_generated;
+public class EcsJsonSerializerBenchmark_jmhType extends EcsJsonSerializerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package co.elastic.logging.benchmarks.jmh_generated;
+public class JBossEcsFormatterBenchmark_jmhType extends JBossEcsFormatterBenchmark_jmhType_B3 {
+}
+
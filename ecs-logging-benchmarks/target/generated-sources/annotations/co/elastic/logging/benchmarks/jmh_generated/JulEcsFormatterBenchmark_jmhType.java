@@ -0,0 +1,4 @@
+package co.elastic.logging.benchmarks.jmh_generated;
+public class JulEcsFormatterBenchmark_jmhType extends JulEcsFormatterBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package co.elastic.logging.benchmarks.jmh_generated;
+public class Log4j2EcsLayoutBenchmark_jmhType extends Log4j2EcsLayoutBenchmark_jmhType_B3 {
+}
+
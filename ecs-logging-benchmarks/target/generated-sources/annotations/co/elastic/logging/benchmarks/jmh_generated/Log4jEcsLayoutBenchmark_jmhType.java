@@ -0,0 +1,4 @@
+package co.elastic.logging.benchmarks.jmh_generated;
+public class Log4jEcsLayoutBenchmark_jmhType extends Log4jEcsLayoutBenchmark_jmhType_B3 {
+}
+
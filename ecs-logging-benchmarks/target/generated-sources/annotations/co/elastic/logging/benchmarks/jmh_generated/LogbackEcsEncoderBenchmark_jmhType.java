@@ -0,0 +1,4 @@
+package co.elastic.logging.benchmarks.jmh_generated;
+public class LogbackEcsEncoderBenchmark_jmhType extends LogbackEcsEncoderBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands elements from application threads over to a background thread that processes them in batches.
+ * <p>
+ * Application threads {@linkplain #enqueue(Object, boolean) enqueue} elements into a lock-free {@link MpscRingBuffer}.
+ * The background thread drains up to {@code maxBatchSize} elements at a time and passes them to {@link #writeBatch(Object[], int)},
+ * so that a whole batch can be written with a single call.
+ * When there's nothing to drain, it waits according to the {@link WaitStrategy}.
+ * </p>
+ *
+ * @param <E> the type of the elements
+ */
+public abstract class AsyncBatchWriter<E> {
+
+    private final MpscRingBuffer<E> ringBuffer;
+    private final E[] batch;
+    private final WaitStrategy waitStrategy;
+    private final Thread worker;
+    private volatile boolean running;
+    private volatile boolean workerParked;
+
+    /**
+     * @param elementType  the type of the elements, used to create the array that is passed to {@link #writeBatch(Object[], int)}
+     * @param threadName   the name of the background thread
+     * @param bufferSize   the number of elements the ring buffer can hold, rounded up to the next power of two
+     * @param maxBatchSize the maximum number of elements passed to {@link #writeBatch(Object[], int)}
+     * @param waitStrategy how the background thread waits for new elements
+     */
+    @SuppressWarnings("unchecked")
+    protected AsyncBatchWriter(Class<E> elementType, String threadName, int bufferSize, int maxBatchSize, WaitStrategy waitStrategy) {
+        this.ringBuffer = new MpscRingBuffer<E>(bufferSize);
+        this.batch = (E[]) Array.newInstance(elementType, Math.max(1, maxBatchSize));
+        this.waitStrategy = waitStrategy;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, threadName);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    /**
+     * Adds an element to the buffer.
+     * <p>
+     * If the buffer is full and {@code block} is {@code true}, the calling thread backs off until there's space.
+     * Regardless of the configured {@link WaitStrategy}, producers spin, yield and then sleep
+     * as the background thread doesn't signal them, and spinning producers could starve it if there are more threads than cores.
+     * </p>
+     *
+     * @param block whether to wait for space if the buffer is full
+     * @return {@code false} if the element has not been added, because the buffer is full and {@code block} is {@code false},
+     * or because the writer is not running
+     */
+    public boolean enqueue(E element, boolean block) {
+        if (!running) {
+            return false;
+        }
+        boolean added = ringBuffer.offer(element);
+        for (int idleCount = 0; !added && block && running; idleCount++) {
+            signalWorker();
+            WaitStrategy.SLEEPING.idle(idleCount);
+            added = ringBuffer.offer(element);
+        }
+        if (added) {
+            signalWorker();
+        }
+        return added;
+    }
+
+    private void signalWorker() {
+        if (waitStrategy.requiresSignal() && workerParked) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Stops the background thread after it has written the buffered elements.
+     *
+     * @param maxFlushTimeMillis the maximum time to wait for the buffered elements to be written
+     * @return {@code false} if not all elements could be written in time
+     */
+    public boolean stop(long maxFlushTimeMillis) {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(maxFlushTimeMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !worker.isAlive();
+    }
+
+    /**
+     * @return the approximate number of elements that have not been written yet
+     */
+    public int size() {
+        return ringBuffer.size();
+    }
+
+    private void drainLoop() {
+        int idleCount = 0;
+        while (true) {
+            int size = ringBuffer.drainTo(batch, batch.length);
+            if (size > 0) {
+                try {
+                    writeBatch(batch, size);
+                } catch (Exception e) {
+                    onError("Failed to write " + size + " events.", e);
+                } finally {
+                    for (int i = 0; i < size; i++) {
+                        batch[i] = null;
+                    }
+                }
+                idleCount = 0;
+            } else if (!running) {
+                // producers that have been enqueueing while stopping may still publish, so drain once more
+                if (ringBuffer.isEmpty()) {
+                    return;
+                }
+            } else if (waitStrategy.requiresSignal()) {
+                workerParked = true;
+                if (running && ringBuffer.isEmpty()) {
+                    waitStrategy.idle(idleCount++);
+                }
+                workerParked = false;
+            } else {
+                waitStrategy.idle(idleCount++);
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of elements. Called on the background thread.
+     * The elements must not be referenced after this method returns.
+     *
+     * @param batch the elements, only the ones from {@code 0} to {@code size} are valid
+     * @param size  the number of elements in the batch
+     */
+    protected abstract void writeBatch(E[] batch, int size) throws Exception;
+
+    /**
+     * Reports an error that occurred on the background thread, for example to the status logger of the logging framework.
+     */
+    protected abstract void onError(String message, Exception e);
+}
@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.Locale;
+
+/**
+ * What an asynchronous appender does with an event when its buffer is full.
+ */
+public enum DropPolicy {
+
+    /**
+     * Blocks the logging thread until there's space in the buffer, no events are lost.
+     */
+    BLOCK,
+    /**
+     * Drops the event if the buffer is full.
+     */
+    DROP,
+    /**
+     * Drops {@code TRACE}, {@code DEBUG} and {@code INFO} events if the buffer is full and blocks for more severe events.
+     */
+    DROP_BELOW_WARN;
+
+    /**
+     * @param belowWarn whether the level of the event is less severe than {@code WARN}
+     * @return whether the event may be dropped if the buffer is full
+     */
+    public boolean isDroppable(boolean belowWarn) {
+        return this == DROP || this == DROP_BELOW_WARN && belowWarn;
+    }
+
+    /**
+     * Parses the policy in a case-insensitive way.
+     *
+     * @param policy {@code block}, {@code drop} or {@code drop_below_warn}, {@code null} or empty resolve to {@link #BLOCK}
+     * @return the parsed policy
+     * @throws IllegalArgumentException if the value is unknown
+     */
+    public static DropPolicy parse(String policy) {
+        if (policy == null || policy.trim().isEmpty()) {
+            return BLOCK;
+        }
+        try {
+            return valueOf(policy.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Could not parse drop policy " + policy + ", expected one of block, drop or drop_below_warn");
+        }
+    }
+}
@@ -26,34 +26,41 @@ package co.elastic.logging;
 
 import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class EcsJsonSerializer {
 
     private static final TimestampSerializer TIMESTAMP_SERIALIZER = new TimestampSerializer();
-    private static final ThreadLocal<StringBuilder> messageStringBuilder = new ThreadLocal<StringBuilder>();
+    private static final String EVENT_TRUNCATED_KEY = "\"event.truncated\":";
     private static final String NEW_LINE = System.getProperty("line.separator");
-    private static final Pattern NEW_LINE_PATTERN = Pattern.compile("\\r\\n|\\n|\\r");
+    private static final String ESCAPED_NEW_LINE = escape(NEW_LINE);
+    private static final String CAUSE_CAPTION = "Caused by: ";
+    private static final String SUPPRESSED_CAPTION = "Suppressed: ";
+    private static final Throwable[] NO_THROWABLES = new Throwable[0];
+    // Throwable#getSuppressed is only available as of Java 7
+    private static final Method GET_SUPPRESSED = findGetSuppressedMethod();
+    private static final int MAX_CUSTOM_STACK_TRACE_CLASSES = 1024;
+    // whether a Throwable class overrides printStackTrace(PrintWriter)
+    private static final ConcurrentMap<Class<?>, Boolean> CUSTOM_STACK_TRACE_CLASSES = new ConcurrentHashMap<Class<?>, Boolean>();
     private static final int INITIAL_BUFFER_CAPACITY = 1024;
     static final int MAX_BUFFER_CAPACITY = 8192;
+    private static volatile StringBuilderProvider messageStringBuilderProvider = StringBuilderProvider.threadLocal(MAX_BUFFER_CAPACITY);
+    // large enough for an event with a typical stack trace
+    static final int MAX_EVENT_BUFFER_CAPACITY = 16 * 1024;
+    private static final StringBuilderProvider EVENT_STRING_BUILDER_PROVIDER = StringBuilderProvider.threadLocal(MAX_EVENT_BUFFER_CAPACITY);
 
-    // Those keys are not expected to be used in MDC, thus we filter-out those keys to prevent major issues
-    // when they are present as top-level MDC keys.
-    private static final Set<String> RESERVED_KEYS =  new HashSet<String>(Arrays.asList(
-            "@timestamp",
-            "message",
-            "log.logger",
-            "log.level",
-            "event.dataset",
-            "process.thread.name",
-            "process.thread.id",
-            "ecs.version"));
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        JsonUtils.quoteAsString(s, sb);
+        return sb.toString();
+    }
 
     public static CharSequence toNullSafeString(final CharSequence s) {
         return s == null ? "" : s;
@@ -66,6 +73,20 @@ public class EcsJsonSerializer {
         builder.append("\",");
     }
 
+    /**
+     * Starts the JSON object with a {@code @timestamp} of the provided precision.
+     *
+     * @param epochSecond  the seconds since epoch
+     * @param nanoOfSecond the nanoseconds within the second, from 0 to 999,999,999
+     * @param precision    the number of fraction digits to serialize
+     */
+    public static void serializeObjectStart(StringBuilder builder, long epochSecond, int nanoOfSecond, TimestampPrecision precision) {
+        builder.append('{');
+        builder.append("\"@timestamp\":\"");
+        TIMESTAMP_SERIALIZER.serializeEpochTimestampAsIsoDateTime(builder, epochSecond, nanoOfSecond, precision.getFractionDigits());
+        builder.append("\",");
+    }
+
     public static void serializeEcsVersion(StringBuilder builder) {
         builder.append("\"ecs.version\": \"1.2.0\",");
     }
@@ -76,24 +97,54 @@ public class EcsJsonSerializer {
         builder.append('\n');
     }
 
+    /**
+     * Ends the JSON object and closes the objects that are still open in nested output mode.
+     * If any field of the event has been truncated, {@code "event.truncated":true} is added.
+     *
+     * @param context the context the fields of the event have been written with
+     * @see SerializationContext#isTruncated()
+     */
+    public static void serializeObjectEnd(StringBuilder builder, SerializationContext context) {
+        if (context.isTruncated()) {
+            context.writeKey(builder, EVENT_TRUNCATED_KEY);
+            builder.append("true,");
+        }
+        context.closeObjects(builder);
+        serializeObjectEnd(builder);
+    }
+
     public static void serializeLoggerName(StringBuilder builder, String loggerName) {
+        serializeLoggerName(builder, loggerName, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeLoggerName(StringBuilder builder, String loggerName, SerializationContext context) {
         if (loggerName != null) {
-            builder.append("\"log.logger\":\"");
+            context.writeKey(builder, "\"log.logger\":");
+            builder.append('"');
             JsonUtils.quoteAsString(loggerName, builder);
             builder.append("\",");
         }
     }
 
     public static void serializeThreadName(StringBuilder builder, String threadName) {
+        serializeThreadName(builder, threadName, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeThreadName(StringBuilder builder, String threadName, SerializationContext context) {
         if (threadName != null) {
-            builder.append("\"process.thread.name\":\"");
+            context.writeKey(builder, "\"process.thread.name\":");
+            builder.append('"');
             JsonUtils.quoteAsString(threadName, builder);
             builder.append("\",");
         }
     }
 
     public static void serializeThreadId(StringBuilder builder, long threadId) {
-        builder.append("\"process.thread.id\":");
+        serializeThreadId(builder, threadId, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeThreadId(StringBuilder builder, long threadId, SerializationContext context) {
+        context.writeKey(builder, "\"process.thread.id\":");
         builder.append(threadId);
         builder.append(",");
     }
@@ -104,6 +155,30 @@ public class EcsJsonSerializer {
         builder.append("\",");
     }
 
+    /**
+     * Cuts the message to the {@link EventSizeLimits#getMaxMessageLength() maximum length} of the context.
+     */
+    public static void serializeFormattedMessage(StringBuilder builder, String message, SerializationContext context) {
+        context.writeKey(builder, "\"message\":");
+        builder.append('"');
+        serializeLimitedString(builder, message, context.getLimits().getMaxMessageLength(), context);
+        builder.append("\",");
+    }
+
+    /**
+     * JSON-escapes as much of the value as fits into {@code maxBytes} and into the space that's left for the current field,
+     * and marks the event as truncated if the value doesn't fit.
+     *
+     * @param maxBytes the maximum UTF-8 size of the escaped value
+     * @see JsonUtils#quoteAsString(CharSequence, StringBuilder, int)
+     * @see SerializationContext#isTruncated()
+     */
+    public static void serializeLimitedString(StringBuilder builder, CharSequence value, int maxBytes, SerializationContext context) {
+        if (JsonUtils.quoteAsString(value, builder, Math.max(Math.min(maxBytes, context.getFieldBudget(builder)), 0))) {
+            context.markTruncated();
+        }
+    }
+
     public static void serializeServiceName(StringBuilder builder, String serviceName) {
         if (serviceName != null) {
             builder.append("\"service.name\":\"");
@@ -145,7 +220,11 @@ public class EcsJsonSerializer {
     }
 
     public static void serializeLogLevel(StringBuilder builder, String level) {
-        builder.append("\"log.level\":");
+        serializeLogLevel(builder, level, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeLogLevel(StringBuilder builder, String level, SerializationContext context) {
+        context.writeKey(builder, "\"log.level\":");
         // add padding so that all levels line up
         //  WARN
         // ERROR
@@ -158,15 +237,25 @@ public class EcsJsonSerializer {
     }
 
     public static void serializeTag(StringBuilder builder, String tag) {
+        serializeTag(builder, tag, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeTag(StringBuilder builder, String tag, SerializationContext context) {
         if (tag != null) {
-            builder.append("\"tags\":[\"");
+            context.writeKey(builder, "\"tags\":");
+            builder.append("[\"");
             JsonUtils.quoteAsString(tag, builder);
             builder.append("\"],");
         }
     }
 
     public static void serializeTagStart(StringBuilder builder) {
-        builder.append("\"tags\":[");
+        serializeTagStart(builder, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeTagStart(StringBuilder builder, SerializationContext context) {
+        context.writeKey(builder, "\"tags\":");
+        builder.append('[');
     }
 
     public static void serializeSingleTag(StringBuilder builder, String tag) {
@@ -183,14 +272,29 @@ public class EcsJsonSerializer {
     }
 
     public static void serializeOrigin(StringBuilder builder, StackTraceElement stackTraceElement) {
+        serializeOrigin(builder, stackTraceElement, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeOrigin(StringBuilder builder, StackTraceElement stackTraceElement, SerializationContext context) {
         if (stackTraceElement != null) {
-            serializeOrigin(builder, stackTraceElement.getFileName(), stackTraceElement.getMethodName(), stackTraceElement.getLineNumber());
+            serializeOrigin(builder, stackTraceElement.getFileName(), stackTraceElement.getMethodName(), stackTraceElement.getLineNumber(), context);
         }
     }
 
     public static void serializeOrigin(StringBuilder builder, String fileName, String methodName, int lineNumber) {
-        builder.append("\"log\":{");
-        builder.append("\"origin\":{");
+        serializeOrigin(builder, fileName, methodName, lineNumber, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeOrigin(StringBuilder builder, String fileName, String methodName, int lineNumber, SerializationContext context) {
+        boolean nestedOutput = context.isNestedOutput();
+        if (nestedOutput) {
+            // so that it ends up in the same log object as log.level and log.logger
+            context.writeKey(builder, "\"log.origin\":");
+        } else {
+            builder.append("\"log\":{");
+            builder.append("\"origin\":");
+        }
+        builder.append('{');
         builder.append("\"file\":{");
         builder.append("\"name\":\"");
         JsonUtils.quoteAsString(fileName, builder);
@@ -205,143 +309,613 @@ public class EcsJsonSerializer {
         JsonUtils.quoteAsString(methodName, builder);
         builder.append('"');
         builder.append("}");
-        builder.append("},");
+        builder.append(nestedOutput ? "," : "},");
     }
 
     public static void serializeMDC(StringBuilder builder, Map<String, ?> properties) {
+        serializeMDC(builder, properties, false);
+    }
+
+    /**
+     * @param typedMdcValues whether numbers and booleans should be serialized as JSON numbers and booleans instead of strings
+     */
+    public static void serializeMDC(StringBuilder builder, Map<String, ?> properties, boolean typedMdcValues) {
+        serializeMDC(builder, properties, typedMdcValues, SerializationContext.DEFAULT);
+    }
+
+    /**
+     * @param typedMdcValues whether numbers and booleans should be serialized as JSON numbers and booleans instead of strings
+     * @param context        string values are cut to {@link EventSizeLimits#getMaxMdcValueLength()} of the context's limits
+     */
+    public static void serializeMDC(StringBuilder builder, Map<String, ?> properties, boolean typedMdcValues, SerializationContext context) {
         if (properties != null && !properties.isEmpty()) {
             for (Map.Entry<String, ?> entry : properties.entrySet()) {
-                String key = entry.getKey();
-                String value = String.valueOf(entry.getValue());
-                serializeMdcEntry(builder, key, value);
+                serializeMdcEntry(builder, entry.getKey(), entry.getValue(), typedMdcValues, context);
             }
         }
     }
 
+    /**
+     * @param typedMdcValues whether numbers and booleans should be serialized as JSON numbers and booleans instead of strings
+     */
+    public static void serializeMdcEntry(StringBuilder builder, String key, Object value, boolean typedMdcValues) {
+        serializeMdcEntry(builder, key, value, typedMdcValues, SerializationContext.DEFAULT);
+    }
+
+    /**
+     * @param typedMdcValues whether numbers and booleans should be serialized as JSON numbers and booleans instead of strings
+     * @param context        string values are cut to {@link EventSizeLimits#getMaxMdcValueLength()} of the context's limits
+     */
+    public static void serializeMdcEntry(StringBuilder builder, String key, Object value, boolean typedMdcValues, SerializationContext context) {
+        if (typedMdcValues) {
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                serializeMdcEntry(builder, key, ((Number) value).longValue(), context);
+                return;
+            } else if (value instanceof Double || value instanceof Float) {
+                serializeMdcEntry(builder, key, ((Number) value).doubleValue(), context);
+                return;
+            } else if (value instanceof Boolean) {
+                serializeMdcEntry(builder, key, ((Boolean) value).booleanValue(), context);
+                return;
+            }
+        }
+        serializeMdcEntry(builder, key, String.valueOf(value), context);
+    }
+
     public static void serializeMdcEntry(StringBuilder builder, String key, String value) {
-        if (RESERVED_KEYS.contains(key)) {
-            return;
+        serializeMdcEntry(builder, key, value, SerializationContext.DEFAULT);
+    }
+
+    /**
+     * @param context the value is cut to {@link EventSizeLimits#getMaxMdcValueLength()} of the context's limits
+     */
+    public static void serializeMdcEntry(StringBuilder builder, String key, String value, SerializationContext context) {
+        if (serializeMdcKey(builder, key, context)) {
+            builder.append('"');
+            serializeLimitedString(builder, toNullSafeString(value), context.getLimits().getMaxMdcValueLength(), context);
+            builder.append("\",");
         }
-        builder.append('\"');
-        JsonUtils.quoteAsString(key, builder);
-        builder.append("\":\"");
-        JsonUtils.quoteAsString(toNullSafeString(value), builder);
-        builder.append("\",");
+    }
+
+    public static void serializeMdcEntry(StringBuilder builder, String key, long value) {
+        serializeMdcEntry(builder, key, value, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeMdcEntry(StringBuilder builder, String key, long value, SerializationContext context) {
+        if (serializeMdcKey(builder, key, context)) {
+            builder.append(value).append(',');
+        }
+    }
+
+    /**
+     * Serializes the value as a JSON number.
+     * As JSON does not support {@code NaN} and infinity, those are serialized as strings.
+     */
+    public static void serializeMdcEntry(StringBuilder builder, String key, double value) {
+        serializeMdcEntry(builder, key, value, SerializationContext.DEFAULT);
+    }
+
+    /**
+     * Serializes the value as a JSON number.
+     * As JSON does not support {@code NaN} and infinity, those are serialized as strings.
+     */
+    public static void serializeMdcEntry(StringBuilder builder, String key, double value, SerializationContext context) {
+        if (serializeMdcKey(builder, key, context)) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                builder.append('\"').append(value).append("\",");
+            } else {
+                builder.append(value).append(',');
+            }
+        }
+    }
+
+    public static void serializeMdcEntry(StringBuilder builder, String key, boolean value) {
+        serializeMdcEntry(builder, key, value, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeMdcEntry(StringBuilder builder, String key, boolean value, SerializationContext context) {
+        if (serializeMdcKey(builder, key, context)) {
+            builder.append(value).append(',');
+        }
+    }
+
+    /**
+     * Appends the {@code "key":} part of an entry.
+     *
+     * @return {@code false} if the key is reserved and the entry should be skipped
+     */
+    private static boolean serializeMdcKey(StringBuilder builder, String key, SerializationContext context) {
+        String keyFragment = MdcKeyCache.getKeyFragment(key);
+        if (keyFragment == MdcKeyCache.RESERVED) {
+            return false;
+        }
+        // the fragment ends with the opening quote of a string value
+        context.writeKey(builder, keyFragment, 0, keyFragment.length() - 1);
+        return true;
     }
 
     public static void serializeException(StringBuilder builder, Throwable thrown, boolean stackTraceAsArray) {
+        serializeException(builder, thrown, stackTraceAsArray, null, StackTraceOptions.DEFAULT);
+    }
+
+    /**
+     * @param stackTraceCache   the cache to look up and store the serialized stack trace, may be {@code null}
+     * @param stackTraceOptions limits how much of the stack trace is serialized
+     */
+    public static void serializeException(StringBuilder builder, Throwable thrown, boolean stackTraceAsArray,
+                                          StackTraceCache stackTraceCache, StackTraceOptions stackTraceOptions) {
         if (thrown != null) {
-            builder.append("\"error.type\":\"");
-            JsonUtils.quoteAsString(thrown.getClass().getName(), builder);
-            builder.append("\",");
+            serializeExceptionFields(builder, thrown, stackTraceAsArray, stackTraceCache, stackTraceOptions, SerializationContext.DEFAULT);
+        }
+    }
 
-            String message = thrown.getMessage();
-            if (message != null) {
-                builder.append("\"error.message\":\"");
-                JsonUtils.quoteAsString(message, builder);
-                builder.append("\",");
-            }
-            if (stackTraceAsArray) {
-                builder.append("\"error.stack_trace\":[").append(NEW_LINE);
-                formatThrowableAsArray(builder, thrown);
-                builder.append("]");
-            } else {
-                builder.append("\"error.stack_trace\":\"");
-                JsonUtils.quoteAsString(formatThrowable(thrown), builder);
-                builder.append("\"");
+    /**
+     * Like {@link #serializeException(StringBuilder, Throwable, boolean, StackTraceCache, StackTraceOptions)},
+     * but ends with a comma, like all other fields, so that more fields can follow.
+     */
+    public static void serializeException(StringBuilder builder, Throwable thrown, boolean stackTraceAsArray,
+                                          StackTraceCache stackTraceCache, StackTraceOptions stackTraceOptions, SerializationContext context) {
+        if (thrown != null) {
+            serializeExceptionFields(builder, thrown, stackTraceAsArray, stackTraceCache, stackTraceOptions, context);
+            if (!endsWith(builder, ",")) {
+                builder.append(',');
             }
         }
     }
 
+    private static void serializeExceptionFields(StringBuilder builder, Throwable thrown, boolean stackTraceAsArray,
+                                                 StackTraceCache stackTraceCache, StackTraceOptions stackTraceOptions,
+                                                 SerializationContext context) {
+        serializeErrorTypeAndMessage(builder, thrown.getClass().getName(), thrown.getMessage(), context);
+        serializeErrorGroupingKey(builder, thrown, stackTraceOptions, context);
+        if (!serializeStackTraceHash(builder, thrown, stackTraceOptions, context)) {
+            return;
+        }
+        context.writeKey(builder, "\"error.stack_trace\":");
+        if (stackTraceAsArray) {
+            builder.append('[').append(NEW_LINE);
+            serializeStackTrace(builder, thrown, true, stackTraceCache, stackTraceOptions);
+            builder.append("]");
+        } else {
+            builder.append('"');
+            serializeStackTrace(builder, thrown, false, stackTraceCache, stackTraceOptions);
+            builder.append("\"");
+        }
+    }
+
+
+    /**
+     * In the emit-once mode, serializes the {@code error.stack_trace_hash} and,
+     * if the stack trace has already been serialized within the current time window, the {@code error.stack_trace_repeat_count}.
+     *
+     * @return {@code true} if the stack trace should be serialized
+     */
+    private static boolean serializeStackTraceHash(StringBuilder builder, Throwable thrown, StackTraceOptions stackTraceOptions,
+                                                   SerializationContext context) {
+        StackTraceDeduplicator stackTraceDeduplicator = stackTraceOptions.getStackTraceDeduplicator();
+        if (stackTraceDeduplicator == null) {
+            return true;
+        }
+        // messages are not part of the hash, they are serialized in error.message for each occurrence
+        long hash = ErrorGroupingKey.compute(thrown, Integer.MAX_VALUE, false);
+        context.writeKey(builder, "\"error.stack_trace_hash\":");
+        builder.append('"');
+        ErrorGroupingKey.serialize(builder, hash);
+        builder.append("\",");
+        int repetitions = stackTraceDeduplicator.recordOccurrence(hash, System.currentTimeMillis());
+        if (repetitions > 0) {
+            context.writeKey(builder, "\"error.stack_trace_repeat_count\":");
+            builder.append(repetitions).append(',');
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Serializes the {@code error.grouping_key} if enabled in the options.
+     * Only needs to be called explicitly if the stack trace is serialized from text,
+     * {@link #serializeException(StringBuilder, Throwable, boolean, StackTraceCache, StackTraceOptions)} already includes it.
+     */
+    public static void serializeErrorGroupingKey(StringBuilder builder, Throwable thrown, StackTraceOptions stackTraceOptions) {
+        serializeErrorGroupingKey(builder, thrown, stackTraceOptions, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeErrorGroupingKey(StringBuilder builder, Throwable thrown, StackTraceOptions stackTraceOptions,
+                                                 SerializationContext context) {
+        if (stackTraceOptions.isErrorGroupingKeyEnabled()) {
+            context.writeKey(builder, "\"error.grouping_key\":");
+            builder.append('"');
+            ErrorGroupingKey.serialize(builder, ErrorGroupingKey.compute(thrown, stackTraceOptions.getErrorGroupingKeyFrames(),
+                    stackTraceOptions.isErrorGroupingKeyIgnoreLineNumbers()));
+            builder.append("\",");
+        }
+    }
+
     public static void serializeException(StringBuilder builder, String exceptionClassName, CharSequence exceptionMessage, CharSequence stackTrace, boolean stackTraceAsArray) {
-        builder.append("\"error.type\":\"");
+        serializeExceptionFields(builder, exceptionClassName, exceptionMessage, stackTrace, stackTraceAsArray, SerializationContext.DEFAULT);
+    }
+
+    /**
+     * Like {@link #serializeException(StringBuilder, String, CharSequence, CharSequence, boolean)},
+     * but ends with a comma, like all other fields, so that more fields can follow.
+     */
+    public static void serializeException(StringBuilder builder, String exceptionClassName, CharSequence exceptionMessage, CharSequence stackTrace,
+                                          boolean stackTraceAsArray, SerializationContext context) {
+        serializeExceptionFields(builder, exceptionClassName, exceptionMessage, stackTrace, stackTraceAsArray, context);
+        builder.append(',');
+    }
+
+    private static void serializeExceptionFields(StringBuilder builder, String exceptionClassName, CharSequence exceptionMessage,
+                                                 CharSequence stackTrace, boolean stackTraceAsArray, SerializationContext context) {
+        serializeErrorTypeAndMessage(builder, exceptionClassName, exceptionMessage, context);
+        context.writeKey(builder, "\"error.stack_trace\":");
+        if (stackTraceAsArray) {
+            builder.append('[');
+            formatStackTraceAsArray(builder, stackTrace);
+            builder.append("]");
+        } else {
+            builder.append('"');
+            JsonUtils.quoteAsString(stackTrace, builder);
+            builder.append("\"");
+        }
+    }
+
+    private static void serializeErrorTypeAndMessage(StringBuilder builder, String exceptionClassName, CharSequence exceptionMessage,
+                                                     SerializationContext context) {
+        context.writeKey(builder, "\"error.type\":");
+        builder.append('"');
         JsonUtils.quoteAsString(exceptionClassName, builder);
         builder.append("\",");
 
         if (exceptionMessage != null) {
-            builder.append("\"error.message\":\"");
+            context.writeKey(builder, "\"error.message\":");
+            builder.append('"');
             JsonUtils.quoteAsString(exceptionMessage, builder);
             builder.append("\",");
         }
+    }
+
+    /**
+     * Starts serializing an exception whose stack trace is not available as a {@link Throwable},
+     * for example a logback {@code IThrowableProxy}.
+     * Add the lines of the stack trace with {@link #serializeStackTraceLine} and {@link #serializeStackTraceElement}
+     * and complete it with {@link #serializeStackTraceEnd}.
+     */
+    public static void serializeStackTraceStart(StringBuilder builder, String exceptionClassName, CharSequence exceptionMessage, boolean stackTraceAsArray) {
+        serializeStackTraceStart(builder, exceptionClassName, exceptionMessage, stackTraceAsArray, SerializationContext.DEFAULT);
+    }
+
+    public static void serializeStackTraceStart(StringBuilder builder, String exceptionClassName, CharSequence exceptionMessage, boolean stackTraceAsArray,
+                                                SerializationContext context) {
+        serializeErrorTypeAndMessage(builder, exceptionClassName, exceptionMessage, context);
+        context.writeKey(builder, "\"error.stack_trace\":");
         if (stackTraceAsArray) {
-            builder.append("\"error.stack_trace\":[");
-            formatStackTraceAsArray(builder, stackTrace);
+            builder.append('[').append(NEW_LINE);
+        } else {
+            builder.append('"');
+        }
+    }
+
+    /**
+     * @param indent the number of tabs the line is prefixed with
+     */
+    public static void serializeStackTraceLine(StringBuilder builder, int indent, CharSequence line, boolean stackTraceAsArray) {
+        startStackTraceLine(builder, stackTraceAsArray);
+        appendEscapedTabs(builder, indent);
+        serializeStackTraceText(builder, line, stackTraceAsArray);
+        endStackTraceLine(builder, stackTraceAsArray);
+    }
+
+    /**
+     * Serializes a {@code at pkg.Class.method(File.java:123)} line.
+     *
+     * @param indent the number of tabs the line is prefixed with
+     */
+    public static void serializeStackTraceElement(StringBuilder builder, int indent, StackTraceElement element, boolean stackTraceAsArray) {
+        startStackTraceLine(builder, stackTraceAsArray);
+        appendEscapedTabs(builder, indent);
+        builder.append(StackTraceElementCache.getEscapedFrame(element));
+        endStackTraceLine(builder, stackTraceAsArray);
+    }
+
+    public static void serializeStackTraceEnd(StringBuilder builder, boolean stackTraceAsArray) {
+        if (stackTraceAsArray) {
+            removeIfEndsWith(builder, NEW_LINE);
+            removeIfEndsWith(builder, ",");
             builder.append("]");
         } else {
-            builder.append("\"error.stack_trace\":\"");
-            JsonUtils.quoteAsString(stackTrace, builder);
             builder.append("\"");
         }
     }
 
-    private static CharSequence formatThrowable(final Throwable throwable) {
+    /**
+     * Marks that the rest of the stack trace has been omitted as it exceeds {@link StackTraceOptions#getMaxStackTraceBytes()}.
+     */
+    public static void serializeStackTraceTruncated(StringBuilder builder, boolean stackTraceAsArray) {
+        serializeStackTraceLine(builder, 0, "... stack trace truncated", stackTraceAsArray);
+    }
+
+    private static void serializeStackTrace(StringBuilder builder, Throwable throwable, boolean stackTraceAsArray,
+                                            StackTraceCache stackTraceCache, StackTraceOptions options) {
+        if (stackTraceCache != null) {
+            stackTraceCache.serializeStackTrace(builder, throwable, stackTraceAsArray, options);
+        } else {
+            serializeStackTrace(builder, throwable, stackTraceAsArray, options);
+        }
+    }
+
+    /**
+     * Serializes the stack trace in the same format as {@link Throwable#printStackTrace()}, including causes,
+     * suppressed exceptions and the elision of frames in common with the enclosing trace ({@code ... n more}).
+     * <p>
+     * Instead of printing into a {@link java.io.PrintWriter} and escaping the result in a second pass,
+     * this walks the {@link StackTraceElement}s directly and escapes them into the builder.
+     * The {@link StackTraceOptions} are applied while walking, so omitted frames are never rendered.
+     * </p>
+     * <p>
+     * Exceptions that customize their rendering by overriding {@link Throwable#printStackTrace(PrintWriter)}
+     * are printed and escaped as-is, without applying the {@link StackTraceOptions}.
+     * </p>
+     */
+    static void serializeStackTrace(StringBuilder builder, Throwable throwable, boolean stackTraceAsArray, StackTraceOptions options) {
+        if (hasCustomStackTrace(throwable.getClass())) {
+            serializePrintedStackTrace(builder, throwable, stackTraceAsArray);
+            return;
+        }
+        int start = builder.length();
+        StackTraceElement[] trace = throwable.getStackTrace();
+        serializeStackTraceLine(builder, 0, throwable.toString(), stackTraceAsArray);
+        boolean complete = serializeStackTraceElements(builder, trace, trace.length, 0, 1, options, start, stackTraceAsArray);
+        Throwable[] suppressed = getSuppressed(throwable);
+        Throwable cause = throwable.getCause();
+        if (complete && (suppressed.length > 0 || cause != null)) {
+            Set<Throwable> dejaVu = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+            dejaVu.add(throwable);
+            for (int i = 0; complete && i < suppressed.length; i++) {
+                complete = serializeEnclosedStackTrace(builder, suppressed[i], trace, SUPPRESSED_CAPTION, 1, dejaVu, options, start, stackTraceAsArray);
+            }
+            if (complete && cause != null) {
+                serializeEnclosedStackTrace(builder, cause, trace, CAUSE_CAPTION, 0, dejaVu, options, start, stackTraceAsArray);
+            }
+        }
+        if (stackTraceAsArray) {
+            removeIfEndsWith(builder, NEW_LINE);
+            removeIfEndsWith(builder, ",");
+        }
+    }
+
+    private static void serializePrintedStackTrace(StringBuilder builder, Throwable throwable, boolean stackTraceAsArray) {
         StringBuilder buffer = getMessageStringBuilder();
-        final PrintWriter pw = new PrintWriter(new StringBuilderWriter(buffer));
-        throwable.printStackTrace(pw);
-        pw.flush();
-        return buffer;
-    }
-
-    private static void formatThrowableAsArray(final StringBuilder jsonBuilder, final Throwable throwable) {
-        final StringBuilder buffer = getMessageStringBuilder();
-        final PrintWriter pw = new PrintWriter(new StringBuilderWriter(buffer), true) {
-            @Override
-            public void println() {
-                flush();
-                jsonBuilder.append("\t\"");
-                JsonUtils.quoteAsString(buffer, jsonBuilder);
-                jsonBuilder.append("\",");
-                jsonBuilder.append(NEW_LINE);
-                buffer.setLength(0);
+        try {
+            PrintWriter pw = new PrintWriter(new StringBuilderWriter(buffer));
+            throwable.printStackTrace(pw);
+            pw.flush();
+            if (stackTraceAsArray) {
+                serializeStackTraceTextAsArray(builder, buffer);
+            } else {
+                JsonUtils.quoteAsString(buffer, builder);
             }
-        };
-        throwable.printStackTrace(pw);
-        removeIfEndsWith(jsonBuilder, NEW_LINE);
-        removeIfEndsWith(jsonBuilder, ",");
+        } finally {
+            releaseMessageStringBuilder(buffer);
+        }
     }
 
-    private static void formatStackTraceAsArray(StringBuilder builder, CharSequence stackTrace) {
-        builder.append(NEW_LINE);
+    static boolean hasCustomStackTrace(Class<?> throwableClass) {
+        Boolean custom = CUSTOM_STACK_TRACE_CLASSES.get(throwableClass);
+        if (custom == null) {
+            custom = overridesPrintStackTrace(throwableClass);
+            if (CUSTOM_STACK_TRACE_CLASSES.size() < MAX_CUSTOM_STACK_TRACE_CLASSES) {
+                CUSTOM_STACK_TRACE_CLASSES.putIfAbsent(throwableClass, custom);
+            }
+        }
+        return custom;
+    }
 
-        // splits the stackTrace by new lines
-        Matcher matcher = NEW_LINE_PATTERN.matcher(stackTrace);
-        if (matcher.find()) {
-            int index = 0;
-            do {
-                int start = matcher.start();
-                int end = matcher.end();
-                if (index == 0 && index == start && start == end) {
-                    // no empty leading substring included for zero-width match
-                    // at the beginning of the input char sequence.
-                    continue;
-                }
+    private static boolean overridesPrintStackTrace(Class<?> throwableClass) {
+        try {
+            return throwableClass.getMethod("printStackTrace", PrintWriter.class).getDeclaringClass() != Throwable.class;
+        } catch (Exception ignore) {
+            return false;
+        }
+    }
 
-                // append non-last line
-                appendStackTraceLine(builder, stackTrace, index, start);
-                builder.append(',');
-                builder.append(NEW_LINE);
-                index = end;
-            } while (matcher.find());
-
-            int length = stackTrace.length();
-            if (index < length) {
-                // append remaining line
-                appendStackTraceLine(builder, stackTrace, index, length);
-            } else {
-                // stack trace ends with newline, remove trailing comma and newline
-                removeIfEndsWith(builder, NEW_LINE);
-                removeIfEndsWith(builder, ",");
+    /**
+     * @return {@code false} if the stack trace has been truncated because it exceeds the maximum size
+     */
+    private static boolean serializeEnclosedStackTrace(StringBuilder builder, Throwable throwable, StackTraceElement[] enclosingTrace,
+                                                       String caption, int depth, Set<Throwable> dejaVu,
+                                                       StackTraceOptions options, int start, boolean stackTraceAsArray) {
+        if (options.isOverBudget(builder, start)) {
+            serializeStackTraceTruncated(builder, stackTraceAsArray);
+            return false;
+        }
+        if (!dejaVu.add(throwable)) {
+            startStackTraceLine(builder, stackTraceAsArray);
+            appendEscapedTabs(builder, depth);
+            builder.append(caption).append("[CIRCULAR REFERENCE: ");
+            serializeStackTraceText(builder, throwable.toString(), stackTraceAsArray);
+            builder.append(']');
+            endStackTraceLine(builder, stackTraceAsArray);
+            return true;
+        }
+        StackTraceElement[] trace = throwable.getStackTrace();
+        // compute number of frames in common between this and the enclosing trace
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        int framesInCommon = trace.length - 1 - m;
+
+        startStackTraceLine(builder, stackTraceAsArray);
+        appendEscapedTabs(builder, depth);
+        builder.append(caption);
+        serializeStackTraceText(builder, throwable.toString(), stackTraceAsArray);
+        endStackTraceLine(builder, stackTraceAsArray);
+        if (!serializeStackTraceElements(builder, trace, m + 1, framesInCommon, depth + 1, options, start, stackTraceAsArray)) {
+            return false;
+        }
+        for (Throwable se : getSuppressed(throwable)) {
+            if (!serializeEnclosedStackTrace(builder, se, trace, SUPPRESSED_CAPTION, depth + 1, dejaVu, options, start, stackTraceAsArray)) {
+                return false;
+            }
+        }
+        Throwable cause = throwable.getCause();
+        if (cause != null) {
+            return serializeEnclosedStackTrace(builder, cause, trace, CAUSE_CAPTION, depth, dejaVu, options, start, stackTraceAsArray);
+        }
+        return true;
+    }
+
+    /**
+     * Serializes the first {@code end} frames, skipping excluded frames and the ones beyond the maximum depth.
+     * Omitted frames at the end, including the ones in common with the enclosing trace, are summarized as {@code ... n more}.
+     *
+     * @return {@code false} if the stack trace has been truncated because it exceeds the maximum size
+     */
+    private static boolean serializeStackTraceElements(StringBuilder builder, StackTraceElement[] trace, int end, int framesInCommon,
+                                                       int indent, StackTraceOptions options, int start, boolean stackTraceAsArray) {
+        int maxDepth = options.getMaxStackTraceDepth();
+        int serialized = 0;
+        int excluded = 0;
+        int i = 0;
+        for (; i < end && serialized < maxDepth; i++) {
+            StackTraceElement element = trace[i];
+            if (options.isExcluded(element)) {
+                excluded++;
+                continue;
             }
+            if (options.isOverBudget(builder, start)) {
+                serializeStackTraceTruncated(builder, stackTraceAsArray);
+                return false;
+            }
+            if (excluded > 0) {
+                serializeOmittedFrames(builder, indent, excluded, " frames excluded", stackTraceAsArray);
+                excluded = 0;
+            }
+            serializeStackTraceElement(builder, indent, element, stackTraceAsArray);
+            serialized++;
+        }
+        if (excluded > 0) {
+            serializeOmittedFrames(builder, indent, excluded, " frames excluded", stackTraceAsArray);
+        }
+        int omitted = end - i + framesInCommon;
+        if (omitted > 0) {
+            serializeOmittedFrames(builder, indent, omitted, " more", stackTraceAsArray);
+        }
+        return true;
+    }
+
+    private static void serializeOmittedFrames(StringBuilder builder, int indent, int count, String suffix, boolean stackTraceAsArray) {
+        startStackTraceLine(builder, stackTraceAsArray);
+        appendEscapedTabs(builder, indent);
+        builder.append("... ").append(count).append(suffix);
+        endStackTraceLine(builder, stackTraceAsArray);
+    }
+
+    private static void serializeStackTraceText(StringBuilder builder, CharSequence text, boolean stackTraceAsArray) {
+        if (stackTraceAsArray) {
+            // messages may span multiple lines which are split into separate elements
+            serializeLinesAsArrayElements(builder, text);
         } else {
-            // no newlines found, add entire stack trace as single element
-            appendStackTraceLine(builder, stackTrace, 0, stackTrace.length());
+            JsonUtils.quoteAsString(text, builder);
+        }
+    }
+
+    /**
+     * Escapes the text and splits it into array elements on {@code \r\n}, {@code \n} and {@code \r} in a single pass.
+     * Expects the current element to be started and leaves the last element open.
+     * <p>
+     * As new lines are control characters, they are detected by the same check that decides whether a char needs escaping.
+     * </p>
+     */
+    private static void serializeLinesAsArrayElements(StringBuilder builder, CharSequence text) {
+        int length = text.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (JsonUtils.needsEscaping(c)) {
+                if (i > runStart) {
+                    builder.append(text, runStart, i);
+                }
+                if (isNewLine(c)) {
+                    endStackTraceLine(builder, true);
+                    startStackTraceLine(builder, true);
+                    if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                } else {
+                    JsonUtils.appendEscaped(c, builder);
+                }
+                runStart = i + 1;
+            }
+        }
+        if (runStart < length) {
+            builder.append(text, runStart, length);
+        }
+    }
+
+    private static boolean isNewLine(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static void startStackTraceLine(StringBuilder builder, boolean stackTraceAsArray) {
+        if (stackTraceAsArray) {
+            builder.append("\t\"");
+        }
+    }
+
+    private static void endStackTraceLine(StringBuilder builder, boolean stackTraceAsArray) {
+        if (stackTraceAsArray) {
+            builder.append("\",");
+            builder.append(NEW_LINE);
+        } else {
+            builder.append(ESCAPED_NEW_LINE);
+        }
+    }
+
+    private static void appendEscapedTabs(StringBuilder builder, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append("\\t");
+        }
+    }
+
+    static Throwable[] getSuppressed(Throwable throwable) {
+        if (GET_SUPPRESSED != null) {
+            try {
+                return (Throwable[]) GET_SUPPRESSED.invoke(throwable);
+            } catch (Exception ignore) {
+            }
+        }
+        return NO_THROWABLES;
+    }
+
+    private static Method findGetSuppressedMethod() {
+        try {
+            return Throwable.class.getMethod("getSuppressed");
+        } catch (Exception ignore) {
+            return null;
         }
     }
 
-    private static void appendStackTraceLine(StringBuilder builder, CharSequence stackTrace, int start, int end) {
-        builder.append("\t\"");
-        JsonUtils.quoteAsString(stackTrace, start, end, builder);
-        builder.append("\"");
+    private static void formatStackTraceAsArray(StringBuilder builder, CharSequence stackTrace) {
+        builder.append(NEW_LINE);
+        serializeStackTraceTextAsArray(builder, stackTrace);
+    }
+
+    private static void serializeStackTraceTextAsArray(StringBuilder builder, CharSequence stackTrace) {
+        startStackTraceLine(builder, true);
+        serializeLinesAsArrayElements(builder, stackTrace);
+        int length = stackTrace.length();
+        if (length > 0 && isNewLine(stackTrace.charAt(length - 1))) {
+            // stack trace ends with newline, remove the empty element that has just been started
+            removeIfEndsWith(builder, "\t\"");
+            removeIfEndsWith(builder, NEW_LINE);
+            removeIfEndsWith(builder, ",");
+        } else {
+            builder.append('"');
+        }
     }
 
     public static void removeIfEndsWith(StringBuilder sb, String ending) {
@@ -365,23 +939,58 @@ public class EcsJsonSerializer {
     }
 
     /**
-     * Returns a thread-local {@link StringBuilder} for temporary message formatting.
+     * Returns an empty {@link StringBuilder} for temporary message formatting.
+     * It should be handed back via {@link #releaseMessageStringBuilder(StringBuilder)} when it's not needed anymore.
      * <p>
+     * By default, the buffer is thread-local.
      * If the buffer has grown beyond {@link #MAX_BUFFER_CAPACITY} (e.g. due to a large stack trace),
      * it is discarded and replaced with a fresh instance to prevent unbounded memory retention in
      * long-lived thread-pool threads.
      *
      * @see <a href="https://github.com/elastic/ecs-logging-java/issues/381">#381</a>
+     * @see #setMessageStringBuilderProvider(StringBuilderProvider)
      */
     public static StringBuilder getMessageStringBuilder() {
-        StringBuilder result = messageStringBuilder.get();
-        if (result == null || result.capacity() > MAX_BUFFER_CAPACITY) {
-            result = new StringBuilder(INITIAL_BUFFER_CAPACITY);
-            messageStringBuilder.set(result);
-        } else {
-            result.setLength(0);
-        }
-        return result;
+        return messageStringBuilderProvider.acquire();
+    }
+
+    public static void releaseMessageStringBuilder(StringBuilder builder) {
+        messageStringBuilderProvider.release(builder);
+    }
+
+    /**
+     * Replaces the provider of the buffers returned by {@link #getMessageStringBuilder()}.
+     * For applications with a large number of threads, a {@link StringBuilderProvider#pooled(int, int) pool}
+     * bounds the memory that is retained by idle threads.
+     * Should be called before the logging framework is initialized.
+     */
+    public static void setMessageStringBuilderProvider(StringBuilderProvider provider) {
+        messageStringBuilderProvider = provider;
+    }
+
+    /**
+     * @return the provider of the buffers returned by {@link #getMessageStringBuilder()}, for example to read its counters
+     */
+    public static StringBuilderProvider getMessageStringBuilderProvider() {
+        return messageStringBuilderProvider;
+    }
+
+    /**
+     * Returns an empty {@link StringBuilder} to serialize a whole event into,
+     * for layouts that have to return the event as a {@link String} or {@code byte[]}.
+     * It should be handed back via {@link #releaseEventStringBuilder(StringBuilder)} once the event has been copied out of it.
+     * <p>
+     * The buffer is separate from the one returned by {@link #getMessageStringBuilder()},
+     * which may be acquired while the event is being serialized.
+     * Buffers that have grown beyond {@link #MAX_EVENT_BUFFER_CAPACITY} are discarded.
+     * </p>
+     */
+    public static StringBuilder getEventStringBuilder() {
+        return EVENT_STRING_BUILDER_PROVIDER.acquire();
+    }
+
+    public static void releaseEventStringBuilder(StringBuilder builder) {
+        EVENT_STRING_BUILDER_PROVIDER.release(builder);
     }
 
     public static String computeEventDataset(String eventDataset, String serviceName) {
@@ -391,6 +1000,38 @@ public class EcsJsonSerializer {
         return eventDataset;
     }
 
+    /**
+     * Serializes the fields that are the same for every event into a single pre-escaped fragment.
+     * <p>
+     * Layouts compute the fragment once at configuration time and re-compute it whenever one of the values changes.
+     * For each event, the fragment is appended with a single copy via {@link #serializeStaticFields(StringBuilder, char[])},
+     * instead of escaping each field again.
+     * </p>
+     *
+     * @param additionalFields additional fields with constant values, may be {@code null}
+     * @return the pre-escaped fragment, including the trailing comma
+     */
+    public static char[] compileStaticFields(String serviceName, String serviceVersion, String serviceEnvironment, String serviceNodeName,
+                                             String eventDataset, List<AdditionalField> additionalFields) {
+        StringBuilder builder = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+        serializeEcsVersion(builder);
+        serializeServiceName(builder, serviceName);
+        serializeServiceVersion(builder, serviceVersion);
+        serializeServiceEnvironment(builder, serviceEnvironment);
+        serializeServiceNodeName(builder, serviceNodeName);
+        serializeEventDataset(builder, eventDataset);
+        if (additionalFields != null) {
+            serializeAdditionalFields(builder, additionalFields);
+        }
+        char[] staticFields = new char[builder.length()];
+        builder.getChars(0, builder.length(), staticFields, 0);
+        return staticFields;
+    }
+
+    public static void serializeStaticFields(StringBuilder builder, char[] staticFields) {
+        builder.append(staticFields);
+    }
+
     public static void serializeAdditionalFields(StringBuilder builder, List<AdditionalField> additionalFields) {
         if (!additionalFields.isEmpty()) {
             for (int i = 0, size = additionalFields.size(); i < size; i++) {
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+/**
+ * Computes a fingerprint of an exception that allows to group repeated occurrences without analyzing the stack trace text.
+ * <p>
+ * The key is a 64 bit FNV-1a hash over the class name of the exception and each of its causes,
+ * and the class name, method name and (optionally) line number of their top frames.
+ * It's computed from the frames directly, without rendering them.
+ * The hash only depends on these strings and numbers, so it's stable across JVMs and restarts.
+ * </p>
+ */
+final class ErrorGroupingKey {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // guards against circular causes without having to track the visited exceptions
+    private static final int MAX_CAUSES = 32;
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    private ErrorGroupingKey() {
+    }
+
+    static long compute(Throwable thrown, int maxFrames, boolean ignoreLineNumbers) {
+        long hash = FNV_OFFSET_BASIS;
+        Throwable throwable = thrown;
+        for (int i = 0; throwable != null && i < MAX_CAUSES; i++) {
+            hash = hash(hash, throwable.getClass().getName());
+            StackTraceElement[] trace = throwable.getStackTrace();
+            for (int j = 0, frames = Math.min(trace.length, maxFrames); j < frames; j++) {
+                StackTraceElement element = trace[j];
+                hash = hash(hash, element.getClassName());
+                hash = hash(hash, element.getMethodName());
+                if (!ignoreLineNumbers) {
+                    hash = hash(hash, element.getLineNumber());
+                }
+            }
+            Throwable cause = throwable.getCause();
+            throwable = cause != throwable ? cause : null;
+        }
+        return hash;
+    }
+
+    static void serialize(StringBuilder builder, long hash) {
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            builder.append(HEX_CHARS[(int) (hash >>> shift) & 0xF]);
+        }
+    }
+
+    private static long hash(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+        }
+        // separator so that the boundaries between the strings are part of the hash
+        return (hash ^ 0xFFFF) * FNV_PRIME;
+    }
+
+    private static long hash(long hash, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
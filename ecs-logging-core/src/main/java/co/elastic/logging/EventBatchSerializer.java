@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Serializes many events into one contiguous buffer of newline-delimited JSON (NDJSON).
+ * <p>
+ * Appenders that drain a queue of events can hand over the whole batch to the OS with a single write,
+ * instead of allocating a {@code String} or {@code byte[]} per event and writing them one by one.
+ * </p>
+ */
+public final class EventBatchSerializer {
+
+    /**
+     * The estimated size of a serialized event, used to pre-size buffers.
+     */
+    static final int ESTIMATED_EVENT_SIZE = 512;
+    /**
+     * Large batches grow the buffer on demand rather than reserving memory up-front.
+     */
+    static final int MAX_INITIAL_CAPACITY = 1 << 20;
+
+    private EventBatchSerializer() {
+    }
+
+    /**
+     * Appends each event as one line of JSON.
+     */
+    public static <E> void serializeBatch(StringBuilder builder, Iterable<? extends E> events, EventSerializer<? super E> serializer) {
+        if (events instanceof List && events instanceof RandomAccess) {
+            // avoids allocating an iterator
+            List<? extends E> list = (List<? extends E>) events;
+            for (int i = 0, size = list.size(); i < size; i++) {
+                serializer.serialize(builder, list.get(i));
+            }
+        } else {
+            for (E event : events) {
+                serializer.serialize(builder, event);
+            }
+        }
+    }
+
+    /**
+     * Appends {@code length} events of the array, starting at {@code offset}, each as one line of JSON.
+     */
+    public static <E> void serializeBatch(StringBuilder builder, E[] events, int offset, int length, EventSerializer<? super E> serializer) {
+        if (offset < 0 || length < 0 || offset + length > events.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", events: " + events.length);
+        }
+        for (int i = offset, end = offset + length; i < end; i++) {
+            serializer.serialize(builder, events[i]);
+        }
+    }
+
+    /**
+     * @return a new builder, sized according to the number of events, that contains each event as one line of JSON
+     */
+    public static <E> StringBuilder serializeBatch(Iterable<? extends E> events, EventSerializer<? super E> serializer) {
+        StringBuilder builder = new StringBuilder(estimateCapacity(events));
+        serializeBatch(builder, events, serializer);
+        return builder;
+    }
+
+    /**
+     * @return the events as UTF-8 encoded NDJSON
+     */
+    public static <E> byte[] toUtf8Bytes(Iterable<? extends E> events, EventSerializer<? super E> serializer) {
+        return Utf8Buffer.toUtf8Bytes(serializeBatch(events, serializer));
+    }
+
+    static int estimateCapacity(Iterable<?> events) {
+        if (events instanceof Collection) {
+            return estimateBatchCapacity(((Collection<?>) events).size());
+        }
+        return ESTIMATED_EVENT_SIZE;
+    }
+
+    /**
+     * @return the initial capacity of a buffer that is used to serialize the given number of events
+     */
+    public static int estimateBatchCapacity(int events) {
+        return (int) Math.min(MAX_INITIAL_CAPACITY, Math.max(1L, events) * ESTIMATED_EVENT_SIZE);
+    }
+}
@@ -0,0 +1,42 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+/**
+ * Serializes a complete log event.
+ * <p>
+ * Adapters implement this so that the same code path serializes single events and {@linkplain EventBatchSerializer batches of events}.
+ * </p>
+ *
+ * @param <E> the type of the log event
+ */
+public interface EventSerializer<E> {
+
+    /**
+     * Appends the event as a JSON object, followed by a new line.
+     * The object starts at the current length of the builder.
+     */
+    void serialize(StringBuilder builder, E event);
+}
@@ -0,0 +1,181 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.Arrays;
+
+/**
+ * Shrinks serialized fields that exceed the space left in the event by truncating their largest string values.
+ * <p>
+ * All string values are cut to a common maximum length, which is chosen so that the fields fit into the limit
+ * while keeping as much as possible of the shorter values.
+ * The value of {@code @timestamp} is never truncated, as an event without a valid timestamp can't be ingested.
+ * Keys are never changed, so the result is still valid JSON with the same fields.
+ * The values are cut at the boundary of an escape sequence or a surrogate pair.
+ * </p>
+ */
+final class EventSizeLimiter {
+
+    private static final String TIMESTAMP_KEY = "@timestamp";
+
+    private EventSizeLimiter() {
+    }
+
+    /**
+     * @param start    the index of the first field to shrink
+     * @param maxBytes the maximum UTF-8 size of the fields from {@code start} to the end of the builder
+     * @return {@code false} if the fields can't be shrunk enough because their keys and non-string values alone exceed
+     * {@code maxBytes}, in which case the builder is left unchanged
+     */
+    static boolean limit(StringBuilder builder, int start, int maxBytes) {
+        int size = Utf8Buffer.encodedLength(builder, start, builder.length());
+        if (size <= maxBytes) {
+            return true;
+        }
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int[] lengths = new int[16];
+        int count = 0;
+        boolean timestampValue = false;
+        for (int i = start; i < builder.length(); i++) {
+            if (builder.charAt(i) != '"') {
+                continue;
+            }
+            int valueStart = i + 1;
+            int end = indexOfClosingQuote(builder, valueStart);
+            if (end < 0) {
+                // not valid JSON, don't touch it
+                return false;
+            }
+            i = end;
+            if (isKey(builder, end + 1)) {
+                timestampValue = isTimestampKey(builder, valueStart, end);
+            } else if (timestampValue) {
+                timestampValue = false;
+            } else {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                }
+                starts[count] = valueStart;
+                ends[count] = end;
+                lengths[count] = Utf8Buffer.encodedLength(builder, valueStart, end);
+                count++;
+            }
+        }
+        int maxValueBytes = computeMaxValueBytes(Arrays.copyOf(lengths, count), size - maxBytes);
+        if (maxValueBytes < 0) {
+            return false;
+        }
+        // from the end so that the indices of the preceding values don't change
+        for (int i = count - 1; i >= 0; i--) {
+            if (lengths[i] > maxValueBytes) {
+                builder.delete(indexOfCut(builder, starts[i], ends[i], maxValueBytes), ends[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the maximum length of each value so that at least {@code excess} bytes are removed in total.
+     *
+     * @return the maximum length of each value, or {@code -1} if the values are not long enough to remove {@code excess} bytes
+     */
+    static int computeMaxValueBytes(int[] lengths, int excess) {
+        Arrays.sort(lengths);
+        long sum = 0;
+        // lengths are sorted in ascending order, k is the number of values that get truncated
+        for (int k = 1; k <= lengths.length; k++) {
+            sum += lengths[lengths.length - k];
+            long maxValueBytes = (sum - excess) / k;
+            int nextLength = k < lengths.length ? lengths[lengths.length - k - 1] : 0;
+            if (sum >= excess && maxValueBytes >= nextLength) {
+                return (int) maxValueBytes;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfClosingQuote(StringBuilder builder, int start) {
+        for (int i = start; i < builder.length(); i++) {
+            char c = builder.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isTimestampKey(StringBuilder builder, int start, int end) {
+        if (end - start != TIMESTAMP_KEY.length()) {
+            return false;
+        }
+        for (int i = 0; i < TIMESTAMP_KEY.length(); i++) {
+            if (builder.charAt(start + i) != TIMESTAMP_KEY.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isKey(StringBuilder builder, int i) {
+        while (i < builder.length() && Character.isWhitespace(builder.charAt(i))) {
+            i++;
+        }
+        return i < builder.length() && builder.charAt(i) == ':';
+    }
+
+    /**
+     * @return the index of the first char of the escaped value that doesn't fit into {@code maxBytes}
+     */
+    private static int indexOfCut(StringBuilder builder, int start, int end, int maxBytes) {
+        int bytes = 0;
+        int i = start;
+        while (i < end) {
+            char c = builder.charAt(i);
+            int chars;
+            int tokenBytes;
+            if (c == '\\') {
+                chars = i + 1 < end && builder.charAt(i + 1) == 'u' ? 6 : 2;
+                tokenBytes = chars;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(builder.charAt(i + 1))) {
+                chars = 2;
+                tokenBytes = 4;
+            } else {
+                chars = 1;
+                tokenBytes = c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+            if (bytes + tokenBytes > maxBytes) {
+                return i;
+            }
+            bytes += tokenBytes;
+            i += chars;
+        }
+        return end;
+    }
+}
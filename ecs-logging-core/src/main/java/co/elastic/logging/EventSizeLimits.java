@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+/**
+ * Limits for the size of a serialized event, so that a single huge message or MDC value
+ * doesn't exceed the maximum line length of the shipper.
+ * <p>
+ * All limits are in UTF-8 bytes of the escaped JSON.
+ * The per-field limits are enforced while escaping, so that oversized values are never copied into the buffer.
+ * The {@link #getMaxEventBytes() maximum event size} is enforced while the event is written, see {@link FieldWriterPlan}.
+ * Whenever something has been truncated or dropped, the event contains {@code "event.truncated":true}.
+ * </p>
+ */
+public final class EventSizeLimits {
+
+    public static final EventSizeLimits DEFAULT = new EventSizeLimits(new Builder());
+
+    private final int maxEventBytes;
+    private final int maxMessageLength;
+    private final int maxMdcValueLength;
+
+    private EventSizeLimits(Builder builder) {
+        this.maxEventBytes = builder.maxEventBytes > 0 ? builder.maxEventBytes : Integer.MAX_VALUE;
+        this.maxMessageLength = builder.maxMessageLength > 0 ? builder.maxMessageLength : Integer.MAX_VALUE;
+        this.maxMdcValueLength = builder.maxMdcValueLength > 0 ? builder.maxMdcValueLength : Integer.MAX_VALUE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the maximum size of the event in UTF-8 bytes, including the trailing new line, {@link Integer#MAX_VALUE} if unlimited
+     */
+    public int getMaxEventBytes() {
+        return maxEventBytes;
+    }
+
+    /**
+     * @return the maximum UTF-8 size of the escaped {@code message}, {@link Integer#MAX_VALUE} if unlimited
+     */
+    public int getMaxMessageLength() {
+        return maxMessageLength;
+    }
+
+    /**
+     * @return the maximum UTF-8 size of each escaped MDC value, {@link Integer#MAX_VALUE} if unlimited
+     */
+    public int getMaxMdcValueLength() {
+        return maxMdcValueLength;
+    }
+
+    public boolean isEnabled() {
+        return this != DEFAULT;
+    }
+
+    public static final class Builder {
+
+        private int maxEventBytes;
+        private int maxMessageLength;
+        private int maxMdcValueLength;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxEventBytes the maximum size of the event in UTF-8 bytes, {@code 0} for no limit
+         * @return this builder
+         */
+        public Builder setMaxEventBytes(int maxEventBytes) {
+            this.maxEventBytes = maxEventBytes;
+            return this;
+        }
+
+        /**
+         * @param maxMessageLength the maximum UTF-8 size of the escaped {@code message}, {@code 0} for no limit
+         * @return this builder
+         */
+        public Builder setMaxMessageLength(int maxMessageLength) {
+            this.maxMessageLength = maxMessageLength;
+            return this;
+        }
+
+        /**
+         * @param maxMdcValueLength the maximum UTF-8 size of each escaped MDC value, {@code 0} for no limit
+         * @return this builder
+         */
+        public Builder setMaxMdcValueLength(int maxMdcValueLength) {
+            this.maxMdcValueLength = maxMdcValueLength;
+            return this;
+        }
+
+        public EventSizeLimits build() {
+            if (maxEventBytes <= 0 && maxMessageLength <= 0 && maxMdcValueLength <= 0) {
+                return DEFAULT;
+            }
+            return new EventSizeLimits(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+/**
+ * Writes one or more fields of a log event.
+ * <p>
+ * Adapters compile their configuration into a {@link FieldWriterPlan} of field writers,
+ * so that options like {@code includeOrigin} are evaluated once instead of for every event.
+ * </p>
+ *
+ * @param <E> the type of the log event
+ */
+public interface FieldWriter<E> {
+
+    /**
+     * Appends the fields of the event, each followed by a comma.
+     * Writes nothing if the field is not present in the event.
+     * <p>
+     * Keys have to be written via {@link SerializationContext#writeKey} or the {@link EcsJsonSerializer} methods that take a context,
+     * so that dotted keys are nested in nested output mode.
+     * Before appending fields whose keys can't be written that way, {@link SerializationContext#closeObjects} has to be called.
+     * </p>
+     */
+    void writeTo(StringBuilder builder, E event, SerializationContext context);
+}
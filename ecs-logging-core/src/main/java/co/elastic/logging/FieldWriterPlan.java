@@ -0,0 +1,373 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable sequence of {@link FieldWriter}s that is compiled once from the configuration of an adapter
+ * and executed for each event in a tight loop.
+ * <p>
+ * Writers for disabled options are not part of the plan, so there's no need to check the configuration for each event.
+ * </p>
+ * <p>
+ * In nested output mode, writers of the same group, like all writers of {@code log.*} fields, are executed one after another,
+ * so that their fields end up in the same object.
+ * The static fields are grouped by the first segment of their keys when the plan is built and are written after all other fields.
+ * </p>
+ * <p>
+ * With a {@link EventSizeLimits#getMaxEventBytes() maximum event size}, the size of the event is checked after each writer.
+ * If the fields of a writer don't fit, their string values are cut, or if that's not enough, the fields are dropped.
+ * The space for the static fields is reserved, so that they are not dropped in favor of fields that are written before them.
+ * </p>
+ *
+ * @param <E> the type of the log event
+ */
+public final class FieldWriterPlan<E> {
+
+    private static final String EVENT_GROUP = "event";
+
+    private final FieldWriter<E>[] writers;
+    private final boolean nestedOutput;
+    private final EventSizeLimits eventSizeLimits;
+    // only used in nested output mode, otherwise the static fields are written by a FieldWriter
+    private final String[] staticKeys;
+    private final String[] staticValues;
+    // the UTF-8 size of the static fields that are written after each writer and each of the static fields in nested output mode
+    private final int[] reservedBytes;
+    private final int[] staticReservedBytes;
+    private final boolean limitEventBytes;
+    // null if neither nested output nor limits are enabled, in which case the stateless default context is used
+    private final ThreadLocal<SerializationContext> contexts;
+
+    private FieldWriterPlan(FieldWriter<E>[] writers, final boolean nestedOutput, final EventSizeLimits eventSizeLimits,
+                            String[] staticKeys, String[] staticValues, int[] reservedBytes, int[] staticReservedBytes) {
+        this.writers = writers;
+        this.nestedOutput = nestedOutput;
+        this.eventSizeLimits = eventSizeLimits;
+        this.staticKeys = staticKeys;
+        this.staticValues = staticValues;
+        this.reservedBytes = reservedBytes;
+        this.staticReservedBytes = staticReservedBytes;
+        this.limitEventBytes = eventSizeLimits.getMaxEventBytes() != Integer.MAX_VALUE;
+        if (SerializationContext.create(nestedOutput, eventSizeLimits) == SerializationContext.DEFAULT) {
+            contexts = null;
+        } else {
+            contexts = new ThreadLocal<SerializationContext>() {
+                @Override
+                protected SerializationContext initialValue() {
+                    return SerializationContext.create(nestedOutput, eventSizeLimits);
+                }
+            };
+        }
+    }
+
+    public static <E> Builder<E> builder() {
+        return new Builder<E>();
+    }
+
+    /**
+     * Writes the fields of the event and ends the JSON object of the event.
+     *
+     * @param objectStart the index of the opening brace of the event, which has already been written
+     * @see EcsJsonSerializer#serializeObjectEnd(StringBuilder, SerializationContext)
+     */
+    public void writeEvent(StringBuilder builder, int objectStart, E event) {
+        SerializationContext context = acquireContext();
+        try {
+            context.start(builder, objectStart);
+            for (int i = 0; i < writers.length; i++) {
+                if (limitEventBytes) {
+                    context.startField(builder, reservedBytes[i]);
+                }
+                writers[i].writeTo(builder, event, context);
+                if (limitEventBytes) {
+                    context.endField(builder);
+                }
+            }
+            for (int i = 0; i < staticKeys.length; i++) {
+                if (limitEventBytes) {
+                    context.startField(builder, staticReservedBytes[i]);
+                }
+                context.writeKey(builder, staticKeys[i]);
+                builder.append(staticValues[i]);
+                if (limitEventBytes) {
+                    context.endField(builder);
+                }
+            }
+            EcsJsonSerializer.serializeObjectEnd(builder, context);
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    private SerializationContext acquireContext() {
+        if (contexts == null) {
+            return SerializationContext.DEFAULT;
+        }
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            // a thread-local context would hardly ever be reused
+            return SerializationContext.create(nestedOutput, eventSizeLimits);
+        }
+        SerializationContext context = contexts.get();
+        if (context.inUse) {
+            // an event is logged while serializing another one, for example from a toString method
+            return SerializationContext.create(nestedOutput, eventSizeLimits);
+        }
+        context.inUse = true;
+        return context;
+    }
+
+    private static void releaseContext(SerializationContext context) {
+        if (context != SerializationContext.DEFAULT) {
+            context.finish();
+            context.inUse = false;
+        }
+    }
+
+    /**
+     * @return the number of writers, not including the static fields in nested output mode
+     */
+    public int size() {
+        return writers.length;
+    }
+
+    public static final class Builder<E> {
+
+        private final List<FieldWriter<E>> writers = new ArrayList<FieldWriter<E>>();
+        private final List<String> groups = new ArrayList<String>();
+        private final List<char[]> staticFields = new ArrayList<char[]>();
+        private final List<FieldWriter<E>> staticFieldsWriters = new ArrayList<FieldWriter<E>>();
+        private boolean nestedOutput;
+        private EventSizeLimits eventSizeLimits = EventSizeLimits.DEFAULT;
+
+        private Builder() {
+        }
+
+        /**
+         * Writes dotted keys, like {@code log.level}, as nested objects, like {@code {"log":{"level":...}}}.
+         */
+        public Builder<E> setNestedOutput(boolean nestedOutput) {
+            this.nestedOutput = nestedOutput;
+            return this;
+        }
+
+        public Builder<E> setEventSizeLimits(EventSizeLimits eventSizeLimits) {
+            this.eventSizeLimits = eventSizeLimits;
+            return this;
+        }
+
+        public Builder<E> add(FieldWriter<E> writer) {
+            return add(null, writer);
+        }
+
+        /**
+         * @param group the first segment of the keys the writer writes, such as {@code log} for {@code log.level},
+         *              or {@code null} if it writes keys with different prefixes
+         */
+        public Builder<E> add(String group, FieldWriter<E> writer) {
+            writers.add(writer);
+            groups.add(group);
+            return this;
+        }
+
+        /**
+         * Only adds the writer if {@code enabled} is {@code true}.
+         */
+        public Builder<E> addIf(boolean enabled, FieldWriter<E> writer) {
+            return addIf(enabled, null, writer);
+        }
+
+        /**
+         * Only adds the writer if {@code enabled} is {@code true}.
+         *
+         * @see #add(String, FieldWriter)
+         */
+        public Builder<E> addIf(boolean enabled, String group, FieldWriter<E> writer) {
+            if (enabled) {
+                add(group, writer);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a writer for fields which are the same for every event.
+         * In nested output mode, the fields are written after all other fields instead.
+         *
+         * @see EcsJsonSerializer#compileStaticFields
+         */
+        public Builder<E> addStaticFields(final char[] staticFields) {
+            FieldWriter<E> writer = new FieldWriter<E>() {
+                @Override
+                public void writeTo(StringBuilder builder, E event, SerializationContext context) {
+                    EcsJsonSerializer.serializeStaticFields(builder, staticFields);
+                }
+            };
+            this.staticFields.add(staticFields);
+            staticFieldsWriters.add(writer);
+            return add(writer);
+        }
+
+        @SuppressWarnings("unchecked")
+        public FieldWriterPlan<E> build() {
+            List<String> staticKeys = new ArrayList<String>();
+            List<String> staticValues = new ArrayList<String>();
+            List<FieldWriter<E>> writers = this.writers;
+            if (nestedOutput) {
+                writers = groupWriters();
+                List<String> keys = new ArrayList<String>();
+                List<String> values = new ArrayList<String>();
+                for (char[] fields : staticFields) {
+                    parseStaticFields(fields, keys, values);
+                }
+                groupStaticFields(keys, values, staticKeys, staticValues);
+            }
+            // computed from the end, as each entry is the size of the static fields that follow
+            int[] staticReservedBytes = new int[staticKeys.size()];
+            int reserved = 0;
+            for (int i = staticKeys.size() - 1; i >= 0; i--) {
+                staticReservedBytes[i] = reserved;
+                reserved += getNestedSize(staticKeys.get(i), staticValues.get(i));
+            }
+            int[] reservedBytes = new int[writers.size()];
+            for (int i = writers.size() - 1; i >= 0; i--) {
+                reservedBytes[i] = reserved;
+                int staticFieldsIndex = staticFieldsWriters.indexOf(writers.get(i));
+                if (staticFieldsIndex >= 0) {
+                    reserved += Utf8Buffer.encodedLength(CharBuffer.wrap(staticFields.get(staticFieldsIndex)), 0, staticFields.get(staticFieldsIndex).length);
+                }
+            }
+            return new FieldWriterPlan<E>(writers.toArray(new FieldWriter[0]), nestedOutput, eventSizeLimits,
+                    staticKeys.toArray(new String[0]), staticValues.toArray(new String[0]), reservedBytes, staticReservedBytes);
+        }
+
+        /**
+         * Returns an upper bound of the UTF-8 size of a static field in nested output mode.
+         * Each dot of the key may turn into {@code ":{"} and a closing brace.
+         */
+        private static int getNestedSize(String quotedKey, String value) {
+            int size = Utf8Buffer.encodedLength(quotedKey, 0, quotedKey.length()) + Utf8Buffer.encodedLength(value, 0, value.length());
+            for (int i = 0; i < quotedKey.length(); i++) {
+                if (quotedKey.charAt(i) == '.') {
+                    size += 4;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Moves the writers of a group right after the first writer of that group and removes the static fields writers.
+         */
+        private List<FieldWriter<E>> groupWriters() {
+            List<FieldWriter<E>> grouped = new ArrayList<FieldWriter<E>>();
+            boolean[] added = new boolean[writers.size()];
+            for (int i = 0; i < writers.size(); i++) {
+                if (added[i] || staticFieldsWriters.contains(writers.get(i))) {
+                    continue;
+                }
+                grouped.add(writers.get(i));
+                String group = groups.get(i);
+                for (int j = i + 1; group != null && j < writers.size(); j++) {
+                    if (group.equals(groups.get(j))) {
+                        grouped.add(writers.get(j));
+                        added[j] = true;
+                    }
+                }
+            }
+            return grouped;
+        }
+
+        /**
+         * Splits pre-escaped static fields, such as {@code "service.name":"foo",}, into {@code "service.name":} and {@code "foo",}.
+         */
+        private static void parseStaticFields(char[] fields, List<String> keys, List<String> values) {
+            int i = 0;
+            while ((i = indexOf(fields, '"', i)) >= 0) {
+                int keyEnd = indexOfClosingQuote(fields, i + 1) + 1;
+                int valueStart = indexOf(fields, ':', keyEnd) + 1;
+                while (fields[valueStart] == ' ') {
+                    valueStart++;
+                }
+                int valueEnd = fields[valueStart] == '"'
+                        ? indexOfClosingQuote(fields, valueStart + 1) + 1
+                        : indexOf(fields, ',', valueStart);
+                keys.add(new String(fields, i, keyEnd - i) + ':');
+                values.add(new String(fields, valueStart, valueEnd - valueStart) + ',');
+                i = valueEnd + 1;
+            }
+        }
+
+        /**
+         * Groups the fields by the first segment of their keys, in the order of first occurrence.
+         * The {@code event} group comes last so that it's merged with {@code event.truncated}.
+         */
+        private static void groupStaticFields(List<String> keys, List<String> values, List<String> groupedKeys, List<String> groupedValues) {
+            boolean[] added = new boolean[keys.size()];
+            for (int pass = 0; pass < 2; pass++) {
+                boolean eventGroupPass = pass == 1;
+                for (int i = 0; i < keys.size(); i++) {
+                    String group = getGroup(keys.get(i));
+                    if (added[i] || EVENT_GROUP.equals(group) != eventGroupPass) {
+                        continue;
+                    }
+                    for (int j = i; j < keys.size(); j++) {
+                        if (!added[j] && group.equals(getGroup(keys.get(j)))) {
+                            groupedKeys.add(keys.get(j));
+                            groupedValues.add(values.get(j));
+                            added[j] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        private static String getGroup(String quotedKey) {
+            int dot = quotedKey.indexOf('.');
+            return quotedKey.substring(1, dot > 0 ? dot : quotedKey.length() - 2);
+        }
+
+        private static int indexOf(char[] chars, char c, int from) {
+            for (int i = from; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indexOfClosingQuote(char[] chars, int from) {
+            for (int i = from; i < chars.length; i++) {
+                if (chars[i] == '\\') {
+                    i++;
+                } else if (chars[i] == '"') {
+                    return i;
+                }
+            }
+            return chars.length - 1;
+        }
+    }
+}
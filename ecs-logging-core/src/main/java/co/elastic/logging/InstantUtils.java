@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.lang.reflect.Method;
+
+/**
+ * Provides access to the nano-of-second of {@code java.time.Instant}s that logging frameworks expose via a {@code getInstant()} method,
+ * such as logback 1.3+ and {@code java.util.logging.LogRecord} on Java 9+.
+ * <p>
+ * As this library is compatible with Java 7, the {@code getInstant()} methods can't be referenced directly.
+ * They are looked up once and invoked reflectively, with a shared empty argument array.
+ * The nano-of-second is read by {@link JavaTimeInstants}, which is only loaded if {@code java.time} is available,
+ * so that the {@code int} isn't boxed by a reflective call.
+ * </p>
+ */
+public final class InstantUtils {
+
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final boolean JAVA_TIME_AVAILABLE = isJavaTimeAvailable();
+
+    private InstantUtils() {
+    }
+
+    /**
+     * @param type the type declaring a {@code getInstant()} method that returns a {@code java.time.Instant}
+     * @return the {@code getInstant()} method, or {@code null} if it's not available
+     */
+    public static Method findGetInstantMethod(Class<?> type) {
+        if (!JAVA_TIME_AVAILABLE) {
+            return null;
+        }
+        try {
+            return type.getMethod("getInstant");
+        } catch (Exception ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * @param getInstant the method returned by {@link #findGetInstantMethod(Class)}, may be {@code null}
+     * @param target     the object to invoke {@code getInstant()} on
+     * @return the nano-of-second of the instant, or {@code -1} if not available
+     */
+    public static int getNanoOfSecond(Method getInstant, Object target) {
+        if (getInstant == null) {
+            return -1;
+        }
+        try {
+            Object instant = getInstant.invoke(target, NO_ARGS);
+            if (instant == null) {
+                return -1;
+            }
+            return JavaTimeInstants.getNano(instant);
+        } catch (Exception ignore) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the seconds since epoch, rounded down so that timestamps before 1970 have a non-negative {@link #getNanoOfSecond(long)}
+     */
+    public static long getEpochSecond(long epochMilli) {
+        return TimestampSerializer.floorDiv(epochMilli, 1000);
+    }
+
+    /**
+     * @return the nano-of-second of an epoch timestamp in milliseconds, from 0 to 999,000,000
+     */
+    public static int getNanoOfSecond(long epochMilli) {
+        return (int) TimestampSerializer.floorMod(epochMilli, 1000) * 1000000;
+    }
+
+    private static boolean isJavaTimeAvailable() {
+        try {
+            Class.forName("java.time.Instant");
+            return true;
+        } catch (Exception ignore) {
+            return false;
+        } catch (LinkageError ignore) {
+            return false;
+        }
+    }
+}
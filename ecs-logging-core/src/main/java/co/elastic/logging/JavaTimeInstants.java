@@ -0,0 +1,44 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.time.Instant;
+
+/**
+ * Reads the nano-of-second of a {@link Instant} without the boxing of a reflective call.
+ * <p>
+ * This class references Java 8 APIs.
+ * It must only be loaded after {@link InstantUtils} has made sure that {@code java.time} is available.
+ * </p>
+ */
+final class JavaTimeInstants {
+
+    private JavaTimeInstants() {
+    }
+
+    static int getNano(Object instant) {
+        return ((Instant) instant).getNano();
+    }
+}
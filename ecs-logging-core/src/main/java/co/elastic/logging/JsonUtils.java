@@ -65,39 +65,119 @@ public final class JsonUtils {
         quoteAsString(content, 0, content.length(), sb);
     }
 
+    /**
+     * JSON-escapes the content as long as the escaped chars fit into {@code maxBytes} when encoded as UTF-8.
+     * <p>
+     * An escape sequence or a surrogate pair is never split.
+     * </p>
+     *
+     * @return {@code true} if the content has been truncated
+     */
+    public static boolean quoteAsString(CharSequence content, StringBuilder sb, int maxBytes) {
+        // each char takes at most 6 bytes when escaped, so short content doesn't need to be measured
+        if (content == null || content.length() <= maxBytes / 6) {
+            quoteAsString(content, sb);
+            return false;
+        }
+        final int end = content.length();
+        int bytes = 0;
+        int runStart = 0;
+        for (int i = 0; i < end; ++i) {
+            char c = content.charAt(i);
+            boolean escape = needsEscaping(c);
+            int chars = 1;
+            int charBytes;
+            if (escape) {
+                charBytes = sOutputEscapes128[c] < 0 ? 6 : 2;
+            } else if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(content.charAt(i + 1))) {
+                chars = 2;
+                charBytes = 4;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // malformed surrogates are encoded as '?'
+                charBytes = 1;
+            } else {
+                charBytes = 3;
+            }
+            if (bytes + charBytes > maxBytes) {
+                if (i > runStart) {
+                    sb.append(content, runStart, i);
+                }
+                return true;
+            }
+            bytes += charBytes;
+            if (escape) {
+                if (i > runStart) {
+                    sb.append(content, runStart, i);
+                }
+                appendEscaped(c, sb);
+                runStart = i + 1;
+            }
+            i += chars - 1;
+        }
+        if (runStart < end) {
+            sb.append(content, runStart, end);
+        }
+        return false;
+    }
+
+    /**
+     * JSON-escapes the chars from {@code start} (inclusive) to {@code end} (exclusive).
+     * <p>
+     * As most chars don't need escaping, runs of safe chars are appended in bulk.
+     * </p>
+     */
     public static void quoteAsString(CharSequence content, int start, int end, StringBuilder sb) {
         if (content == null) {
             sb.append("null");
             return;
         }
-        final int[] escCodes = sOutputEscapes128;
-        final int escLen = escCodes.length;
+        int runStart = start;
         for (int i = start; i < end; ++i) {
             char c = content.charAt(i);
-            if (c >= escLen || escCodes[c] == 0) {
-                sb.append(c);
-                continue;
+            if (needsEscaping(c)) {
+                if (i > runStart) {
+                    sb.append(content, runStart, i);
+                }
+                appendEscaped(c, sb);
+                runStart = i + 1;
             }
-            sb.append('\\');
-            int escCode = escCodes[c];
-            if (escCode < 0) { // generic quoting (hex value)
-                // The only negative value sOutputEscapes128 returns
-                // is CharacterEscapes.ESCAPE_STANDARD, which mean
-                // appendQuotes should encode using the Unicode encoding;
-                // not sure if this is the right way to encode for
-                // CharacterEscapes.ESCAPE_CUSTOM or other (future)
-                // CharacterEscapes.ESCAPE_XXX values.
+        }
+        if (runStart < end) {
+            sb.append(content, runStart, end);
+        }
+    }
 
-                // We know that it has to fit in just 2 hex chars
-                sb.append('u');
-                sb.append('0');
-                sb.append('0');
-                int value = c;  // widening
-                sb.append(HC[value >> 4]);
-                sb.append(HC[value & 0xF]);
-            } else { // "named", i.e. prepend with slash
-                sb.append((char) escCode);
-            }
+    /**
+     * Equivalent to checking {@link #sOutputEscapes128} but without the array lookup and bounds check
+     */
+    static boolean needsEscaping(char c) {
+        return c < 0x20 || c == '"' || c == '\\';
+    }
+
+    static void appendEscaped(char c, StringBuilder sb) {
+        sb.append('\\');
+        int escCode = sOutputEscapes128[c];
+        if (escCode < 0) { // generic quoting (hex value)
+            // The only negative value sOutputEscapes128 returns
+            // is CharacterEscapes.ESCAPE_STANDARD, which mean
+            // appendQuotes should encode using the Unicode encoding;
+            // not sure if this is the right way to encode for
+            // CharacterEscapes.ESCAPE_CUSTOM or other (future)
+            // CharacterEscapes.ESCAPE_XXX values.
+
+            // We know that it has to fit in just 2 hex chars
+            sb.append('u');
+            sb.append('0');
+            sb.append('0');
+            int value = c;  // widening
+            sb.append(HC[value >> 4]);
+            sb.append(HC[value & 0xF]);
+        } else { // "named", i.e. prepend with slash
+            sb.append((char) escCode);
         }
     }
 
@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the escaped {@code "key":"} rendering of MDC keys.
+ * <p>
+ * The set of MDC keys used by an application is typically small and static,
+ * so the keys don't have to be escaped for each entry of each event.
+ * Reserved keys, which are not expected to be used in MDC, are part of the cache and map to {@link #RESERVED},
+ * so that filtering them out does not require an additional lookup.
+ * Once the cache is full, new keys are escaped on each call but not added to the cache.
+ * A {@code null} key can't be stored in the map and is rendered as {@code "null"}, as it was before the cache existed.
+ * </p>
+ */
+final class MdcKeyCache {
+
+    static final int MAX_SIZE = 1024;
+    /**
+     * Marks keys that are filtered out. Can't clash with an actual fragment as those always contain quotes.
+     */
+    static final String RESERVED = "";
+    private static final String NULL_KEY_FRAGMENT = "\"null\":\"";
+    private static final ConcurrentMap<String, String> KEY_FRAGMENTS = new ConcurrentHashMap<String, String>();
+
+    static {
+        // Those keys are not expected to be used in MDC, thus we filter-out those keys to prevent major issues
+        // when they are present as top-level MDC keys.
+        for (String reservedKey : new String[]{
+                "@timestamp",
+                "message",
+                "log.logger",
+                "log.level",
+                "event.dataset",
+                "process.thread.name",
+                "process.thread.id",
+                "ecs.version"}) {
+            KEY_FRAGMENTS.put(reservedKey, RESERVED);
+        }
+    }
+
+    private MdcKeyCache() {
+    }
+
+    /**
+     * @return the escaped {@code "key":"} fragment or {@link #RESERVED} if the key should not be serialized
+     */
+    static String getKeyFragment(String key) {
+        if (key == null) {
+            return NULL_KEY_FRAGMENT;
+        }
+        String fragment = KEY_FRAGMENTS.get(key);
+        if (fragment == null) {
+            StringBuilder sb = new StringBuilder(key.length() + 4);
+            sb.append('\"');
+            JsonUtils.quoteAsString(key, sb);
+            sb.append("\":\"");
+            fragment = sb.toString();
+            if (KEY_FRAGMENTS.size() < MAX_SIZE) {
+                KEY_FRAGMENTS.putIfAbsent(key, fragment);
+            }
+        }
+        return fragment;
+    }
+
+    static int size() {
+        return KEY_FRAGMENTS.size();
+    }
+}
@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.Collection;
+
+/**
+ * An immutable trie to check whether a string starts with any of a set of prefixes,
+ * in time proportional to the length of the matched prefix rather than the number of prefixes.
+ */
+final class PrefixTrie {
+
+    private static final char[] NO_CHARS = new char[0];
+    private static final PrefixTrie[] NO_CHILDREN = new PrefixTrie[0];
+
+    private char[] chars = NO_CHARS;
+    private PrefixTrie[] children = NO_CHILDREN;
+    private boolean terminal;
+
+    private PrefixTrie() {
+    }
+
+    static PrefixTrie of(Collection<String> prefixes) {
+        PrefixTrie root = new PrefixTrie();
+        for (String prefix : prefixes) {
+            root.add(prefix);
+        }
+        return root;
+    }
+
+    private void add(String prefix) {
+        PrefixTrie node = this;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.getOrCreateChild(prefix.charAt(i));
+        }
+        node.terminal = true;
+    }
+
+    private PrefixTrie getOrCreateChild(char c) {
+        PrefixTrie child = getChild(c);
+        if (child == null) {
+            int length = chars.length;
+            char[] newChars = new char[length + 1];
+            PrefixTrie[] newChildren = new PrefixTrie[length + 1];
+            System.arraycopy(chars, 0, newChars, 0, length);
+            System.arraycopy(children, 0, newChildren, 0, length);
+            child = new PrefixTrie();
+            newChars[length] = c;
+            newChildren[length] = child;
+            chars = newChars;
+            children = newChildren;
+        }
+        return child;
+    }
+
+    private PrefixTrie getChild(char c) {
+        char[] chars = this.chars;
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == c) {
+                return children[i];
+            }
+        }
+        return null;
+    }
+
+    boolean isEmpty() {
+        return !terminal && chars.length == 0;
+    }
+
+    /**
+     * Prefixes only match at package or class boundaries:
+     * {@code org.junit} matches {@code org.junit}, {@code org.junit.Test} and {@code org.junit$Inner} but not {@code org.junitx.Test}.
+     * Prefixes that end with {@code .} or {@code $}, such as {@code java.}, match anything after them.
+     *
+     * @return {@code true} if the given string starts with any of the prefixes
+     */
+    boolean matchesPrefixOf(String s) {
+        PrefixTrie node = this;
+        for (int i = 0; ; i++) {
+            if (node.terminal && isBoundary(s, i)) {
+                return true;
+            }
+            if (i == s.length()) {
+                return false;
+            }
+            node = node.getChild(s.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    private static boolean isBoundary(String s, int i) {
+        return i == 0 || i == s.length() || isSeparator(s.charAt(i)) || isSeparator(s.charAt(i - 1));
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == '$';
+    }
+}
@@ -0,0 +1,402 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+/**
+ * The state of an event while it's being serialized, which is passed along to all {@link FieldWriter}s of the event.
+ * <p>
+ * With nested output, dotted keys, like {@code "log.level"}, are written as nested objects, like {@code "log":{"level":...}},
+ * right away instead of rewriting the event once it's complete.
+ * The context keeps track of the objects that are currently open and only closes them once a key with a different prefix is written.
+ * Hence, keys with the same prefix end up in the same object if they are written one after another,
+ * which is why {@link FieldWriterPlan} groups writers and static fields by their prefix.
+ * If an object of the same name has already been written, the rest of the key is written as a dotted key instead,
+ * so that no key is emitted twice within the same object.
+ * This also applies if a key is both used for a value and as the prefix of other keys, like {@code "a"} and {@code "a.b"}.
+ * Empty segments, like in {@code "a..b"} or {@code "a."}, are never nested.
+ * </p>
+ * <p>
+ * With a {@link EventSizeLimits#getMaxEventBytes() maximum event size}, the context counts the UTF-8 bytes of the event while it's written,
+ * so that string values can be cut to the space that's left while they are escaped.
+ * {@link FieldWriterPlan} checks the size after each field and shrinks or drops fields that don't fit,
+ * so that an oversized event is never built.
+ * Whether a field of the event has been truncated is tracked by the context, see {@link #isTruncated()}.
+ * </p>
+ * <p>
+ * Without nested output and limits, {@link #DEFAULT} writes the keys as-is and doesn't hold any state.
+ * Other instances are not thread-safe and can be reused for subsequent events, see {@link #start(StringBuilder, int)}.
+ * </p>
+ */
+public final class SerializationContext {
+
+    /**
+     * Writes flat keys and doesn't enforce any limits.
+     */
+    public static final SerializationContext DEFAULT = new SerializationContext(false, EventSizeLimits.DEFAULT);
+    private static final int ROOT = -1;
+    // "event.truncated":true, or "event":{"truncated":true}, in nested output mode
+    static final int MAX_EVENT_TRUNCATED_BYTES = "\"event\":{\"truncated\":true},".length();
+
+    private final boolean nestedOutput;
+    private final EventSizeLimits limits;
+    // whether the context is currently used to serialize an event, to detect recursive logging on the same thread
+    boolean inUse;
+    private StringBuilder builder;
+    private int objectStart;
+    // the names of the keys that have been written within nested objects, and the index of the name of the object they belong to
+    private CharSequence[] names;
+    private int[] nameStarts;
+    private int[] nameEnds;
+    private int[] nameParents;
+    private int nameCount;
+    // the indices of the names of the objects that are currently open
+    private int[] openObjects;
+    private int depth;
+    private boolean truncated;
+    // the UTF-8 size of the event from objectStart to countedLength
+    private int countedLength;
+    private int countedBytes;
+    // the size of the fields that are written after the current field and can't be cut, such as the static fields
+    private int reservedBytes;
+    // the state before the current field, to drop the field if it doesn't fit
+    private int fieldStart;
+    private char fieldStartChar;
+    private int fieldStartBytes;
+    private int fieldStartNameCount;
+    private int fieldStartDepth;
+    private int[] fieldStartOpenObjects;
+
+    private SerializationContext(boolean nestedOutput, EventSizeLimits limits) {
+        this.nestedOutput = nestedOutput;
+        this.limits = limits;
+        if (nestedOutput) {
+            names = new CharSequence[16];
+            nameStarts = new int[16];
+            nameEnds = new int[16];
+            nameParents = new int[16];
+            openObjects = new int[8];
+            fieldStartOpenObjects = new int[8];
+        }
+    }
+
+    /**
+     * @param nestedOutput whether dotted keys, like {@code "log.level"}, should be written as nested objects,
+     *                     like {@code "log":{"level":...}}
+     * @param limits       the limits for the size of the event
+     * @return a new context, or {@link #DEFAULT} if neither nested output nor limits are enabled
+     */
+    public static SerializationContext create(boolean nestedOutput, EventSizeLimits limits) {
+        if (!nestedOutput && !limits.isEnabled()) {
+            return DEFAULT;
+        }
+        return new SerializationContext(nestedOutput, limits);
+    }
+
+    /**
+     * Resets the state so that the context can be used for the event that starts at {@code objectStart}.
+     *
+     * @param builder     the builder the event is serialized into
+     * @param objectStart the index of the opening brace of the event
+     */
+    public void start(StringBuilder builder, int objectStart) {
+        if (this == DEFAULT) {
+            return;
+        }
+        this.builder = builder;
+        this.objectStart = objectStart;
+        nameCount = 0;
+        depth = 0;
+        truncated = false;
+        countedLength = objectStart;
+        countedBytes = 0;
+        reservedBytes = 0;
+        fieldStartBytes = 0;
+    }
+
+    public boolean isNestedOutput() {
+        return nestedOutput;
+    }
+
+    public EventSizeLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Returns the builder the current event is serialized into, for callbacks that only receive the context as their state.
+     * Always {@code null} for {@link #DEFAULT}, which doesn't hold any state.
+     */
+    public StringBuilder getBuilder() {
+        return builder;
+    }
+
+    /**
+     * @return whether a field of the current event has been truncated or dropped
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Marks the current event as truncated, so that {@link EcsJsonSerializer#serializeObjectEnd(StringBuilder, SerializationContext)}
+     * adds {@code "event.truncated":true}.
+     * Has no effect on {@link #DEFAULT}, which doesn't enforce any limits.
+     */
+    public void markTruncated() {
+        if (this != DEFAULT) {
+            truncated = true;
+        }
+    }
+
+    /**
+     * Returns how many UTF-8 bytes can still be added to the event without exceeding the {@link EventSizeLimits#getMaxEventBytes() maximum size}.
+     * The space for the truncation marker, for closing the event and for the fields that are {@linkplain #startField reserved} is not included.
+     *
+     * @return the number of bytes that are left, may be negative, {@link Integer#MAX_VALUE} if the size of the event is not limited
+     */
+    public int getRemainingBytes(StringBuilder builder) {
+        int maxEventBytes = limits.getMaxEventBytes();
+        if (maxEventBytes == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        if (builder.length() < countedLength) {
+            // fields have been removed
+            countedLength = objectStart;
+            countedBytes = 0;
+        }
+        countedBytes += Utf8Buffer.encodedLength(builder, countedLength, builder.length());
+        countedLength = builder.length();
+        // the closing brace, the new line and the closing braces of the objects that are still open
+        return maxEventBytes - MAX_EVENT_TRUNCATED_BYTES - 2 - depth - reservedBytes - countedBytes;
+    }
+
+    /**
+     * Returns how many UTF-8 bytes the field that is currently written may take in total, including what has already been written.
+     * String values can be cut to that size while they are escaped, so that an oversized value is never copied into the buffer.
+     * If the field has multiple values that exceed the space together, {@link #endField(StringBuilder)} cuts them evenly.
+     *
+     * @return the maximum size of the current field, {@link Integer#MAX_VALUE} if the size of the event is not limited
+     */
+    int getFieldBudget(StringBuilder builder) {
+        int remainingBytes = getRemainingBytes(builder);
+        if (remainingBytes == Integer.MAX_VALUE) {
+            return remainingBytes;
+        }
+        return remainingBytes + countedBytes - fieldStartBytes;
+    }
+
+    /**
+     * Remembers the current state before a field is written, so that it can be shrunk or dropped by {@link #endField(StringBuilder)}.
+     *
+     * @param reservedBytes the size of the fields that are written after this field and should not be cut to make room for it
+     */
+    void startField(StringBuilder builder, int reservedBytes) {
+        this.reservedBytes = reservedBytes;
+        getRemainingBytes(builder);
+        fieldStart = builder.length();
+        fieldStartChar = builder.charAt(fieldStart - 1);
+        fieldStartBytes = countedBytes;
+        if (nestedOutput) {
+            fieldStartNameCount = nameCount;
+            fieldStartDepth = depth;
+            if (fieldStartOpenObjects.length < depth) {
+                fieldStartOpenObjects = new int[openObjects.length];
+            }
+            System.arraycopy(openObjects, 0, fieldStartOpenObjects, 0, depth);
+        }
+    }
+
+    /**
+     * Makes sure that the field that has been written since {@link #startField(StringBuilder, int)} fits into the event.
+     * Otherwise, its string values are cut, or if that's not enough, the field is removed.
+     */
+    void endField(StringBuilder builder) {
+        int remainingBytes = getRemainingBytes(builder);
+        if (remainingBytes >= 0) {
+            return;
+        }
+        truncated = true;
+        if (!EventSizeLimiter.limit(builder, fieldStart, countedBytes - fieldStartBytes + remainingBytes)) {
+            dropField(builder);
+        }
+        countedLength = fieldStart;
+        countedBytes = fieldStartBytes;
+    }
+
+    private void dropField(StringBuilder builder) {
+        builder.setLength(fieldStart);
+        // closing an object replaces the trailing comma of the previous field
+        builder.setCharAt(fieldStart - 1, fieldStartChar);
+        if (nestedOutput) {
+            for (int i = fieldStartNameCount; i < nameCount; i++) {
+                names[i] = null;
+            }
+            nameCount = fieldStartNameCount;
+            depth = fieldStartDepth;
+            System.arraycopy(fieldStartOpenObjects, 0, openObjects, 0, depth);
+        }
+    }
+
+    /**
+     * Releases the references to the builder and the keys of the last event.
+     */
+    void finish() {
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = null;
+        }
+        nameCount = 0;
+        depth = 0;
+        truncated = false;
+        builder = null;
+    }
+
+    /**
+     * Writes a key that is already quoted, escaped and followed by a colon, such as {@code "log.level":}.
+     */
+    public void writeKey(StringBuilder builder, String quotedKey) {
+        writeKey(builder, quotedKey, 0, quotedKey.length());
+    }
+
+    /**
+     * Writes a key that is already quoted, escaped and followed by a colon, such as {@code "log.level":},
+     * from {@code start} (inclusive) to {@code end} (exclusive) of {@code quotedKey}.
+     * <p>
+     * With nested output, objects are closed and opened as needed before the last segment of the key is written.
+     * As escaping never produces a dot, splitting the escaped key into segments is equivalent to splitting the raw key.
+     * The key is referenced until the event is complete, so it must not be modified in the meantime.
+     * </p>
+     */
+    public void writeKey(StringBuilder builder, CharSequence quotedKey, int start, int end) {
+        if (!nestedOutput) {
+            builder.append(quotedKey, start, end);
+            return;
+        }
+        int segmentStart = start + 1;
+        int keyEnd = end - 2;
+        // stay within the open objects that match the prefix of the key
+        int level = 0;
+        int segmentEnd;
+        while (level < depth && (segmentEnd = indexOfSegmentEnd(quotedKey, segmentStart, keyEnd)) >= 0
+                && isName(openObjects[level], quotedKey, segmentStart, segmentEnd)) {
+            segmentStart = segmentEnd + 1;
+            level++;
+        }
+        closeObjects(builder, level);
+        while ((segmentEnd = indexOfSegmentEnd(quotedKey, segmentStart, keyEnd)) >= 0
+                && !hasName(quotedKey, segmentStart, segmentEnd)) {
+            builder.append('"').append(quotedKey, segmentStart, segmentEnd).append("\":{");
+            openObject(addName(quotedKey, segmentStart, segmentEnd));
+            segmentStart = segmentEnd + 1;
+        }
+        addName(quotedKey, segmentStart, keyEnd);
+        builder.append('"').append(quotedKey, segmentStart, end);
+    }
+
+    /**
+     * Closes all open objects, so that fields can be added to the root object.
+     * Needs to be called before appending fields whose keys have not been written via {@link #writeKey},
+     * for example a JSON object that has been serialized by another library.
+     */
+    public void closeObjects(StringBuilder builder) {
+        closeObjects(builder, 0);
+    }
+
+    private void closeObjects(StringBuilder builder, int level) {
+        for (; depth > level; depth--) {
+            EcsJsonSerializer.removeIfEndsWith(builder, ",");
+            builder.append("},");
+        }
+    }
+
+    /**
+     * @return the index of the dot that ends the current segment or {@code -1} if the rest of the key can't be nested
+     */
+    private static int indexOfSegmentEnd(CharSequence key, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (key.charAt(i) == '.') {
+                // don't nest empty segments, like in "a..b" or "a."
+                return i == start || i == end - 1 || key.charAt(i + 1) == '.' ? -1 : i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether a key of the same name has already been written to the innermost open object
+     */
+    private boolean hasName(CharSequence key, int start, int end) {
+        int parent = depth > 0 ? openObjects[depth - 1] : ROOT;
+        for (int i = nameCount - 1; i >= 0; i--) {
+            if (nameParents[i] == parent && isName(i, key, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isName(int name, CharSequence key, int start, int end) {
+        int length = end - start;
+        int nameStart = nameStarts[name];
+        if (nameEnds[name] - nameStart != length) {
+            return false;
+        }
+        CharSequence other = names[name];
+        for (int i = 0; i < length; i++) {
+            if (other.charAt(nameStart + i) != key.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addName(CharSequence key, int start, int end) {
+        if (nameCount == names.length) {
+            int capacity = nameCount * 2;
+            CharSequence[] names = new CharSequence[capacity];
+            System.arraycopy(this.names, 0, names, 0, nameCount);
+            this.names = names;
+            nameStarts = copyOf(nameStarts, capacity);
+            nameEnds = copyOf(nameEnds, capacity);
+            nameParents = copyOf(nameParents, capacity);
+        }
+        names[nameCount] = key;
+        nameStarts[nameCount] = start;
+        nameEnds[nameCount] = end;
+        nameParents[nameCount] = depth > 0 ? openObjects[depth - 1] : ROOT;
+        return nameCount++;
+    }
+
+    private void openObject(int name) {
+        if (depth == openObjects.length) {
+            openObjects = copyOf(openObjects, depth * 2);
+        }
+        openObjects[depth++] = name;
+    }
+
+    private static int[] copyOf(int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, capacity));
+        return copy;
+    }
+}
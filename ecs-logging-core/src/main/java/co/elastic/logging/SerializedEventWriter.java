@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Writes events that have already been serialized on the logging threads from a background thread.
+ * <p>
+ * Logging threads {@linkplain #acquireBuffer() acquire} a pooled {@link Utf8Buffer},
+ * serialize the event into it while the MDC, the thread name and the message parameters are still at hand,
+ * and {@linkplain #enqueue(Object, boolean) enqueue} the buffer.
+ * That way, serialization scales with the number of logging threads and the background thread only copies and writes bytes.
+ * A drained batch is copied into a single buffer and written with one call to the {@link OutputStream},
+ * after which the event buffers are returned to the pool.
+ * </p>
+ * <p>
+ * The pool is a fixed-size array of slots which are claimed and released via compare-and-set,
+ * so that neither acquiring nor releasing a buffer takes a lock.
+ * Only a few slots, starting at a pseudo-random one, are probed, so that the cost doesn't grow with the size of the pool.
+ * If none of them holds a buffer, a new one is allocated. Buffers that have grown larger than {@link #MAX_POOLED_CAPACITY} are not pooled.
+ * </p>
+ */
+public abstract class SerializedEventWriter extends AsyncBatchWriter<Utf8Buffer> {
+
+    static final int MAX_POOL_SIZE = 1024;
+    static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final int MAX_PROBES = 8;
+    private static final int INITIAL_EVENT_CAPACITY = 1024;
+    private static final int MAX_RETAINED_BATCH_CAPACITY = 1024 * 1024;
+
+    private final OutputStream outputStream;
+    private final AtomicReferenceArray<Utf8Buffer> pool;
+    private Utf8Buffer batchBuffer = new Utf8Buffer(64 * 1024);
+
+    /**
+     * @param threadName   the name of the background thread
+     * @param outputStream the stream the serialized events are written to, only accessed from the background thread
+     * @param bufferSize   the number of events the ring buffer can hold
+     * @param maxBatchSize the maximum number of events written at once
+     * @param waitStrategy how the background thread waits for new events
+     */
+    protected SerializedEventWriter(String threadName, OutputStream outputStream, int bufferSize, int maxBatchSize, WaitStrategy waitStrategy) {
+        super(Utf8Buffer.class, threadName, bufferSize, maxBatchSize, waitStrategy);
+        this.outputStream = outputStream;
+        // the ring buffer and the batch being written can't hold more buffers than that
+        this.pool = new AtomicReferenceArray<Utf8Buffer>(Math.min(MAX_POOL_SIZE, bufferSize + maxBatchSize));
+    }
+
+    /**
+     * Returns an empty buffer from the pool, or a new one if the pool is empty.
+     * The buffer has to be either {@linkplain #enqueue(Object, boolean) enqueued} or {@linkplain #releaseBuffer(Utf8Buffer) released}.
+     */
+    public Utf8Buffer acquireBuffer() {
+        final int length = pool.length();
+        // start at a pseudo-random slot so that concurrent threads don't contend for the same slots
+        final int start = probeStart(length);
+        for (int i = 0; i < MAX_PROBES && i < length; i++) {
+            int slot = start + i < length ? start + i : start + i - length;
+            Utf8Buffer buffer = pool.get(slot);
+            if (buffer != null && pool.compareAndSet(slot, buffer, null)) {
+                return buffer;
+            }
+        }
+        return new Utf8Buffer(INITIAL_EVENT_CAPACITY);
+    }
+
+    /**
+     * Returns a buffer to the pool, for example if it could not be enqueued.
+     */
+    public void releaseBuffer(Utf8Buffer buffer) {
+        if (buffer.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        buffer.reset();
+        final int length = pool.length();
+        final int start = probeStart(length);
+        for (int i = 0; i < MAX_PROBES && i < length; i++) {
+            int slot = start + i < length ? start + i : start + i - length;
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Mixes the id of the current thread with the time,
+     * so that concurrent threads as well as subsequent calls on the same thread start at different slots.
+     * {@code ThreadLocalRandom} is not available in Java 6.
+     */
+    private static int probeStart(int length) {
+        long hash = (Thread.currentThread().getId() + System.nanoTime()) * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 33) % length);
+    }
+
+    @Override
+    protected void writeBatch(Utf8Buffer[] batch, int size) throws Exception {
+        try {
+            for (int i = 0; i < size; i++) {
+                batchBuffer.append(batch[i]);
+            }
+            batchBuffer.writeTo(outputStream);
+            outputStream.flush();
+        } finally {
+            for (int i = 0; i < size; i++) {
+                releaseBuffer(batch[i]);
+            }
+            if (batchBuffer.capacity() > MAX_RETAINED_BATCH_CAPACITY) {
+                batchBuffer = new Utf8Buffer(64 * 1024);
+            } else {
+                batchBuffer.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded cache of serialized {@code error.stack_trace} values.
+ * <p>
+ * When the same exception is logged over and over again, for example during an incident,
+ * this avoids rendering and escaping the full stack trace for each event.
+ * The key is a 64 bit fingerprint of the types, messages and frames of the exception
+ * and of all of its suppressed exceptions and causes, which is computed without allocating intermediate objects.
+ * To guard against fingerprint collisions, a hit is only accepted if the type, message and depth of the
+ * outermost exception match as well.
+ * Exceptions whose message differs for each occurrence don't benefit from the cache.
+ * </p>
+ * <p>
+ * The cache is thread-safe and lock-free on the lookup path.
+ * When the maximum size is reached, an entry is evicted for each new one in approximate least-recently-used order,
+ * following the clock algorithm:
+ * a hit marks the entry as referenced, and the eviction sweep gives referenced entries a second chance by clearing the mark,
+ * so that stack traces which are still logged survive a burst of one-off exceptions.
+ * Unlike a strict LRU cache, this doesn't require a global access order that each hit would have to update.
+ * A single instance may be shared across multiple layouts.
+ * </p>
+ */
+public final class StackTraceCache {
+
+    /**
+     * Bounds the number of exceptions that contribute to the fingerprint,
+     * which also terminates the traversal of circular references without having to track the visited exceptions.
+     */
+    private static final int MAX_FINGERPRINTED_THROWABLES = 64;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final ConcurrentMap<Long, CachedStackTrace> cache = new ConcurrentHashMap<Long, CachedStackTrace>();
+    private final int maxSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * The position of the eviction sweep, guarded by {@code this}.
+     * The iterators of {@link ConcurrentHashMap} are weakly consistent, so it stays usable while the map is modified.
+     */
+    private Iterator<Map.Entry<Long, CachedStackTrace>> clockHand;
+
+    /**
+     * @param maxSize the maximum number of stack traces to keep
+     */
+    public StackTraceCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Creates a cache if the size is positive.
+     *
+     * @param maxSize the maximum number of cached stack traces
+     * @return a new cache or {@code null} if {@code maxSize} is zero or negative, which disables caching
+     */
+    public static StackTraceCache createIfEnabled(int maxSize) {
+        return maxSize > 0 ? new StackTraceCache(maxSize) : null;
+    }
+
+    void serializeStackTrace(StringBuilder builder, Throwable thrown, boolean stackTraceAsArray, StackTraceOptions options) {
+        if (EcsJsonSerializer.hasCustomStackTrace(thrown.getClass())) {
+            // the rendering isn't derived from the frames, so it can't be looked up by them
+            EcsJsonSerializer.serializeStackTrace(builder, thrown, stackTraceAsArray, options);
+            return;
+        }
+        StackTraceElement[] frames = thrown.getStackTrace();
+        String message = thrown.getLocalizedMessage();
+        long fingerprint = fingerprint(thrown, message, frames, stackTraceAsArray, options);
+        Long key = fingerprint;
+        CachedStackTrace cached = cache.get(key);
+        if (cached != null && cached.matches(thrown, message, frames.length, stackTraceAsArray, options)) {
+            hits.incrementAndGet();
+            if (!cached.referenced) {
+                cached.referenced = true;
+            }
+            builder.append(cached.value);
+        } else {
+            misses.incrementAndGet();
+            int start = builder.length();
+            EcsJsonSerializer.serializeStackTrace(builder, thrown, stackTraceAsArray, options);
+            if (cached == null && cache.size() >= maxSize) {
+                evictOne();
+            }
+            cache.put(key, new CachedStackTrace(thrown.getClass(), message, frames.length, stackTraceAsArray, options, builder.substring(start)));
+        }
+    }
+
+    private synchronized void evictOne() {
+        // the first sweep may only clear the marks, the second one is guaranteed to find an entry that isn't marked
+        for (int i = 2 * cache.size() + 1; i > 0; i--) {
+            if (clockHand == null || !clockHand.hasNext()) {
+                clockHand = cache.entrySet().iterator();
+                if (!clockHand.hasNext()) {
+                    return;
+                }
+            }
+            Map.Entry<Long, CachedStackTrace> entry = clockHand.next();
+            CachedStackTrace candidate = entry.getValue();
+            if (candidate.referenced) {
+                candidate.referenced = false;
+            } else {
+                cache.remove(entry.getKey(), candidate);
+                return;
+            }
+        }
+    }
+
+    private static long fingerprint(Throwable thrown, String message, StackTraceElement[] frames, boolean stackTraceAsArray, StackTraceOptions options) {
+        long hash = System.identityHashCode(options) * 2L + (stackTraceAsArray ? 1 : 0);
+        hash = mix(hash, thrown, message, frames);
+        int[] remaining = {MAX_FINGERPRINTED_THROWABLES - 1};
+        return mixNested(hash, thrown, remaining);
+    }
+
+    private static long mixNested(long hash, Throwable throwable, int[] remaining) {
+        for (Throwable suppressed : EcsJsonSerializer.getSuppressed(throwable)) {
+            if (remaining[0]-- <= 0) {
+                return hash;
+            }
+            hash = mix(hash * MULTIPLIER + 1, suppressed, suppressed.getLocalizedMessage(), suppressed.getStackTrace());
+            hash = mixNested(hash, suppressed, remaining);
+        }
+        Throwable cause = throwable.getCause();
+        if (cause != null && remaining[0]-- > 0) {
+            hash = mix(hash * MULTIPLIER + 2, cause, cause.getLocalizedMessage(), cause.getStackTrace());
+            hash = mixNested(hash, cause, remaining);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, Throwable throwable, String message, StackTraceElement[] frames) {
+        // the class and the message strings cache their hash codes
+        hash = hash * MULTIPLIER + throwable.getClass().hashCode();
+        hash = hash * MULTIPLIER + (message != null ? message.hashCode() : 0);
+        hash = hash * MULTIPLIER + frames.length;
+        for (StackTraceElement frame : frames) {
+            hash = hash * MULTIPLIER + frame.hashCode();
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private static final class CachedStackTrace {
+        private final Class<?> type;
+        private final String message;
+        private final int depth;
+        private final boolean stackTraceAsArray;
+        private final StackTraceOptions options;
+        private final String value;
+        // set on each hit and cleared by the eviction sweep
+        private volatile boolean referenced;
+
+        private CachedStackTrace(Class<?> type, String message, int depth, boolean stackTraceAsArray, StackTraceOptions options, String value) {
+            this.type = type;
+            this.message = message;
+            this.depth = depth;
+            this.stackTraceAsArray = stackTraceAsArray;
+            this.options = options;
+            this.value = value;
+        }
+
+        private boolean matches(Throwable thrown, String message, int depth, boolean stackTraceAsArray, StackTraceOptions options) {
+            return type == thrown.getClass()
+                    && this.depth == depth
+                    && this.stackTraceAsArray == stackTraceAsArray
+                    && this.options == options
+                    && (this.message == null ? message == null : this.message.equals(message));
+        }
+    }
+}
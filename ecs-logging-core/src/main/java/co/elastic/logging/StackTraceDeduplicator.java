@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps track of which stack traces have recently been serialized so that repeated occurrences,
+ * for example during an exception storm, only reference the stack trace by its hash.
+ * <p>
+ * The first occurrence of a stack trace within the time window is serialized in full.
+ * Further occurrences within the window only serialize the hash and how often it has been repeated.
+ * Once the window has elapsed, the next occurrence is serialized in full again.
+ * </p>
+ * <p>
+ * The windows are kept in a fixed-size table, indexed by the hash, so that recording an occurrence is O(1),
+ * takes no global lock and doesn't box the hash, even during a storm of distinct stack traces.
+ * A stack trace may take one of {@link #MAX_PROBES} slots, replacing a window that has expired.
+ * If all of them hold active windows of other stack traces, the stack trace is serialized in full without being tracked.
+ * </p>
+ */
+final class StackTraceDeduplicator {
+
+    static final int DEFAULT_CAPACITY = 16384;
+    static final int MAX_PROBES = 2;
+
+    private final long windowMillis;
+    private final AtomicReferenceArray<Window> windows;
+    private final int mask;
+
+    StackTraceDeduplicator(long windowMillis) {
+        this(windowMillis, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of slots, rounded up to the next power of two
+     */
+    StackTraceDeduplicator(long windowMillis, int capacity) {
+        this.windowMillis = windowMillis;
+        int size = Integer.highestOneBit(Math.max(capacity, 1));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.windows = new AtomicReferenceArray<Window>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return {@code 0} if the stack trace should be serialized in full,
+     * otherwise the number of times it has been repeated within the current window
+     */
+    int recordOccurrence(long hash, long nowMillis) {
+        final int index = (int) (hash ^ (hash >>> 32));
+        int freeSlot = -1;
+        Window replaceable = null;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (index + i) & mask;
+            Window window = windows.get(slot);
+            if (window != null && window.hash == hash) {
+                return window.recordOccurrence(nowMillis, windowMillis);
+            }
+            if (freeSlot < 0 && (window == null || window.isExpired(nowMillis, windowMillis))) {
+                freeSlot = slot;
+                replaceable = window;
+            }
+        }
+        if (freeSlot >= 0) {
+            // if another thread has taken the slot in the meantime, this occurrence just isn't tracked
+            windows.compareAndSet(freeSlot, replaceable, new Window(hash, nowMillis));
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of tracked stack traces, only meant for testing as it's O(capacity)
+     */
+    int size() {
+        int size = 0;
+        for (int i = 0; i < windows.length(); i++) {
+            if (windows.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private static final class Window {
+        private final long hash;
+        private volatile long start;
+        private int repetitions;
+
+        private Window(long hash, long start) {
+            this.hash = hash;
+            this.start = start;
+        }
+
+        synchronized int recordOccurrence(long nowMillis, long windowMillis) {
+            if (isExpired(nowMillis, windowMillis)) {
+                start = nowMillis;
+                repetitions = 0;
+                return 0;
+            }
+            return ++repetitions;
+        }
+
+        boolean isExpired(long nowMillis, long windowMillis) {
+            return nowMillis - start >= windowMillis;
+        }
+    }
+}
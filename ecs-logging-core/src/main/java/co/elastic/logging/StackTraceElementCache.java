@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the escaped {@code at pkg.Class.method(File.java:123)} rendering of {@link StackTraceElement}s.
+ * <p>
+ * Frames of frameworks, servlet filters and thread pools appear in most stack traces,
+ * so they don't have to be converted to a string and escaped over and over again.
+ * Once the cache is full, new elements are escaped on each call but not added to the cache.
+ * </p>
+ */
+final class StackTraceElementCache {
+
+    private static final int MAX_SIZE = 4096;
+    private static final ConcurrentMap<StackTraceElement, String> ESCAPED_FRAMES = new ConcurrentHashMap<StackTraceElement, String>();
+
+    private StackTraceElementCache() {
+    }
+
+    static String getEscapedFrame(StackTraceElement element) {
+        String escaped = ESCAPED_FRAMES.get(element);
+        if (escaped == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("at ");
+            JsonUtils.quoteAsString(element.toString(), sb);
+            escaped = sb.toString();
+            if (ESCAPED_FRAMES.size() < MAX_SIZE) {
+                ESCAPED_FRAMES.putIfAbsent(element, escaped);
+            }
+        }
+        return escaped;
+    }
+
+    static int size() {
+        return ESCAPED_FRAMES.size();
+    }
+}
@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Controls how exceptions are serialized: limits for how much of a stack trace is serialized,
+ * whether an {@code error.grouping_key} is added and whether repeated stack traces are only referenced by their hash.
+ * The limits are enforced while serializing the stack trace, frames that are omitted are not rendered at all.
+ */
+public final class StackTraceOptions {
+
+    public static final StackTraceOptions DEFAULT = new StackTraceOptions(new Builder(), new ArrayList<String>());
+
+    private final int maxStackTraceDepth;
+    private final int maxStackTraceBytes;
+    private final PrefixTrie excludedFramePackages;
+    private final int errorGroupingKeyFrames;
+    private final boolean errorGroupingKeyIgnoreLineNumbers;
+    private final StackTraceDeduplicator stackTraceDeduplicator;
+
+    private StackTraceOptions(Builder builder, List<String> excludedFramePackages) {
+        this.maxStackTraceDepth = builder.maxStackTraceDepth > 0 ? builder.maxStackTraceDepth : Integer.MAX_VALUE;
+        this.maxStackTraceBytes = builder.maxStackTraceBytes > 0 ? builder.maxStackTraceBytes : Integer.MAX_VALUE;
+        this.excludedFramePackages = PrefixTrie.of(excludedFramePackages);
+        this.errorGroupingKeyFrames = Math.max(builder.errorGroupingKeyFrames, 0);
+        this.errorGroupingKeyIgnoreLineNumbers = builder.errorGroupingKeyIgnoreLineNumbers;
+        this.stackTraceDeduplicator = builder.stackTraceDedupWindowSeconds > 0
+                ? new StackTraceDeduplicator(builder.stackTraceDedupWindowSeconds * 1000L)
+                : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isExcluded(StackTraceElement element) {
+        return !excludedFramePackages.isEmpty() && excludedFramePackages.matchesPrefixOf(element.getClassName());
+    }
+
+    /**
+     * @return the maximum number of frames per exception, {@link Integer#MAX_VALUE} if unlimited
+     */
+    public int getMaxStackTraceDepth() {
+        return maxStackTraceDepth;
+    }
+
+    /**
+     * @return the approximate maximum size of the serialized stack trace, {@link Integer#MAX_VALUE} if unlimited
+     */
+    public int getMaxStackTraceBytes() {
+        return maxStackTraceBytes;
+    }
+
+    public boolean isErrorGroupingKeyEnabled() {
+        return errorGroupingKeyFrames > 0;
+    }
+
+    public int getErrorGroupingKeyFrames() {
+        return errorGroupingKeyFrames;
+    }
+
+    public boolean isErrorGroupingKeyIgnoreLineNumbers() {
+        return errorGroupingKeyIgnoreLineNumbers;
+    }
+
+    /**
+     * @return the state of the emit-once mode, or {@code null} if disabled
+     */
+    StackTraceDeduplicator getStackTraceDeduplicator() {
+        return stackTraceDeduplicator;
+    }
+
+    /**
+     * @param start the length of the builder before the first line of the stack trace has been serialized
+     * @return {@code true} if the serialized stack trace exceeds {@link #getMaxStackTraceBytes()}
+     */
+    public boolean isOverBudget(StringBuilder builder, int start) {
+        return builder.length() - start > maxStackTraceBytes;
+    }
+
+    public static final class Builder {
+
+        private int maxStackTraceDepth;
+        private int maxStackTraceBytes;
+        private String excludedFramePackages;
+        private int errorGroupingKeyFrames;
+        private boolean errorGroupingKeyIgnoreLineNumbers;
+        private int stackTraceDedupWindowSeconds;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxStackTraceDepth the maximum number of frames per exception, {@code 0} for no limit
+         * @return this builder
+         */
+        public Builder setMaxStackTraceDepth(int maxStackTraceDepth) {
+            this.maxStackTraceDepth = maxStackTraceDepth;
+            return this;
+        }
+
+        /**
+         * @param maxStackTraceBytes the approximate maximum size of the serialized stack trace, {@code 0} for no limit.
+         *                           The stack trace is cut after the first line that exceeds the limit.
+         *                           The size is measured in escaped characters, which equals bytes for ASCII.
+         * @return this builder
+         */
+        public Builder setMaxStackTraceBytes(int maxStackTraceBytes) {
+            this.maxStackTraceBytes = maxStackTraceBytes;
+            return this;
+        }
+
+        /**
+         * @param excludedFramePackages a comma-separated list of class name prefixes, such as {@code sun.reflect,org.junit},
+         *                              for frames that should be excluded, may be {@code null}
+         * @return this builder
+         */
+        public Builder setExcludedFramePackages(String excludedFramePackages) {
+            this.excludedFramePackages = excludedFramePackages;
+            return this;
+        }
+
+        /**
+         * @param errorGroupingKeyFrames the number of top frames of the exception and each of its causes
+         *                               that are part of the {@code error.grouping_key}, {@code 0} to omit the key
+         * @return this builder
+         */
+        public Builder setErrorGroupingKeyFrames(int errorGroupingKeyFrames) {
+            this.errorGroupingKeyFrames = errorGroupingKeyFrames;
+            return this;
+        }
+
+        /**
+         * @param errorGroupingKeyIgnoreLineNumbers whether to exclude line numbers from the {@code error.grouping_key},
+         *                                          so that it stays the same when unrelated code in the same method changes
+         * @return this builder
+         */
+        public Builder setErrorGroupingKeyIgnoreLineNumbers(boolean errorGroupingKeyIgnoreLineNumbers) {
+            this.errorGroupingKeyIgnoreLineNumbers = errorGroupingKeyIgnoreLineNumbers;
+            return this;
+        }
+
+        /**
+         * @param stackTraceDedupWindowSeconds if positive, a stack trace is only serialized the first time it occurs within this
+         *                                     time window, further occurrences only reference it by its
+         *                                     {@code error.stack_trace_hash}, {@code 0} to always serialize the stack trace
+         * @return this builder
+         */
+        public Builder setStackTraceDedupWindowSeconds(int stackTraceDedupWindowSeconds) {
+            this.stackTraceDedupWindowSeconds = stackTraceDedupWindowSeconds;
+            return this;
+        }
+
+        /**
+         * @return the options, or {@link #DEFAULT} if all of them have their default values
+         */
+        public StackTraceOptions build() {
+            List<String> prefixes = parsePackages(excludedFramePackages);
+            if (maxStackTraceDepth <= 0 && maxStackTraceBytes <= 0 && prefixes.isEmpty()
+                    && errorGroupingKeyFrames <= 0 && stackTraceDedupWindowSeconds <= 0) {
+                return DEFAULT;
+            }
+            return new StackTraceOptions(this, prefixes);
+        }
+
+        private static List<String> parsePackages(String excludedFramePackages) {
+            List<String> result = new ArrayList<String>();
+            if (excludedFramePackages != null) {
+                for (String prefix : excludedFramePackages.split(",")) {
+                    prefix = prefix.trim();
+                    if (!prefix.isEmpty()) {
+                        result.add(prefix);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
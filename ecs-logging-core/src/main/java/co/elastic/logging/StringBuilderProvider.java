@@ -0,0 +1,242 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Provides the temporary {@link StringBuilder}s that are used while serializing an event,
+ * for example to format a message before it's escaped.
+ * <p>
+ * Buffers are obtained via {@link #acquire()} and should be handed back via {@link #release(StringBuilder)}
+ * once they are not used anymore.
+ * Buffers that have grown beyond the maximum retained capacity, for example due to a large stack trace,
+ * are discarded so that they don't pin memory.
+ * </p>
+ * <p>
+ * Implementations are thread-safe.
+ * </p>
+ *
+ * @see EcsJsonSerializer#setMessageStringBuilderProvider(StringBuilderProvider)
+ */
+public abstract class StringBuilderProvider {
+
+    static final int INITIAL_CAPACITY = 1024;
+
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+    final int maxRetainedCapacity;
+
+    StringBuilderProvider(int maxRetainedCapacity) {
+        if (maxRetainedCapacity < INITIAL_CAPACITY) {
+            throw new IllegalArgumentException("maxRetainedCapacity must be at least " + INITIAL_CAPACITY + " but was " + maxRetainedCapacity);
+        }
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * Keeps one buffer per thread.
+     * This is the default.
+     * <p>
+     * {@linkplain VirtualThreads Virtual threads} borrow their buffers from a {@link #pooled(int, int) pool} instead,
+     * as a buffer per virtual thread would hardly ever be reused.
+     * The pool keeps up to two buffers per available processor and size class.
+     * </p>
+     *
+     * @param maxRetainedCapacity the maximum capacity of a buffer that is kept for reuse
+     */
+    public static StringBuilderProvider threadLocal(int maxRetainedCapacity) {
+        return new ThreadLocalProvider(maxRetainedCapacity);
+    }
+
+    /**
+     * Keeps a bounded number of buffers that are shared by all threads.
+     * The buffers are grouped into size classes, each a power of two between {@code 1024} and {@code maxRetainedCapacity},
+     * so that a large buffer doesn't replace all smaller ones.
+     * Unlike {@link #threadLocal(int)}, the memory that is retained doesn't grow with the number of threads.
+     *
+     * @param maxRetainedCapacity the maximum capacity of a buffer that is kept for reuse
+     * @param maxBuffersPerSizeClass the maximum number of buffers that are kept per size class
+     */
+    public static StringBuilderProvider pooled(int maxRetainedCapacity, int maxBuffersPerSizeClass) {
+        return new PooledProvider(maxRetainedCapacity, maxBuffersPerSizeClass);
+    }
+
+    /**
+     * @return an empty buffer
+     */
+    public abstract StringBuilder acquire();
+
+    /**
+     * Hands back a buffer obtained by {@link #acquire()}.
+     * The buffer must not be used afterwards.
+     */
+    public abstract void release(StringBuilder builder);
+
+    /**
+     * @return the number of buffers that have been created
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * @return the number of times a buffer has been reused
+     */
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    /**
+     * @return the number of buffers that have not been kept, because they were too large or the pool was full
+     */
+    public long getDiscards() {
+        return discards.get();
+    }
+
+    StringBuilder allocate() {
+        allocations.incrementAndGet();
+        return new StringBuilder(INITIAL_CAPACITY);
+    }
+
+    StringBuilder reuse(StringBuilder builder) {
+        reuses.incrementAndGet();
+        builder.setLength(0);
+        return builder;
+    }
+
+    void discard() {
+        discards.incrementAndGet();
+    }
+
+    private static class ThreadLocalProvider extends StringBuilderProvider {
+
+        private final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>();
+        private final StringBuilderProvider virtualThreadPool;
+
+        private ThreadLocalProvider(int maxRetainedCapacity) {
+            super(maxRetainedCapacity);
+            virtualThreadPool = VirtualThreads.isSupported()
+                    ? new PooledProvider(maxRetainedCapacity, Runtime.getRuntime().availableProcessors() * 2)
+                    : null;
+        }
+
+        @Override
+        public StringBuilder acquire() {
+            if (virtualThreadPool != null && VirtualThreads.isCurrentThreadVirtual()) {
+                return virtualThreadPool.acquire();
+            }
+            StringBuilder result = buffer.get();
+            if (result != null && result.capacity() <= maxRetainedCapacity) {
+                return reuse(result);
+            }
+            if (result != null) {
+                // not released, but grown too large
+                discard();
+            }
+            result = allocate();
+            buffer.set(result);
+            return result;
+        }
+
+        @Override
+        public void release(StringBuilder builder) {
+            if (virtualThreadPool != null && VirtualThreads.isCurrentThreadVirtual()) {
+                virtualThreadPool.release(builder);
+            } else if (builder.capacity() > maxRetainedCapacity && buffer.get() == builder) {
+                buffer.remove();
+                discard();
+            }
+        }
+
+        @Override
+        public long getAllocations() {
+            return super.getAllocations() + (virtualThreadPool != null ? virtualThreadPool.getAllocations() : 0);
+        }
+
+        @Override
+        public long getReuses() {
+            return super.getReuses() + (virtualThreadPool != null ? virtualThreadPool.getReuses() : 0);
+        }
+
+        @Override
+        public long getDiscards() {
+            return super.getDiscards() + (virtualThreadPool != null ? virtualThreadPool.getDiscards() : 0);
+        }
+    }
+
+    private static class PooledProvider extends StringBuilderProvider {
+
+        private final AtomicReferenceArray<StringBuilder>[] sizeClasses;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private PooledProvider(int maxRetainedCapacity, int maxBuffersPerSizeClass) {
+            super(maxRetainedCapacity);
+            if (maxBuffersPerSizeClass <= 0) {
+                throw new IllegalArgumentException("maxBuffersPerSizeClass must be positive but was " + maxBuffersPerSizeClass);
+            }
+            sizeClasses = new AtomicReferenceArray[sizeClass(maxRetainedCapacity) + 1];
+            for (int i = 0; i < sizeClasses.length; i++) {
+                sizeClasses[i] = new AtomicReferenceArray<StringBuilder>(maxBuffersPerSizeClass);
+            }
+        }
+
+        /**
+         * @return the index of the largest power of two times {@link #INITIAL_CAPACITY} that is not larger than the capacity
+         */
+        static int sizeClass(int capacity) {
+            return 31 - Integer.numberOfLeadingZeros(Math.max(capacity / INITIAL_CAPACITY, 1));
+        }
+
+        @Override
+        public StringBuilder acquire() {
+            // prefer small buffers, so that large ones are left for the events that need them
+            for (AtomicReferenceArray<StringBuilder> sizeClass : sizeClasses) {
+                for (int i = 0; i < sizeClass.length(); i++) {
+                    StringBuilder builder = sizeClass.get(i);
+                    if (builder != null && sizeClass.compareAndSet(i, builder, null)) {
+                        return reuse(builder);
+                    }
+                }
+            }
+            return allocate();
+        }
+
+        @Override
+        public void release(StringBuilder builder) {
+            if (builder.capacity() <= maxRetainedCapacity) {
+                AtomicReferenceArray<StringBuilder> sizeClass = sizeClasses[sizeClass(builder.capacity())];
+                for (int i = 0; i < sizeClass.length(); i++) {
+                    if (sizeClass.get(i) == null && sizeClass.compareAndSet(i, null, builder)) {
+                        return;
+                    }
+                }
+            }
+            discard();
+        }
+    }
+}
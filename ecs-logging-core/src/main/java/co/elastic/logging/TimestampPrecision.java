@@ -0,0 +1,70 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.Locale;
+
+/**
+ * The number of fraction digits used to serialize the {@code @timestamp}.
+ * <p>
+ * Sub-millisecond precision is only available if the logging framework captures it.
+ * For example, log4j2 2.11+, logback 1.3+ and {@code java.util.logging} on Java 9+.
+ * Otherwise, the additional digits are zero.
+ * </p>
+ */
+public enum TimestampPrecision {
+
+    MILLIS(3),
+    MICROS(6),
+    NANOS(9);
+
+    private final int fractionDigits;
+
+    TimestampPrecision(int fractionDigits) {
+        this.fractionDigits = fractionDigits;
+    }
+
+    int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    /**
+     * Parses the precision in a case-insensitive way.
+     *
+     * @param precision {@code millis}, {@code micros} or {@code nanos}, {@code null} or empty resolve to {@link #MILLIS}
+     * @return the parsed precision
+     * @throws IllegalArgumentException if the value is unknown
+     */
+    public static TimestampPrecision parse(String precision) {
+        if (precision == null || precision.trim().isEmpty()) {
+            return MILLIS;
+        }
+        try {
+            return valueOf(precision.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Could not parse timestamp precision " + precision + ", expected one of millis, micros or nanos");
+        }
+    }
+}
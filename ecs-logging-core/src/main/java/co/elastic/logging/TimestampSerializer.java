@@ -31,7 +31,8 @@ import java.util.TimeZone;
 
 /**
  * This class serializes an epoch timestamp in milliseconds to a ISO 8601 date time sting,
- * for example {@code 1970-01-01T00:00:00.000Z}
+ * for example {@code 1970-01-01T00:00:00.000Z}.
+ * Timestamps with microsecond or nanosecond precision are supported as well.
  * <p>
  * The main advantage of this class is that is able to serialize the timestamp in a garbage free way,
  * i.e. without object allocations and that it is faster than {@link java.text.DateFormat#format(Date)}.
@@ -47,7 +48,14 @@ import java.util.TimeZone;
  * Also, we don't have to worry about leap seconds when dealing with the epoch timestamp.
  * </p>
  * <p>
+ * Going one step further, all events that are logged within the same second share the
+ * {@code yyyy-MM-ddTHH:mm:ss.} prefix.
+ * This prefix is cached as well so that only the milliseconds have to be serialized for most events.
+ * The digits are looked up from tables rather than computed.
+ * </p>
+ * <p>
  * This class is thread safe.
+ * The caches are immutable objects that are published via volatile fields, so they don't require locking.
  * </p>
  */
 class TimestampSerializer {
@@ -61,47 +69,137 @@ class TimestampSerializer {
     private static final char COLON = ':';
     private static final char DOT = '.';
     private static final char ZERO = '0';
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+    // tens and ones digits of the numbers 0-99
+    private static final char[] DIGIT_TENS = new char[100];
+    private static final char[] DIGIT_ONES = new char[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (char) (ZERO + i / 10);
+            DIGIT_ONES[i] = (char) (ZERO + i % 10);
+        }
+    }
 
     private volatile CachedDate cachedDate = new CachedDate(System.currentTimeMillis());
+    private volatile CachedSecond cachedSecond;
 
     void serializeEpochTimestampAsIsoDateTime(StringBuilder builder, long epochTimestamp) {
+        final long epochSecond = floorDiv(epochTimestamp, MILLIS_PER_SECOND);
+        serializePrefix(builder, epochSecond);
+
+        // milliseconds, never negative thanks to the floor division, also for timestamps before 1970
+        final int millis = (int) (epochTimestamp - epochSecond * MILLIS_PER_SECOND);
+        final int hundreds = millis / 100;
+        final int remainder = millis - hundreds * 100;
+        builder.append((char) (ZERO + hundreds));
+        builder.append(DIGIT_TENS[remainder]);
+        builder.append(DIGIT_ONES[remainder]);
+
+        builder.append(TIME_ZONE_SEPARATOR);
+    }
+
+    /**
+     * Serializes an epoch timestamp with sub-millisecond precision, for example {@code 1970-01-01T00:00:00.000000001Z}
+     *
+     * @param epochSecond    the seconds since epoch
+     * @param nanoOfSecond   the nanoseconds within the second, from 0 to 999,999,999
+     * @param fractionDigits the number of fraction digits, 3, 6 or 9
+     */
+    void serializeEpochTimestampAsIsoDateTime(StringBuilder builder, long epochSecond, int nanoOfSecond, int fractionDigits) {
+        serializePrefix(builder, epochSecond);
+        int digits = fractionDigits;
+        int value = nanoOfSecond / POWERS_OF_TEN[9 - digits];
+        if ((digits & 1) == 1) {
+            int divisor = POWERS_OF_TEN[digits - 1];
+            int digit = value / divisor;
+            builder.append((char) (ZERO + digit));
+            value -= digit * divisor;
+            digits--;
+        }
+        while (digits > 0) {
+            int divisor = POWERS_OF_TEN[digits - 2];
+            int twoDigits = value / divisor;
+            builder.append(DIGIT_TENS[twoDigits]);
+            builder.append(DIGIT_ONES[twoDigits]);
+            value -= twoDigits * divisor;
+            digits -= 2;
+        }
+        builder.append(TIME_ZONE_SEPARATOR);
+    }
+
+    private void serializePrefix(StringBuilder builder, long epochSecond) {
+        CachedSecond cachedSecondLocal = cachedSecond;
+        if (cachedSecondLocal == null || cachedSecondLocal.epochSecond != epochSecond) {
+            cachedSecond = cachedSecondLocal = new CachedSecond(epochSecond, serializePrefix(epochSecond * MILLIS_PER_SECOND));
+        }
+        builder.append(cachedSecondLocal.prefix);
+    }
+
+    /**
+     * Serializes the part of the timestamp that is the same within a second, for example {@code 1970-01-01T00:00:00.}
+     */
+    private char[] serializePrefix(long epochTimestamp) {
         CachedDate cachedDateLocal = cachedDate;
         if (cachedDateLocal == null || !cachedDateLocal.isDateCached(epochTimestamp)) {
             cachedDate = cachedDateLocal = new CachedDate(epochTimestamp);
         }
-        builder.append(cachedDateLocal.getCachedDateIso());
+        StringBuilder prefix = new StringBuilder(20);
+        prefix.append(cachedDateLocal.getCachedDateIso());
 
-        builder.append(TIME_SEPARATOR);
+        prefix.append(TIME_SEPARATOR);
 
         // hours
-        long remainder = epochTimestamp % MILLIS_PER_DAY;
-        serializeWithLeadingZero(builder, remainder / MILLIS_PER_HOUR, 2);
-        builder.append(COLON);
+        long remainder = floorMod(epochTimestamp, MILLIS_PER_DAY);
+        serializeTwoDigits(prefix, (int) (remainder / MILLIS_PER_HOUR));
+        prefix.append(COLON);
 
         // minutes
         remainder %= MILLIS_PER_HOUR;
-        serializeWithLeadingZero(builder, remainder / MILLIS_PER_MINUTE, 2);
-        builder.append(COLON);
+        serializeTwoDigits(prefix, (int) (remainder / MILLIS_PER_MINUTE));
+        prefix.append(COLON);
 
         // seconds
         remainder %= MILLIS_PER_MINUTE;
-        serializeWithLeadingZero(builder, remainder / MILLIS_PER_SECOND, 2);
-        builder.append(DOT);
+        serializeTwoDigits(prefix, (int) (remainder / MILLIS_PER_SECOND));
+        prefix.append(DOT);
 
-        // milliseconds
-        remainder %= MILLIS_PER_SECOND;
-        serializeWithLeadingZero(builder, remainder, 3);
+        char[] result = new char[prefix.length()];
+        prefix.getChars(0, prefix.length(), result, 0);
+        return result;
+    }
 
-        builder.append(TIME_ZONE_SEPARATOR);
+    /**
+     * Same as {@code Math.floorDiv}, which is not available in Java 7
+     */
+    static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if ((dividend % divisor != 0) && ((dividend ^ divisor) < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    /**
+     * Same as {@code Math.floorMod}, which is not available in Java 7
+     */
+    static long floorMod(long dividend, long divisor) {
+        return dividend - floorDiv(dividend, divisor) * divisor;
     }
 
-    private void serializeWithLeadingZero(StringBuilder builder, long value, int minLength) {
-        for (int i = minLength - 1; i > 0; i--) {
-            if (value < Math.pow(10, i)) {
-                builder.append(ZERO);
-            }
+    private static void serializeTwoDigits(StringBuilder builder, int value) {
+        builder.append(DIGIT_TENS[value]);
+        builder.append(DIGIT_ONES[value]);
+    }
+
+    private static class CachedSecond {
+        private final long epochSecond;
+        private final char[] prefix;
+
+        private CachedSecond(long epochSecond, char[] prefix) {
+            this.epochSecond = epochSecond;
+            this.prefix = prefix;
         }
-        builder.append(value);
     }
 
     private static class CachedDate {
@@ -118,7 +216,7 @@ class TimestampSerializer {
         }
 
         private static long atStartOfDay(long epochTimestamp) {
-            return epochTimestamp - epochTimestamp % MILLIS_PER_DAY;
+            return epochTimestamp - floorMod(epochTimestamp, MILLIS_PER_DAY);
         }
 
         private static long atEndOfDay(long epochTimestamp) {
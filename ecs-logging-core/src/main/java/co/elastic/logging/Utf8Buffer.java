@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer which encodes text as UTF-8 while appending it.
+ * <p>
+ * Appending a {@link CharSequence} like a {@link StringBuilder} directly encodes its chars into this buffer,
+ * so that no intermediate {@link String} and no intermediate {@code byte[]} is needed,
+ * as opposed to {@code builder.toString().getBytes(UTF_8)}.
+ * </p>
+ * <p>
+ * Malformed surrogates are replaced with {@code '?'}, which is consistent with {@link String#getBytes(java.nio.charset.Charset)}.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class Utf8Buffer {
+
+    private static final byte REPLACEMENT = '?';
+
+    private byte[] bytes;
+    private int size;
+
+    public Utf8Buffer() {
+        this(256);
+    }
+
+    public Utf8Buffer(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    /**
+     * Encodes the provided chars to a UTF-8 byte array that has exactly the required size.
+     *
+     * @param content the chars to encode
+     * @return the UTF-8 encoded bytes
+     */
+    public static byte[] toUtf8Bytes(CharSequence content) {
+        final int length = content.length();
+        final byte[] result = new byte[encodedLength(content, 0, length)];
+        encode(content, 0, length, result, 0);
+        return result;
+    }
+
+    public Utf8Buffer append(CharSequence content) {
+        return append(content, 0, content.length());
+    }
+
+    public Utf8Buffer append(CharSequence content, int start, int end) {
+        // worst case is 3 bytes per char, as supplementary code points take two chars and 4 bytes
+        ensureCapacity(size + (end - start) * 3);
+        size = encode(content, start, end, bytes, size);
+        return this;
+    }
+
+    /**
+     * Appends a single char which is expected to be in the ASCII range, such as JSON structural chars.
+     */
+    public Utf8Buffer appendAscii(char c) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Appends the bytes of another buffer.
+     */
+    public Utf8Buffer append(Utf8Buffer other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.bytes, 0, bytes, size, other.size);
+        size += other.size;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /**
+     * Resets the size to zero while retaining the underlying array.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Returns the underlying array. Only the bytes from {@code 0} to {@link #size()} are valid.
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        os.write(bytes, 0, size);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(minCapacity, bytes.length << 1));
+        }
+    }
+
+    static int encodedLength(CharSequence content, int start, int end) {
+        int length = end - start;
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(content.charAt(i + 1))) {
+                    // 4 bytes for 2 chars
+                    length += 2;
+                    i++;
+                } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                    // replaced by a single byte
+                } else {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+
+    private static int encode(CharSequence content, int start, int end, byte[] bytes, int offset) {
+        int pos = offset;
+        for (int i = start; i < end; i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else {
+                pos = encodeNonAscii(content, i, end, c, bytes, pos);
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(content.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Encodes a char outside of the ASCII range. Has to be called with a capacity of at least 4 remaining bytes.
+     */
+    private static int encodeNonAscii(CharSequence content, int i, int end, char c, byte[] bytes, int pos) {
+        if (c < 0x800) {
+            bytes[pos++] = (byte) (0xC0 | (c >> 6));
+            bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            if (i + 1 < end && Character.isLowSurrogate(content.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, content.charAt(i + 1));
+                bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                bytes[pos++] = REPLACEMENT;
+            }
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[pos++] = REPLACEMENT;
+        } else {
+            bytes[pos++] = (byte) (0xE0 | (c >> 12));
+            bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return pos;
+    }
+}
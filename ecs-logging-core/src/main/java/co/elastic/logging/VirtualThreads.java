@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.lang.reflect.Method;
+
+/**
+ * Detects virtual threads, which are available as of Java 21.
+ * <p>
+ * Virtual threads are cheap to create and are typically not pooled, so there may be millions of them over the lifetime of an application.
+ * Thread-local buffers are hardly ever reused on virtual threads,
+ * which is why buffers are borrowed from a pool instead, see {@link StringBuilderProvider#threadLocal(int)}.
+ * </p>
+ * <p>
+ * As this library is compatible with Java 7, {@code Thread#isVirtual()} can't be referenced directly.
+ * The method is looked up once and invoked reflectively.
+ * </p>
+ */
+public final class VirtualThreads {
+
+    private static final Method IS_VIRTUAL = findIsVirtualMethod();
+    // passing the arguments explicitly avoids allocating an empty varargs array for each invocation
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private VirtualThreads() {
+    }
+
+    private static Method findIsVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (Exception ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code true} if virtual threads are supported by the current JVM
+     */
+    public static boolean isSupported() {
+        return IS_VIRTUAL != null;
+    }
+
+    /**
+     * @return {@code true} if the thread is a virtual thread, {@code false} if not or if virtual threads are not supported
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread, NO_ARGS);
+        } catch (Exception ignore) {
+            return false;
+        }
+    }
+
+    public static boolean isCurrentThreadVirtual() {
+        return isVirtual(Thread.currentThread());
+    }
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits for a {@link MpscRingBuffer} when there's nothing to consume or no free slot.
+ * <p>
+ * The strategies trade latency for CPU usage: {@link #BUSY_SPIN} burns a core but reacts immediately,
+ * {@link #BLOCKING} doesn't consume CPU while idle but needs to be woken up.
+ * </p>
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spins without ever giving up the CPU. Only use this if there are more cores than threads.
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle(int idleCount) {
+        }
+    },
+    /**
+     * Spins for a while, then yields the CPU to other threads.
+     */
+    YIELDING {
+        @Override
+        public void idle(int idleCount) {
+            if (idleCount >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Spins, then yields and finally sleeps for {@value #SLEEP_MICROS}µs at a time.
+     * A good compromise between latency and CPU usage.
+     */
+    SLEEPING {
+        @Override
+        public void idle(int idleCount) {
+            if (idleCount >= SPIN_TRIES + YIELD_TRIES) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(SLEEP_MICROS));
+            } else if (idleCount >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Parks the thread until it's {@linkplain LockSupport#unpark(Thread) signalled}, or at most {@value #BLOCKING_TIMEOUT_MILLIS}ms.
+     * Doesn't use CPU while idle but adds the cost of waking up the thread to the producers.
+     */
+    BLOCKING {
+        @Override
+        public void idle(int idleCount) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(BLOCKING_TIMEOUT_MILLIS));
+        }
+
+        @Override
+        public boolean requiresSignal() {
+            return true;
+        }
+    };
+
+    static final int SPIN_TRIES = 100;
+    static final int YIELD_TRIES = 100;
+    static final long SLEEP_MICROS = 100;
+    static final long BLOCKING_TIMEOUT_MILLIS = 10;
+
+    /**
+     * Waits a bit after the caller hasn't made progress.
+     *
+     * @param idleCount how many times in a row the caller hasn't made progress, starting at 0
+     */
+    public abstract void idle(int idleCount);
+
+    /**
+     * @return whether a waiting thread needs to be woken up with {@link LockSupport#unpark(Thread)} to react timely
+     */
+    public boolean requiresSignal() {
+        return false;
+    }
+
+    /**
+     * Parses the strategy in a case-insensitive way.
+     *
+     * @param strategy {@code busy_spin}, {@code yielding}, {@code sleeping} or {@code blocking},
+     *                 {@code null} or empty resolve to {@link #SLEEPING}
+     * @return the parsed strategy
+     * @throws IllegalArgumentException if the value is unknown
+     */
+    public static WaitStrategy parse(String strategy) {
+        if (strategy == null || strategy.trim().isEmpty()) {
+            return SLEEPING;
+        }
+        try {
+            return valueOf(strategy.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Could not parse wait strategy " + strategy + ", expected one of busy_spin, yielding, sleeping or blocking");
+        }
+    }
+}
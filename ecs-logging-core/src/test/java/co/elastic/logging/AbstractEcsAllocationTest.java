@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures how many bytes the layout of an adapter allocates per event
+ * and asserts that this doesn't exceed a budget that's defined per adapter and per {@link EventShape}.
+ * <p>
+ * The allocated bytes are read from {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} before and after serializing
+ * a few thousand events on the current thread, after a warm-up that gives the JIT a chance to apply escape analysis.
+ * The tests are skipped on JVMs that don't support measuring thread allocations.
+ * </p>
+ * <p>
+ * Subclasses should create the event once, in {@link #prepareEvent(EventShape)}, and only serialize it in the returned {@link Runnable}
+ * so that the allocations of the logging framework itself, like creating the event, are not accounted for.
+ * </p>
+ */
+public abstract class AbstractEcsAllocationTest {
+
+    protected static final int WARM_UP_EVENTS = 20_000;
+    protected static final int MEASURED_EVENTS = 10_000;
+    protected static final String MESSAGE = "Processed order, sending confirmation to the customer";
+    protected static final Map<String, String> MDC_ENTRIES = createMdc();
+    protected static final Throwable EXCEPTION = createException();
+
+    public enum EventShape {
+        SIMPLE,
+        PARAMETERIZED,
+        MDC,
+        EXCEPTION
+    }
+
+    @BeforeEach
+    final void assumeAllocationMeasurementSupported() {
+        assumeTrue(isAllocationMeasurementSupported(), "measuring thread allocations is not supported by this JVM");
+    }
+
+    @Test
+    void testSimpleEventAllocations() throws Exception {
+        assertAllocationsWithinBudget(EventShape.SIMPLE);
+    }
+
+    @Test
+    void testParameterizedEventAllocations() throws Exception {
+        assertAllocationsWithinBudget(EventShape.PARAMETERIZED);
+    }
+
+    @Test
+    void testMdcEventAllocations() throws Exception {
+        assertAllocationsWithinBudget(EventShape.MDC);
+    }
+
+    @Test
+    void testExceptionEventAllocations() throws Exception {
+        assertAllocationsWithinBudget(EventShape.EXCEPTION);
+    }
+
+    private void assertAllocationsWithinBudget(EventShape shape) throws Exception {
+        Runnable serializeEvent = prepareEvent(shape);
+        assumeTrue(serializeEvent != null, shape + " events are not supported by this adapter");
+        long bytesPerEvent = measureAllocatedBytesPerEvent(serializeEvent, WARM_UP_EVENTS, MEASURED_EVENTS);
+        assertThat(bytesPerEvent)
+                .describedAs("bytes allocated per %s event", shape)
+                .isLessThanOrEqualTo(getAllocationBudget(shape));
+    }
+
+    /**
+     * Creates an event of the given shape and returns a {@link Runnable} that serializes it.
+     *
+     * @return the {@link Runnable} that serializes the event, or {@code null} if the adapter doesn't support this shape
+     */
+    protected abstract Runnable prepareEvent(EventShape shape) throws Exception;
+
+    /**
+     * @return the maximum number of bytes the adapter may allocate when serializing an event of the given shape
+     */
+    protected abstract long getAllocationBudget(EventShape shape);
+
+    private static Map<String, String> createMdc() {
+        Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put("trace.id", "0af7651916cd43dd8448eb211c80319c");
+        mdc.put("transaction.id", "b7ad6b7169203331");
+        mdc.put("order.id", "order-4711");
+        return Collections.unmodifiableMap(mdc);
+    }
+
+    /**
+     * Creates the exception on a new thread,
+     * so that the size of its stack trace doesn't depend on how deep the test runner calls into the test.
+     */
+    private static Throwable createException() {
+        final Throwable[] exception = new Throwable[1];
+        // not a lambda, which would wait for this class to be initialized while its initializer waits for the thread
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                exception[0] = new RuntimeException("Failed to process order", new IllegalStateException("Connection refused"));
+            }
+        });
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return exception[0];
+    }
+
+    public static boolean isAllocationMeasurementSupported() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        return threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported();
+    }
+
+    /**
+     * Runs the action {@code warmUpIterations} times without measuring, then {@code iterations} times
+     * and returns the average number of bytes allocated by the current thread per iteration.
+     */
+    public static long measureAllocatedBytesPerEvent(Runnable action, int warmUpIterations, int iterations) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < warmUpIterations; i++) {
+            action.run();
+        }
+        // whatever reading the counter allocates itself is amortized over all iterations
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+        return (after - before) / iterations;
+    }
+}
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -100,6 +101,26 @@ class EcsJsonSerializerTest {
         assertThat(jsonNode.get(additionalKey).textValue()).isEqualTo(additionalValue);
     }
 
+    @Test
+    void testCompileStaticFields() throws IOException {
+        char[] staticFields = EcsJsonSerializer.compileStaticFields("service\"", "version", null, "node", "dataset",
+                List.of(new AdditionalField("key\"", "value\"")));
+
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeStaticFields(jsonBuilder, staticFields);
+        EcsJsonSerializer.serializeObjectEnd(jsonBuilder);
+        JsonNode jsonNode = objectMapper.readTree(jsonBuilder.toString());
+
+        assertThat(jsonNode.get("ecs.version").textValue()).isEqualTo("1.2.0");
+        assertThat(jsonNode.get("service.name").textValue()).isEqualTo("service\"");
+        assertThat(jsonNode.get("service.version").textValue()).isEqualTo("version");
+        assertThat(jsonNode.get("service.environment")).isNull();
+        assertThat(jsonNode.get("service.node.name").textValue()).isEqualTo("node");
+        assertThat(jsonNode.get("event.dataset").textValue()).isEqualTo("dataset");
+        assertThat(jsonNode.get("key\"").textValue()).isEqualTo("value\"");
+    }
+
     @Test
     void serializeNullDoesNotThrowAnException() {
         StringBuilder stringBuilder = new StringBuilder();
@@ -127,6 +148,73 @@ class EcsJsonSerializerTest {
                 .isEqualTo(stringWriter.toString());
     }
 
+    @Test
+    void serializeExceptionWithCausesAndSuppressed() throws IOException {
+        Exception exception = createNestedException();
+        StringWriter stringWriter = new StringWriter();
+        exception.printStackTrace(new PrintWriter(stringWriter));
+
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeException(jsonBuilder, exception, false);
+        jsonBuilder.append('}');
+        assertThat(objectMapper.readTree(jsonBuilder.toString()).get(ERROR_STACK_TRACE).textValue())
+                .isEqualTo(stringWriter.toString());
+
+        jsonBuilder.setLength(0);
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeException(jsonBuilder, exception, true);
+        jsonBuilder.append('}');
+        assertThat(StreamSupport.stream(objectMapper.readTree(jsonBuilder.toString()).get(ERROR_STACK_TRACE).spliterator(), false)
+                .map(JsonNode::textValue)
+                .collect(Collectors.joining(System.lineSeparator(), "", System.lineSeparator())))
+                .isEqualTo(stringWriter.toString());
+    }
+
+    @Test
+    void serializeStackTraceLineByLine() throws IOException {
+        StackTraceElement element = new StackTraceElement("co.elastic.Foo\"", "bar", "Foo.java", 42);
+        String expected = "co.elastic.FooException: foo" + System.lineSeparator()
+                + "\tat " + element + System.lineSeparator()
+                + "\t... 1 more" + System.lineSeparator();
+        for (boolean stackTraceAsArray : new boolean[]{false, true}) {
+            StringBuilder jsonBuilder = new StringBuilder();
+            jsonBuilder.append('{');
+            EcsJsonSerializer.serializeStackTraceStart(jsonBuilder, "co.elastic.FooException", "foo", stackTraceAsArray);
+            EcsJsonSerializer.serializeStackTraceLine(jsonBuilder, 0, "co.elastic.FooException: foo", stackTraceAsArray);
+            EcsJsonSerializer.serializeStackTraceElement(jsonBuilder, 1, element, stackTraceAsArray);
+            // served from the cache
+            EcsJsonSerializer.serializeStackTraceElement(new StringBuilder(), 1, element, stackTraceAsArray);
+            EcsJsonSerializer.serializeStackTraceLine(jsonBuilder, 1, "... 1 more", stackTraceAsArray);
+            EcsJsonSerializer.serializeStackTraceEnd(jsonBuilder, stackTraceAsArray);
+            jsonBuilder.append('}');
+            JsonNode jsonNode = objectMapper.readTree(jsonBuilder.toString());
+
+            assertThat(jsonNode.get(ERROR_TYPE).textValue()).isEqualTo("co.elastic.FooException");
+            assertThat(jsonNode.get(ERROR_MESSAGE).textValue()).isEqualTo("foo");
+            if (stackTraceAsArray) {
+                assertThat(StreamSupport.stream(jsonNode.get(ERROR_STACK_TRACE).spliterator(), false)
+                        .map(JsonNode::textValue)
+                        .collect(Collectors.joining(System.lineSeparator(), "", System.lineSeparator())))
+                        .isEqualTo(expected);
+            } else {
+                assertThat(jsonNode.get(ERROR_STACK_TRACE).textValue()).isEqualTo(expected);
+            }
+        }
+    }
+
+    private static Exception createNestedException() {
+        Exception root = new IllegalStateException("root \"cause\"\twith\nnew line");
+        Exception suppressedCause = new RuntimeException("suppressed cause");
+        Exception suppressed = new RuntimeException("suppressed", suppressedCause);
+        suppressed.addSuppressed(new IllegalArgumentException("nested suppressed"));
+        Exception cause = new RuntimeException("cause", root);
+        cause.addSuppressed(suppressed);
+        // circular reference
+        root.initCause(suppressedCause);
+        return new Exception("top", cause);
+    }
+
     @Test
     void testRemoveIfEndsWith() {
         assertRemoveIfEndsWith("", "foo", "");
@@ -165,6 +253,18 @@ class EcsJsonSerializerTest {
         assertThat(jsonNode.get(ERROR_MESSAGE).textValue()).isEqualTo("message");
     }
 
+    @Test
+    void serializeExceptionWithMixedLineSeparatorsAsArray() throws JsonProcessingException {
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeException(jsonBuilder, "className", "message", "first \"line\"\r\nsecond\rthird\n\nfifth\tline\n", true);
+        jsonBuilder.append('}');
+
+        JsonNode jsonNode = objectMapper.readTree(jsonBuilder.toString());
+        assertThat(StreamSupport.stream(jsonNode.get(ERROR_STACK_TRACE).spliterator(), false).map(JsonNode::textValue))
+                .containsExactly("first \"line\"", "second", "third", "", "fifth\tline");
+    }
+
     @Test
     void serializeExceptionWithSingleLineStackTraceAsArray() throws JsonProcessingException {
         StringBuilder jsonBuilder = new StringBuilder();
@@ -181,6 +281,37 @@ class EcsJsonSerializerTest {
         assertThat(jsonNode.get(ERROR_MESSAGE).textValue()).isEqualTo("message");
     }
 
+    @Test
+    void serializeExceptionWithCustomPrintStackTrace() throws JsonProcessingException {
+        RuntimeException exception = new RuntimeException("Example Exception Message") {
+            @Override
+            public void printStackTrace(PrintWriter pw) {
+                pw.println("custom: Example Exception Message");
+                pw.println("\tat co.elastic.logging.Custom.method(Custom.java:42)");
+            }
+        };
+        StackTraceCache cache = new StackTraceCache(16);
+        for (StackTraceCache stackTraceCache : new StackTraceCache[]{null, cache, cache}) {
+            StringBuilder jsonBuilder = new StringBuilder();
+            jsonBuilder.append('{');
+            EcsJsonSerializer.serializeException(jsonBuilder, exception, false, stackTraceCache, StackTraceOptions.DEFAULT);
+            jsonBuilder.append('}');
+            assertThat(objectMapper.readTree(jsonBuilder.toString()).get(ERROR_STACK_TRACE).textValue())
+                    .isEqualTo("custom: Example Exception Message" + System.lineSeparator()
+                            + "\tat co.elastic.logging.Custom.method(Custom.java:42)" + System.lineSeparator());
+
+            jsonBuilder.setLength(0);
+            jsonBuilder.append('{');
+            EcsJsonSerializer.serializeException(jsonBuilder, exception, true, stackTraceCache, StackTraceOptions.DEFAULT);
+            jsonBuilder.append('}');
+            JsonNode stackTrace = objectMapper.readTree(jsonBuilder.toString()).get(ERROR_STACK_TRACE);
+            assertThat(stackTrace.size()).isEqualTo(2);
+            assertThat(stackTrace.get(0).textValue()).isEqualTo("custom: Example Exception Message");
+            assertThat(stackTrace.get(1).textValue()).isEqualTo("\tat co.elastic.logging.Custom.method(Custom.java:42)");
+        }
+        assertThat(cache.size()).isZero();
+    }
+
     @Test
     void serializeExceptionWithNullMessage() throws JsonProcessingException {
         StringBuilder jsonBuilder = new StringBuilder();
@@ -226,6 +357,22 @@ class EcsJsonSerializerTest {
         assertThat(sb2.length()).isZero();
     }
 
+    @Test
+    void getEventStringBuilderIsSeparateFromMessageStringBuilder() {
+        StringBuilder event = EcsJsonSerializer.getEventStringBuilder();
+        event.append("{\"message\":");
+        StringBuilder message = EcsJsonSerializer.getMessageStringBuilder();
+        assertThat(message).isNotSameAs(event);
+        EcsJsonSerializer.releaseMessageStringBuilder(message);
+        assertThat(event.toString()).isEqualTo("{\"message\":");
+        EcsJsonSerializer.releaseEventStringBuilder(event);
+
+        StringBuilder next = EcsJsonSerializer.getEventStringBuilder();
+        assertThat(next).isSameAs(event);
+        assertThat(next.length()).isZero();
+        EcsJsonSerializer.releaseEventStringBuilder(next);
+    }
+
     private void assertRemoveIfEndsWith(String builder, String ending, String expected) {
         StringBuilder sb = new StringBuilder(builder);
         EcsJsonSerializer.removeIfEndsWith(sb, ending);
@@ -251,4 +398,73 @@ class EcsJsonSerializerTest {
         assertThat(jsonNode.get("mdc.key1").textValue()).isEqualTo("mdc value 1");
         assertThat(jsonNode.get("mdc_key2").textValue()).isEqualTo("mdc value 2");
     }
+
+    @Test
+    void serializeMdcKeysThatNeedEscaping() throws JsonProcessingException {
+        for (int i = 0; i < 2; i++) {
+            StringBuilder jsonBuilder = new StringBuilder();
+            jsonBuilder.append('{');
+            EcsJsonSerializer.serializeMdcEntry(jsonBuilder, "quoted\"key", "value");
+            EcsJsonSerializer.serializeMdcEntry(jsonBuilder, "log.level", "reserved");
+            EcsJsonSerializer.serializeObjectEnd(jsonBuilder);
+
+            JsonNode jsonNode = objectMapper.readTree(jsonBuilder.toString());
+            assertThat(jsonNode.get("quoted\"key").textValue()).isEqualTo("value");
+            assertThat(jsonNode.get("log.level")).isNull();
+        }
+        assertThat(MdcKeyCache.getKeyFragment("quoted\"key")).isSameAs(MdcKeyCache.getKeyFragment("quoted\"key"));
+        assertThat(MdcKeyCache.getKeyFragment("ecs.version")).isSameAs(MdcKeyCache.RESERVED);
+    }
+
+    @Test
+    void serializeMdcWithNullKey() throws JsonProcessingException {
+        Map<String, Object> mdc = new HashMap<String, Object>();
+        mdc.put(null, "foo");
+        mdc.put("bar", "baz");
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeMDC(jsonBuilder, mdc);
+        EcsJsonSerializer.serializeMdcEntry(jsonBuilder, null, 42);
+        EcsJsonSerializer.serializeObjectEnd(jsonBuilder);
+
+        JsonNode jsonNode = objectMapper.readTree(jsonBuilder.toString());
+        assertThat(jsonNode.get("null").isNumber()).isTrue();
+        assertThat(jsonNode.get("bar").textValue()).isEqualTo("baz");
+    }
+
+    @Test
+    void serializeTypedMdc() throws JsonProcessingException {
+        Map<String, Object> mdc = new LinkedHashMap<String, Object>();
+        mdc.put("http.response.status_code", 404);
+        mdc.put("event.duration", 42L);
+        mdc.put("ratio", 0.5);
+        mdc.put("nan", Double.NaN);
+        mdc.put("flag", true);
+        mdc.put("string", "value");
+        mdc.put("null", null);
+        mdc.put("log.level", 1);
+
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeMDC(jsonBuilder, mdc, true);
+        EcsJsonSerializer.serializeObjectEnd(jsonBuilder);
+        JsonNode jsonNode = objectMapper.readTree(jsonBuilder.toString());
+        assertThat(jsonNode.get("http.response.status_code").isInt()).isTrue();
+        assertThat(jsonNode.get("http.response.status_code").intValue()).isEqualTo(404);
+        assertThat(jsonNode.get("event.duration").longValue()).isEqualTo(42L);
+        assertThat(jsonNode.get("ratio").doubleValue()).isEqualTo(0.5);
+        assertThat(jsonNode.get("nan").textValue()).isEqualTo("NaN");
+        assertThat(jsonNode.get("flag").booleanValue()).isTrue();
+        assertThat(jsonNode.get("string").textValue()).isEqualTo("value");
+        assertThat(jsonNode.get("null").textValue()).isEqualTo("null");
+        assertThat(jsonNode.get("log.level")).isNull();
+
+        jsonBuilder.setLength(0);
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeMDC(jsonBuilder, mdc, false);
+        EcsJsonSerializer.serializeObjectEnd(jsonBuilder);
+        jsonNode = objectMapper.readTree(jsonBuilder.toString());
+        assertThat(jsonNode.get("http.response.status_code").textValue()).isEqualTo("404");
+        assertThat(jsonNode.get("flag").textValue()).isEqualTo("true");
+    }
 }
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ErrorGroupingKeyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testSameThrowSiteHasSameKey() {
+        long first = 0;
+        for (int i = 0; i < 2; i++) {
+            Exception exception = new RuntimeException("message " + i, new IllegalStateException());
+            long key = ErrorGroupingKey.compute(exception, 5, false);
+            if (i == 0) {
+                first = key;
+            } else {
+                assertThat(key).isEqualTo(first);
+            }
+        }
+    }
+
+    @Test
+    void testDifferentTypeOrCauseHasDifferentKey() {
+        Exception[] exceptions = {
+                new RuntimeException(),
+                new IllegalArgumentException(),
+                new RuntimeException(new IllegalStateException()),
+        };
+        long key0 = ErrorGroupingKey.compute(exceptions[0], 5, false);
+        long key1 = ErrorGroupingKey.compute(exceptions[1], 5, false);
+        long key2 = ErrorGroupingKey.compute(exceptions[2], 5, false);
+        assertThat(key0).isNotEqualTo(key1);
+        assertThat(key0).isNotEqualTo(key2);
+        assertThat(key1).isNotEqualTo(key2);
+    }
+
+    @Test
+    void testIgnoreLineNumbers() {
+        Exception first = createException(1);
+        Exception second = createException(2);
+        assertThat(ErrorGroupingKey.compute(first, 5, false)).isNotEqualTo(ErrorGroupingKey.compute(second, 5, false));
+        assertThat(ErrorGroupingKey.compute(first, 5, true)).isEqualTo(ErrorGroupingKey.compute(second, 5, true));
+    }
+
+    @Test
+    void testOnlyTopFramesAreConsidered() {
+        StackTraceElement top = new StackTraceElement("co.elastic.Foo", "foo", "Foo.java", 1);
+        Exception first = new RuntimeException();
+        first.setStackTrace(new StackTraceElement[]{top, new StackTraceElement("co.elastic.Bar", "bar", "Bar.java", 1)});
+        Exception second = new RuntimeException();
+        second.setStackTrace(new StackTraceElement[]{top, new StackTraceElement("co.elastic.Baz", "baz", "Baz.java", 1)});
+        assertThat(ErrorGroupingKey.compute(first, 1, false)).isEqualTo(ErrorGroupingKey.compute(second, 1, false));
+        assertThat(ErrorGroupingKey.compute(first, 2, false)).isNotEqualTo(ErrorGroupingKey.compute(second, 2, false));
+    }
+
+    @Test
+    void testCircularCause() {
+        Exception cause = new IllegalStateException();
+        Exception exception = new RuntimeException(cause);
+        cause.initCause(exception);
+        assertThat(ErrorGroupingKey.compute(exception, 5, false)).isEqualTo(ErrorGroupingKey.compute(exception, 5, false));
+    }
+
+    @Test
+    void testSerializeException() throws IOException {
+        Exception exception = new RuntimeException("foo");
+        assertThat(serialize(exception, StackTraceOptions.DEFAULT).get("error.grouping_key")).isNull();
+
+        JsonNode jsonNode = serialize(exception, StackTraceOptions.builder().setErrorGroupingKeyFrames(5).build());
+        String groupingKey = jsonNode.get("error.grouping_key").textValue();
+        assertThat(groupingKey).matches("[0-9a-f]{16}");
+        assertThat(groupingKey).isEqualTo(String.format("%016x", ErrorGroupingKey.compute(exception, 5, false)));
+        assertThat(jsonNode.get("error.stack_trace").textValue()).contains("foo");
+    }
+
+    private JsonNode serialize(Throwable throwable, StackTraceOptions options) throws IOException {
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeException(jsonBuilder, throwable, false, null, options);
+        jsonBuilder.append('}');
+        return objectMapper.readTree(jsonBuilder.toString());
+    }
+
+    private static Exception createException(int line) {
+        Exception exception = new RuntimeException();
+        exception.setStackTrace(new StackTraceElement[]{new StackTraceElement("co.elastic.Foo", "foo", "Foo.java", line)});
+        return exception;
+    }
+}
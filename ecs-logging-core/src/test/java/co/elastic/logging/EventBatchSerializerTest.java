@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventBatchSerializerTest {
+
+    private static final FieldWriterPlan<String> PLAN = FieldWriterPlan.<String>builder()
+            .setNestedOutput(true)
+            .add("log", new FieldWriter<String>() {
+                @Override
+                public void writeTo(StringBuilder builder, String message, SerializationContext context) {
+                    EcsJsonSerializer.serializeLoggerName(builder, "logger", context);
+                }
+            })
+            .add(new FieldWriter<String>() {
+                @Override
+                public void writeTo(StringBuilder builder, String message, SerializationContext context) {
+                    EcsJsonSerializer.serializeFormattedMessage(builder, message, context);
+                }
+            })
+            .build();
+    private static final EventSerializer<String> SERIALIZER = new EventSerializer<String>() {
+        @Override
+        public void serialize(StringBuilder builder, String message) {
+            int objectStart = builder.length();
+            EcsJsonSerializer.serializeObjectStart(builder, 0);
+            PLAN.writeEvent(builder, objectStart, message);
+        }
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testSerializeList() throws Exception {
+        StringBuilder builder = EventBatchSerializer.serializeBatch(Arrays.asList("foo", "bar", "baz"), SERIALIZER);
+
+        String[] lines = builder.toString().split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(builder.charAt(builder.length() - 1)).isEqualTo('\n');
+        assertThat(objectMapper.readTree(lines[0]).get("message").textValue()).isEqualTo("foo");
+        assertThat(objectMapper.readTree(lines[1]).get("message").textValue()).isEqualTo("bar");
+        assertThat(objectMapper.readTree(lines[2]).get("message").textValue()).isEqualTo("baz");
+    }
+
+    @Test
+    void testBatchEqualsSingleEvents() {
+        List<String> messages = Arrays.asList("foo", "bar\n\"baz\"", "qux");
+        StringBuilder expected = new StringBuilder();
+        for (String message : messages) {
+            StringBuilder single = new StringBuilder();
+            SERIALIZER.serialize(single, message);
+            expected.append(single);
+        }
+
+        // the nested objects of an event must not depend on the previous events in the buffer
+        assertThat(EventBatchSerializer.serializeBatch(messages, SERIALIZER).toString()).isEqualTo(expected.toString());
+        assertThat(EventBatchSerializer.serializeBatch(new ArrayDeque<>(messages), SERIALIZER).toString()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    void testSerializeArray() {
+        String[] messages = {"foo", "bar", "baz", "qux"};
+        StringBuilder builder = new StringBuilder();
+        EventBatchSerializer.serializeBatch(builder, messages, 1, 2, SERIALIZER);
+
+        assertThat(builder.toString()).isEqualTo(EventBatchSerializer.serializeBatch(Arrays.asList("bar", "baz"), SERIALIZER).toString());
+        assertThatThrownBy(() -> EventBatchSerializer.serializeBatch(new StringBuilder(), messages, 3, 2, SERIALIZER))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void testToUtf8Bytes() {
+        List<String> messages = Arrays.asList("café", "😀");
+        byte[] bytes = EventBatchSerializer.toUtf8Bytes(messages, SERIALIZER);
+
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(EventBatchSerializer.serializeBatch(messages, SERIALIZER).toString());
+    }
+
+    @Test
+    void testEmptyBatch() {
+        assertThat(EventBatchSerializer.toUtf8Bytes(Arrays.<String>asList(), SERIALIZER)).isEmpty();
+    }
+}
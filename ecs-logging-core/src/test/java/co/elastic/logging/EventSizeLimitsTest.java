@@ -0,0 +1,302 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventSizeLimitsTest {
+
+    private static final FieldWriter<String> LOG_LEVEL = (builder, event, context) -> EcsJsonSerializer.serializeLogLevel(builder, "INFO", context);
+    private static final FieldWriter<String> MESSAGE = (builder, event, context) -> EcsJsonSerializer.serializeFormattedMessage(builder, event, context);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testQuoteAsStringDoesNotSplitSurrogatePairs() {
+        StringBuilder builder = new StringBuilder();
+        assertThat(JsonUtils.quoteAsString("ab😀c", builder, 5)).isTrue();
+        assertThat(builder.toString()).isEqualTo("ab");
+
+        builder.setLength(0);
+        assertThat(JsonUtils.quoteAsString("ab😀c", builder, 6)).isTrue();
+        assertThat(builder.toString()).isEqualTo("ab😀");
+    }
+
+    @Test
+    void testQuoteAsStringDoesNotSplitEscapeSequences() {
+        StringBuilder builder = new StringBuilder();
+        assertThat(JsonUtils.quoteAsString("a\"\n\u0001b", builder, 4)).isTrue();
+        assertThat(builder.toString()).isEqualTo("a\\\"");
+
+        builder.setLength(0);
+        assertThat(JsonUtils.quoteAsString("a\"\n\u0001b", builder, 10)).isTrue();
+        assertThat(builder.toString()).isEqualTo("a\\\"\\n");
+    }
+
+    @Test
+    void testQuoteAsStringCountsUtf8Bytes() {
+        StringBuilder builder = new StringBuilder();
+        assertThat(JsonUtils.quoteAsString("éééé", builder, 5)).isTrue();
+        assertThat(builder.toString()).isEqualTo("éé");
+    }
+
+    @Test
+    void testQuoteAsStringWithinLimit() {
+        StringBuilder builder = new StringBuilder();
+        assertThat(JsonUtils.quoteAsString("foo", builder, 3)).isFalse();
+        assertThat(builder.toString()).isEqualTo("foo");
+    }
+
+    @Test
+    void testFieldLimits() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder()
+                .setMaxMessageLength(5)
+                .setMaxMdcValueLength(3)
+                .build();
+        StringBuilder builder = new StringBuilder();
+        SerializationContext context = startEvent(builder, false, limits);
+        EcsJsonSerializer.serializeFormattedMessage(builder, "hello world", context);
+        EcsJsonSerializer.serializeMDC(builder, Collections.singletonMap("foo", "\"bar\""), false, context);
+        EcsJsonSerializer.serializeObjectEnd(builder, context);
+
+        JsonNode jsonNode = objectMapper.readTree(builder.toString());
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("hello");
+        // the escaped quote takes two bytes
+        assertThat(jsonNode.get("foo").textValue()).isEqualTo("\"b");
+        assertThat(jsonNode.get("event.truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testNoMarkerWithinLimits() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder()
+                .setMaxEventBytes(1024)
+                .setMaxMessageLength(5)
+                .build();
+        JsonNode jsonNode = objectMapper.readTree(serialize(FieldWriterPlan.<String>builder()
+                .setEventSizeLimits(limits)
+                .add(MESSAGE)
+                .build(), "hello"));
+
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("hello");
+        assertThat(jsonNode.get("event.truncated")).isNull();
+    }
+
+    @Test
+    void testMaxEventBytes() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxEventBytes(200).build();
+        String json = serialize(FieldWriterPlan.<String>builder()
+                .setEventSizeLimits(limits)
+                .add(LOG_LEVEL)
+                .add(MESSAGE)
+                .add((builder, event, context) -> EcsJsonSerializer.serializeMdcEntry(builder, "emoji", repeat("😀", 100), context))
+                .build(), repeat("é\n", 500));
+
+        assertThat(json.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(200);
+        JsonNode jsonNode = objectMapper.readTree(json);
+        assertThat(jsonNode.get("@timestamp").textValue()).isEqualTo("1970-01-01T00:00:00.000Z");
+        assertThat(jsonNode.get("log.level").textValue()).isEqualTo("INFO");
+        // the message is cut to the space that's left, so that the oversized message is never copied into the buffer
+        assertThat(jsonNode.get("message").textValue()).startsWith("é\né\n");
+        // there's no space left for the following field
+        assertThat(jsonNode.get("emoji")).isNull();
+        assertThat(jsonNode.get("event.truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testMaxEventBytesShrinksValuesOfField() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxEventBytes(200).build();
+        Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put("a", repeat("a", 300));
+        mdc.put("b", repeat("b", 300));
+        String json = serialize(FieldWriterPlan.<String>builder()
+                .setEventSizeLimits(limits)
+                .add(MESSAGE)
+                .add((builder, event, context) -> EcsJsonSerializer.serializeMDC(builder, mdc, false, context))
+                .build(), "hello");
+
+        assertThat(json.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(200);
+        JsonNode jsonNode = objectMapper.readTree(json);
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("hello");
+        // the values of the field are cut to the same length
+        assertThat(jsonNode.get("a").textValue()).startsWith("aaa");
+        assertThat(jsonNode.get("b").textValue().length()).isEqualTo(jsonNode.get("a").textValue().length());
+        assertThat(jsonNode.get("event.truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testMaxEventBytesDropsFieldsWhoseKeysDontFit() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxEventBytes(150).build();
+        Map<String, Object> mdc = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            mdc.put("key" + i, i);
+        }
+        String json = serialize(FieldWriterPlan.<String>builder()
+                .setEventSizeLimits(limits)
+                .add(MESSAGE)
+                .add((builder, event, context) -> EcsJsonSerializer.serializeMDC(builder, mdc, true, context))
+                .add(LOG_LEVEL)
+                .build(), "hello");
+
+        assertThat(json.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(150);
+        JsonNode jsonNode = objectMapper.readTree(json);
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("hello");
+        assertThat(jsonNode.get("key0")).isNull();
+        assertThat(jsonNode.get("log.level").textValue()).isEqualTo("INFO");
+        assertThat(jsonNode.get("event.truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testMaxEventBytesReservesStaticFields() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxEventBytes(200).build();
+        String json = serialize(FieldWriterPlan.<String>builder()
+                .setEventSizeLimits(limits)
+                .add(MESSAGE)
+                .addStaticFields(EcsJsonSerializer.compileStaticFields("foo", null, null, null, null, null))
+                .build(), repeat("x", 500));
+
+        assertThat(json.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(200);
+        JsonNode jsonNode = objectMapper.readTree(json);
+        assertThat(jsonNode.get("message").textValue()).startsWith("xxx");
+        assertThat(jsonNode.get("service.name").textValue()).isEqualTo("foo");
+        assertThat(jsonNode.get("event.truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testMaxEventBytesWithNestedOutput() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxEventBytes(200).build();
+        String json = serialize(FieldWriterPlan.<String>builder()
+                .setNestedOutput(true)
+                .setEventSizeLimits(limits)
+                .add("log", LOG_LEVEL)
+                .add(MESSAGE)
+                .add("log", (builder, event, context) -> EcsJsonSerializer.serializeLoggerName(builder, repeat("logger", 100), context))
+                .addStaticFields(EcsJsonSerializer.compileStaticFields(null, null, null, null, "foo.log", null))
+                .build(), repeat("x", 500));
+
+        assertThat(json.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(200);
+        JsonNode jsonNode = objectMapper.readTree(json);
+        assertThat(jsonNode.get("log").get("level").textValue()).isEqualTo("INFO");
+        assertThat(jsonNode.get("log").get("logger").textValue()).startsWith("logger");
+        assertThat(jsonNode.get("event").get("dataset").textValue()).isEqualTo("foo.log");
+        assertThat(jsonNode.get("event").get("truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testMaxEventBytesDropsNestedFields() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxEventBytes(150).build();
+        Map<String, Object> mdc = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            mdc.put("labels.key" + i, i);
+        }
+        String json = serialize(FieldWriterPlan.<String>builder()
+                .setNestedOutput(true)
+                .setEventSizeLimits(limits)
+                .add("log", LOG_LEVEL)
+                .add((builder, event, context) -> EcsJsonSerializer.serializeMDC(builder, mdc, true, context))
+                .add("process", (builder, event, context) -> EcsJsonSerializer.serializeThreadName(builder, "main", context))
+                .build(), "hello");
+
+        assertThat(json.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(150);
+        JsonNode jsonNode = objectMapper.readTree(json);
+        assertThat(jsonNode.get("log").get("level").textValue()).isEqualTo("INFO");
+        assertThat(jsonNode.get("labels")).isNull();
+        assertThat(jsonNode.get("process").get("thread").get("name").textValue()).isEqualTo("main");
+        assertThat(jsonNode.get("event").get("truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testMaxEventBytesNeverTruncatesTimestamp() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxEventBytes(60).build();
+        JsonNode jsonNode = objectMapper.readTree(serialize(FieldWriterPlan.<String>builder()
+                .setEventSizeLimits(limits)
+                .add(MESSAGE)
+                .build(), repeat("x", 500)));
+
+        assertThat(jsonNode.get("@timestamp").textValue()).isEqualTo("1970-01-01T00:00:00.000Z");
+        assertThat(jsonNode.get("message")).isNull();
+        assertThat(jsonNode.get("event.truncated").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testTruncationIsNotCarriedOverToTheNextEvent() throws IOException {
+        EventSizeLimits limits = EventSizeLimits.builder().setMaxMessageLength(5).build();
+        FieldWriterPlan<String> plan = FieldWriterPlan.<String>builder()
+                .setEventSizeLimits(limits)
+                .add(MESSAGE)
+                .add((builder, event, context) -> {
+                    if (event.startsWith("fail")) {
+                        throw new IllegalStateException(event);
+                    }
+                })
+                .build();
+
+        assertThatThrownBy(() -> serialize(plan, "fail after truncating")).isInstanceOf(IllegalStateException.class);
+        JsonNode jsonNode = objectMapper.readTree(serialize(plan, "hello"));
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("hello");
+        assertThat(jsonNode.get("event.truncated")).isNull();
+    }
+
+    @Test
+    void testComputeMaxValueBytes() {
+        assertThat(EventSizeLimiter.computeMaxValueBytes(new int[]{10, 100, 1000}, 900)).isEqualTo(100);
+        assertThat(EventSizeLimiter.computeMaxValueBytes(new int[]{10, 100, 1000}, 1000)).isEqualTo(50);
+        assertThat(EventSizeLimiter.computeMaxValueBytes(new int[]{10, 100, 1000}, 1110)).isEqualTo(0);
+        // the values are too short to remove the excess
+        assertThat(EventSizeLimiter.computeMaxValueBytes(new int[]{10, 100, 1000}, 2000)).isEqualTo(-1);
+    }
+
+    private static String serialize(FieldWriterPlan<String> plan, String event) {
+        StringBuilder builder = new StringBuilder();
+        EcsJsonSerializer.serializeObjectStart(builder, 0);
+        plan.writeEvent(builder, 0, event);
+        return builder.toString();
+    }
+
+    private static SerializationContext startEvent(StringBuilder builder, boolean nestedOutput, EventSizeLimits limits) {
+        SerializationContext context = SerializationContext.create(nestedOutput, limits);
+        EcsJsonSerializer.serializeObjectStart(builder, 0);
+        context.start(builder, 0);
+        return context;
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,158 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FieldWriterPlanTest {
+
+    private static final FieldWriter<String> MESSAGE = new FieldWriter<String>() {
+        @Override
+        public void writeTo(StringBuilder builder, String event, SerializationContext context) {
+            EcsJsonSerializer.serializeFormattedMessage(builder, event, context);
+        }
+    };
+    private static final FieldWriter<String> LOGGER_NAME = new FieldWriter<String>() {
+        @Override
+        public void writeTo(StringBuilder builder, String event, SerializationContext context) {
+            EcsJsonSerializer.serializeLoggerName(builder, "logger", context);
+        }
+    };
+    private static final FieldWriter<String> LOG_LEVEL = new FieldWriter<String>() {
+        @Override
+        public void writeTo(StringBuilder builder, String event, SerializationContext context) {
+            EcsJsonSerializer.serializeLogLevel(builder, "INFO", context);
+        }
+    };
+    private static final FieldWriter<String> THREAD_NAME = new FieldWriter<String>() {
+        @Override
+        public void writeTo(StringBuilder builder, String event, SerializationContext context) {
+            EcsJsonSerializer.serializeThreadName(builder, "main", context);
+        }
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testWritersAreExecutedInOrder() throws IOException {
+        FieldWriterPlan<String> plan = FieldWriterPlan.<String>builder()
+                .add(MESSAGE)
+                .addStaticFields(EcsJsonSerializer.compileStaticFields("foo", null, null, null, null, null))
+                .addIf(true, LOGGER_NAME)
+                .build();
+
+        JsonNode jsonNode = objectMapper.readTree(write(plan, "hello"));
+        assertThat(plan.size()).isEqualTo(3);
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("hello");
+        assertThat(jsonNode.get("service.name").textValue()).isEqualTo("foo");
+        assertThat(jsonNode.get("log.logger").textValue()).isEqualTo("logger");
+    }
+
+    @Test
+    void testDisabledWritersAreNotPartOfThePlan() throws IOException {
+        FieldWriterPlan<String> plan = FieldWriterPlan.<String>builder()
+                .add(MESSAGE)
+                .addIf(false, LOGGER_NAME)
+                .build();
+
+        JsonNode jsonNode = objectMapper.readTree(write(plan, "hello"));
+        assertThat(plan.size()).isEqualTo(1);
+        assertThat(jsonNode.get("log.logger")).isNull();
+    }
+
+    @Test
+    void testNestedOutputGroupsWriters() throws IOException {
+        FieldWriterPlan<String> plan = FieldWriterPlan.<String>builder()
+                .setNestedOutput(true)
+                .add("log", LOG_LEVEL)
+                .add(MESSAGE)
+                .add("process", THREAD_NAME)
+                .add("log", LOGGER_NAME)
+                .build();
+
+        String json = write(plan, "hello");
+        assertThat(json).isEqualTo("{\"@timestamp\":\"1970-01-01T00:00:00.000Z\",\"log\":{\"level\": \"INFO\",\"logger\":\"logger\"}," +
+                "\"message\":\"hello\",\"process\":{\"thread\":{\"name\":\"main\"}}}\n");
+    }
+
+    @Test
+    void testNestedOutputGroupsStaticFields() throws IOException {
+        FieldWriterPlan<String> plan = FieldWriterPlan.<String>builder()
+                .setNestedOutput(true)
+                .add(MESSAGE)
+                .addStaticFields(EcsJsonSerializer.compileStaticFields("foo", "1.0", null, null, null, Arrays.asList(
+                        new AdditionalField("event.dataset", "foo.log"),
+                        new AdditionalField("service.team", "bar"),
+                        new AdditionalField("key", "value"))))
+                .add("log", LOGGER_NAME)
+                .build();
+
+        String json = write(plan, "hello");
+        JsonNode jsonNode = objectMapper.readTree(json);
+        assertThat(plan.size()).isEqualTo(2);
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("hello");
+        assertThat(jsonNode.get("log").get("logger").textValue()).isEqualTo("logger");
+        assertThat(jsonNode.get("service").get("name").textValue()).isEqualTo("foo");
+        assertThat(jsonNode.get("service").get("version").textValue()).isEqualTo("1.0");
+        assertThat(jsonNode.get("service").get("team").textValue()).isEqualTo("bar");
+        assertThat(jsonNode.get("event").get("dataset").textValue()).isEqualTo("foo.log");
+        assertThat(jsonNode.get("key").textValue()).isEqualTo("value");
+        // each object is only opened once
+        assertThat(json.split("\"service\":")).hasSize(2);
+        // the event object comes last so that a truncation marker can be added to it
+        assertThat(json).endsWith("\"event\":{\"dataset\":\"foo.log\"}}\n");
+    }
+
+    @Test
+    void testNestedOutputIsIndependentOfPreviousEvents() {
+        FieldWriterPlan<String> plan = FieldWriterPlan.<String>builder()
+                .setNestedOutput(true)
+                .add("log", LOGGER_NAME)
+                .build();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2; i++) {
+            int objectStart = builder.length();
+            EcsJsonSerializer.serializeObjectStart(builder, 0);
+            plan.writeEvent(builder, objectStart, "hello");
+        }
+
+        String event = "{\"@timestamp\":\"1970-01-01T00:00:00.000Z\",\"log\":{\"logger\":\"logger\"}}\n";
+        assertThat(builder.toString()).isEqualTo(event + event);
+    }
+
+    private static String write(FieldWriterPlan<String> plan, String event) {
+        StringBuilder builder = new StringBuilder();
+        EcsJsonSerializer.serializeObjectStart(builder, 0);
+        plan.writeEvent(builder, 0, event);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstantUtilsTest {
+
+    @Test
+    void testGetNanoOfSecondViaGetInstant() {
+        Method getInstant = InstantUtils.findGetInstantMethod(Event.class);
+        assertThat(getInstant).isNotNull();
+        assertThat(InstantUtils.getNanoOfSecond(getInstant, new Event(Instant.ofEpochSecond(42, 123456789)))).isEqualTo(123456789);
+        assertThat(InstantUtils.getNanoOfSecond(getInstant, new Event(null))).isEqualTo(-1);
+        assertThat(InstantUtils.getNanoOfSecond(null, new Event(Instant.EPOCH))).isEqualTo(-1);
+        assertThat(InstantUtils.findGetInstantMethod(Object.class)).isNull();
+    }
+
+    @Test
+    void testEpochMillisBeforeEpoch() {
+        for (long epochMilli : new long[]{-1001, -1000, -999, -1, 0, 1, 999, 1000, 1565093352375L}) {
+            Instant instant = Instant.ofEpochMilli(epochMilli);
+            assertThat(InstantUtils.getEpochSecond(epochMilli)).isEqualTo(instant.getEpochSecond());
+            assertThat(InstantUtils.getNanoOfSecond(epochMilli)).isEqualTo(instant.getNano());
+        }
+    }
+
+    public static class Event {
+        private final Instant instant;
+
+        Event(Instant instant) {
+            this.instant = instant;
+        }
+
+        public Instant getInstant() {
+            return instant;
+        }
+    }
+}
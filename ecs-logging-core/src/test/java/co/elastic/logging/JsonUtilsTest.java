@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonUtilsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testQuoteAsStringForAllCharSequenceTypes() throws IOException {
+        String[] samples = {
+                "",
+                "no escaping needed",
+                "\"quoted\"",
+                "trailing backslash \\",
+                "\ttab and\nnew line\r\n",
+                "control \u0000\u0001\u001f chars",
+                "unicode ü € 😀",
+        };
+        for (String sample : samples) {
+            assertRoundTrip(sample, sample);
+            assertRoundTrip(new StringBuilder(sample), sample);
+            assertRoundTrip(CharBuffer.wrap(sample), sample);
+        }
+    }
+
+    @Test
+    void testQuoteAsStringWithRange() throws IOException {
+        String content = "a\"b\\c\nd";
+        for (CharSequence sequence : new CharSequence[]{content, new StringBuilder(content), CharBuffer.wrap(content)}) {
+            StringBuilder sb = new StringBuilder();
+            sb.append('"');
+            JsonUtils.quoteAsString(sequence, 1, 6, sb);
+            sb.append('"');
+            assertThat(sb.toString()).isEqualTo("\"\\\"b\\\\c\\n\"");
+            assertThat(objectMapper.readValue(sb.toString(), String.class)).isEqualTo(content.substring(1, 6));
+        }
+    }
+
+    private void assertRoundTrip(CharSequence sequence, String expected) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append('"');
+        JsonUtils.quoteAsString(sequence, sb);
+        sb.append('"');
+        assertThat(objectMapper.readValue(sb.toString(), String.class)).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MpscRingBufferTest {
+
+    @Test
+    void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertThat(new MpscRingBuffer<String>(1).capacity()).isEqualTo(1);
+        assertThat(new MpscRingBuffer<String>(100).capacity()).isEqualTo(128);
+        assertThat(new MpscRingBuffer<String>(128).capacity()).isEqualTo(128);
+        assertThatThrownBy(() -> new MpscRingBuffer<String>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testOfferAndPollInOrder() {
+        MpscRingBuffer<String> ringBuffer = new MpscRingBuffer<>(4);
+        assertThat(ringBuffer.isEmpty()).isTrue();
+        assertThat(ringBuffer.poll()).isNull();
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(ringBuffer.offer("foo" + i)).isTrue();
+            }
+            assertThat(ringBuffer.offer("full")).isFalse();
+            assertThat(ringBuffer.size()).isEqualTo(4);
+            for (int i = 0; i < 4; i++) {
+                assertThat(ringBuffer.poll()).isEqualTo("foo" + i);
+            }
+            assertThat(ringBuffer.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    void testDrainTo() {
+        MpscRingBuffer<String> ringBuffer = new MpscRingBuffer<>(8);
+        for (int i = 0; i < 5; i++) {
+            ringBuffer.offer("foo" + i);
+        }
+        String[] batch = new String[3];
+
+        assertThat(ringBuffer.drainTo(batch, batch.length)).isEqualTo(3);
+        assertThat(batch).containsExactly("foo0", "foo1", "foo2");
+        assertThat(ringBuffer.drainTo(batch, batch.length)).isEqualTo(2);
+        assertThat(batch).startsWith("foo3", "foo4");
+        assertThat(ringBuffer.drainTo(batch, batch.length)).isZero();
+    }
+
+    @Test
+    void testConcurrentProducers() throws Exception {
+        int producers = 4;
+        int elementsPerProducer = 100_000;
+        MpscRingBuffer<String> ringBuffer = new MpscRingBuffer<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String prefix = "producer" + p + "-";
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    String element = prefix + i;
+                    while (!ringBuffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        Set<String> consumed = new HashSet<>();
+        int[] lastIndex = new int[producers];
+        Arrays.fill(lastIndex, -1);
+        String[] batch = new String[16];
+        while (consumed.size() < producers * elementsPerProducer) {
+            int size = ringBuffer.drainTo(batch, batch.length);
+            for (int i = 0; i < size; i++) {
+                assertThat(consumed.add(batch[i])).isTrue();
+                // elements of the same producer are consumed in the order they have been offered
+                int producer = Integer.parseInt(batch[i].substring("producer".length(), batch[i].indexOf('-')));
+                int index = Integer.parseInt(batch[i].substring(batch[i].indexOf('-') + 1));
+                assertThat(index).isGreaterThan(lastIndex[producer]);
+                lastIndex[producer] = index;
+            }
+            if (size == 0) {
+                Thread.yield();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(ringBuffer.isEmpty()).isTrue();
+    }
+}
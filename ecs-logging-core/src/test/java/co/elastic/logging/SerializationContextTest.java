@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SerializationContextTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testNestedOutput() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        SerializationContext context = startEvent(builder, true);
+        EcsJsonSerializer.serializeLogLevel(builder, "INFO", context);
+        EcsJsonSerializer.serializeLoggerName(builder, "co.elastic.Foo", context);
+        EcsJsonSerializer.serializeOrigin(builder, "Foo.java", "foo", 42, context);
+        EcsJsonSerializer.serializeFormattedMessage(builder, "message with a.dot and \"quotes\"", context);
+        EcsJsonSerializer.serializeThreadName(builder, "main", context);
+        EcsJsonSerializer.serializeException(builder, new RuntimeException("boom"), true, null, StackTraceOptions.DEFAULT, context);
+        EcsJsonSerializer.serializeObjectEnd(builder, context);
+
+        JsonNode jsonNode = objectMapper.readTree(builder.toString());
+        assertThat(jsonNode.get("@timestamp").textValue()).isEqualTo("1970-01-01T00:00:00.000Z");
+        assertThat(jsonNode.get("message").textValue()).isEqualTo("message with a.dot and \"quotes\"");
+        assertThat(jsonNode.get("log").get("level").textValue()).isEqualTo("INFO");
+        assertThat(jsonNode.get("log").get("logger").textValue()).isEqualTo("co.elastic.Foo");
+        assertThat(jsonNode.get("log").get("origin").get("file").get("line").intValue()).isEqualTo(42);
+        assertThat(jsonNode.get("process").get("thread").get("name").textValue()).isEqualTo("main");
+        assertThat(jsonNode.get("error").get("type").textValue()).isEqualTo(RuntimeException.class.getName());
+        assertThat(jsonNode.get("error").get("stack_trace").isArray()).isTrue();
+        assertThat(jsonNode.get("log.level")).isNull();
+    }
+
+    @Test
+    void testConflictingKeysAreNotNested() {
+        Map<String, Object> mdc = new LinkedHashMap<String, Object>();
+        mdc.put("a", "leaf");
+        mdc.put("a.b", "nested");
+        mdc.put("x.y.z", 1);
+        mdc.put("x.y..w", 2);
+        mdc.put("trailing.", 3);
+        StringBuilder builder = new StringBuilder();
+        builder.append('{');
+        SerializationContext context = SerializationContext.create(true, EventSizeLimits.DEFAULT);
+        context.start(builder, 0);
+        EcsJsonSerializer.serializeMDC(builder, mdc, true, context);
+        EcsJsonSerializer.serializeObjectEnd(builder, context);
+
+        assertThat(builder.toString()).isEqualTo("{\"a\":\"leaf\",\"a.b\":\"nested\",\"x\":{\"y\":{\"z\":1},\"y..w\":2},\"trailing.\":3}\n");
+    }
+
+    @Test
+    void testObjectsAreClosedBeforeRawFields() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        SerializationContext context = startEvent(builder, true);
+        EcsJsonSerializer.serializeLogLevel(builder, "INFO", context);
+        context.closeObjects(builder);
+        builder.append("\"raw.field\":true,");
+        EcsJsonSerializer.serializeObjectEnd(builder, context);
+
+        JsonNode jsonNode = objectMapper.readTree(builder.toString());
+        assertThat(jsonNode.get("log").get("level").textValue()).isEqualTo("INFO");
+        assertThat(jsonNode.get("raw.field").booleanValue()).isTrue();
+    }
+
+    @Test
+    void testExceptionCanBeFollowedByFields() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        SerializationContext context = startEvent(builder, true);
+        EcsJsonSerializer.serializeException(builder, new RuntimeException("boom"), false, null, StackTraceOptions.DEFAULT, context);
+        EcsJsonSerializer.serializeMdcEntry(builder, "service.name", "foo", context);
+        EcsJsonSerializer.serializeObjectEnd(builder, context);
+
+        JsonNode jsonNode = objectMapper.readTree(builder.toString());
+        assertThat(jsonNode.get("error").get("message").textValue()).isEqualTo("boom");
+        assertThat(jsonNode.get("service").get("name").textValue()).isEqualTo("foo");
+    }
+
+    @Test
+    void testDefaultWritesFlatKeys() {
+        StringBuilder builder = new StringBuilder();
+        SerializationContext context = startEvent(builder, false);
+        EcsJsonSerializer.serializeLoggerName(builder, "logger", context);
+        EcsJsonSerializer.serializeMDC(builder, Collections.singletonMap("a.b", "c"), false, context);
+        EcsJsonSerializer.serializeObjectEnd(builder, context);
+
+        assertThat(context).isSameAs(SerializationContext.DEFAULT);
+        assertThat(builder.toString()).isEqualTo("{\"@timestamp\":\"1970-01-01T00:00:00.000Z\",\"log.logger\":\"logger\",\"a.b\":\"c\"}\n");
+    }
+
+    @Test
+    void testContextIsReusable() {
+        SerializationContext context = SerializationContext.create(true, EventSizeLimits.DEFAULT);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2; i++) {
+            int objectStart = builder.length();
+            EcsJsonSerializer.serializeObjectStart(builder, 0);
+            context.start(builder, objectStart);
+            EcsJsonSerializer.serializeLoggerName(builder, "logger", context);
+            EcsJsonSerializer.serializeObjectEnd(builder, context);
+            context.finish();
+        }
+
+        String event = "{\"@timestamp\":\"1970-01-01T00:00:00.000Z\",\"log\":{\"logger\":\"logger\"}}\n";
+        assertThat(builder.toString()).isEqualTo(event + event);
+    }
+
+    private static SerializationContext startEvent(StringBuilder builder, boolean nestedOutput) {
+        SerializationContext context = SerializationContext.create(nestedOutput, EventSizeLimits.DEFAULT);
+        EcsJsonSerializer.serializeObjectStart(builder, 0);
+        context.start(builder, 0);
+        return context;
+    }
+}
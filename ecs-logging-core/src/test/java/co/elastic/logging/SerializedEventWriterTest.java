@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SerializedEventWriterTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final List<Exception> errors = new ArrayList<>();
+
+    private SerializedEventWriter createWriter(int bufferSize, int maxBatchSize) {
+        return new SerializedEventWriter("test-writer", out, bufferSize, maxBatchSize, WaitStrategy.SLEEPING) {
+            @Override
+            protected void onError(String message, Exception e) {
+                errors.add(e);
+            }
+        };
+    }
+
+    @Test
+    void testWritesEventsOfAllThreads() throws Exception {
+        SerializedEventWriter writer = createWriter(64, 16);
+        writer.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String threadName = "producer-" + t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    Utf8Buffer buffer = writer.acquireBuffer();
+                    buffer.append(threadName).append(" message ").append(Integer.toString(i)).appendAscii('\n');
+                    assertThat(writer.enqueue(buffer, true)).isTrue();
+                }
+            }, threadName);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(writer.stop(10_000)).isTrue();
+
+        List<String> lines = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+        assertThat(lines).hasSize(4000);
+        Set<String> messages = new HashSet<>(lines);
+        assertThat(messages).hasSize(4000);
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void testDoesNotBlockIfFull() throws Exception {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch continueWrite = new CountDownLatch(1);
+        SerializedEventWriter writer = new SerializedEventWriter("test-writer", new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeStarted.countDown();
+                try {
+                    continueWrite.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }, 2, 1, WaitStrategy.SLEEPING) {
+            @Override
+            protected void onError(String message, Exception e) {
+                errors.add(e);
+            }
+        };
+        writer.start();
+        assertThat(writer.enqueue(writer.acquireBuffer(), false)).isTrue();
+        // the background thread is stuck writing the first event
+        writeStarted.await();
+        assertThat(writer.enqueue(writer.acquireBuffer(), false)).isTrue();
+        assertThat(writer.enqueue(writer.acquireBuffer(), false)).isTrue();
+        assertThat(writer.enqueue(writer.acquireBuffer(), false)).isFalse();
+        assertThat(writer.size()).isEqualTo(2);
+        continueWrite.countDown();
+        assertThat(writer.stop(10_000)).isTrue();
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void testDoesNotEnqueueIfNotRunning() {
+        SerializedEventWriter writer = createWriter(2, 1);
+        assertThat(writer.enqueue(writer.acquireBuffer(), false)).isFalse();
+        writer.start();
+        assertThat(writer.stop(10_000)).isTrue();
+        assertThat(writer.enqueue(writer.acquireBuffer(), true)).isFalse();
+        assertThat(writer.size()).isZero();
+    }
+
+    @Test
+    void testReusesReleasedBuffers() {
+        SerializedEventWriter writer = createWriter(1, 1);
+        Utf8Buffer buffer = writer.acquireBuffer();
+        buffer.append("foo");
+        writer.releaseBuffer(buffer);
+
+        Utf8Buffer reused = writer.acquireBuffer();
+        assertThat(reused).isSameAs(buffer);
+        assertThat(reused.size()).isZero();
+        assertThat(writer.acquireBuffer()).isNotSameAs(buffer);
+    }
+
+    @Test
+    void testDoesNotPoolLargeBuffers() {
+        SerializedEventWriter writer = createWriter(1, 1);
+        Utf8Buffer buffer = new Utf8Buffer(SerializedEventWriter.MAX_POOLED_CAPACITY + 1);
+        writer.releaseBuffer(buffer);
+
+        assertThat(writer.acquireBuffer()).isNotSameAs(buffer);
+    }
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StackTraceCacheTest {
+
+    @Test
+    void testCachedStackTraceIsIdenticalToUncached() {
+        StackTraceCache cache = new StackTraceCache(10);
+        for (boolean stackTraceAsArray : new boolean[]{false, true}) {
+            Exception exception = new RuntimeException("foo", new IllegalStateException("bar"));
+            exception.addSuppressed(new Exception("baz"));
+            String expected = serialize(exception, stackTraceAsArray, null);
+
+            assertThat(serialize(exception, stackTraceAsArray, cache)).isEqualTo(expected);
+            assertThat(serialize(exception, stackTraceAsArray, cache)).isEqualTo(expected);
+        }
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testSameThrowSiteIsCacheHit() {
+        StackTraceCache cache = new StackTraceCache(10);
+        for (int i = 0; i < 3; i++) {
+            serialize(new RuntimeException("foo"), false, cache);
+        }
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testDifferentMessageOrCauseIsCacheMiss() {
+        StackTraceCache cache = new StackTraceCache(10);
+        Exception first = createException("foo", null);
+        Exception second = createException("bar", null);
+        Exception third = createException("foo", new IllegalStateException());
+
+        assertThat(serialize(first, false, cache)).contains("foo");
+        assertThat(serialize(second, false, cache)).contains("bar");
+        assertThat(serialize(third, false, cache)).contains("IllegalStateException");
+        assertThat(cache.getMissCount()).isEqualTo(3);
+        assertThat(cache.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        StackTraceCache cache = new StackTraceCache(2);
+        Exception exception = null;
+        for (int i = 0; i < 10; i++) {
+            exception = createException("exception " + i, null);
+            assertThat(serialize(exception, false, cache)).isEqualTo(serialize(exception, false, null));
+            assertThat(cache.size()).isLessThanOrEqualTo(2);
+        }
+        assertThat(cache.getMissCount()).isEqualTo(10);
+
+        // the most recently added entry is never the one that is evicted
+        serialize(exception, false, cache);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testFrequentlyLoggedStackTraceSurvivesChurn() {
+        StackTraceCache cache = new StackTraceCache(4);
+        Exception hot = createException("hot", null);
+        serialize(hot, false, cache);
+        for (int i = 0; i < 100; i++) {
+            serialize(createException("cold " + i, null), false, cache);
+            serialize(hot, false, cache);
+        }
+        assertThat(cache.getMissCount()).isEqualTo(101);
+        assertThat(cache.getHitCount()).isEqualTo(100);
+        assertThat(cache.size()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    void testDifferentCallSiteIsCacheMiss() {
+        StackTraceCache cache = new StackTraceCache(10);
+        Exception first = createException("foo", null);
+        Exception second = createExceptionFromOtherCallSite("foo");
+
+        assertThat(serialize(first, false, cache)).isEqualTo(serialize(first, false, null));
+        assertThat(serialize(second, false, cache)).isEqualTo(serialize(second, false, null));
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    void testCircularReference() {
+        StackTraceCache cache = new StackTraceCache(10);
+        Exception cause = new IllegalStateException();
+        Exception exception = new RuntimeException(cause);
+        cause.initCause(exception);
+
+        assertThat(serialize(exception, false, cache)).contains("CIRCULAR REFERENCE");
+        assertThat(serialize(exception, false, cache)).isEqualTo(serialize(exception, false, null));
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testCreateIfEnabled() {
+        assertThat(StackTraceCache.createIfEnabled(0)).isNull();
+        assertThat(StackTraceCache.createIfEnabled(1)).isNotNull();
+        assertThatThrownBy(() -> new StackTraceCache(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Exception createException(String message, Throwable cause) {
+        return new RuntimeException(message, cause);
+    }
+
+    private static Exception createExceptionFromOtherCallSite(String message) {
+        return createException(message, null);
+    }
+
+    private static String serialize(Throwable throwable, boolean stackTraceAsArray, StackTraceCache cache) {
+        StringBuilder builder = new StringBuilder();
+        EcsJsonSerializer.serializeException(builder, throwable, stackTraceAsArray, cache, StackTraceOptions.DEFAULT);
+        return builder.toString();
+    }
+}
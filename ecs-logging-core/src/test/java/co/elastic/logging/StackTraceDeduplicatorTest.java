@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StackTraceDeduplicatorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testRepeatedStackTraceOnlyContainsHash() throws IOException {
+        StackTraceOptions options = StackTraceOptions.builder().setStackTraceDedupWindowSeconds(60).build();
+
+        // the exceptions are created at the same call site, so that their stack traces are identical
+        String[] messages = {"first", "second", "third"};
+        JsonNode[] logs = new JsonNode[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            logs[i] = serialize(createException(messages[i]), options);
+        }
+
+        JsonNode first = logs[0];
+        assertThat(first.get("error.stack_trace").textValue()).isNotEmpty();
+        assertThat(first.get("error.stack_trace_hash").textValue()).hasSize(16);
+        assertThat(first.get("error.stack_trace_repeat_count")).isNull();
+
+        JsonNode second = logs[1];
+        assertThat(second.get("error.stack_trace")).isNull();
+        assertThat(second.get("error.stack_trace_hash").textValue()).isEqualTo(first.get("error.stack_trace_hash").textValue());
+        assertThat(second.get("error.stack_trace_repeat_count").intValue()).isEqualTo(1);
+        assertThat(second.get("error.type").textValue()).isEqualTo(RuntimeException.class.getName());
+        assertThat(second.get("error.message").textValue()).isEqualTo("second");
+
+        assertThat(logs[2].get("error.stack_trace_repeat_count").intValue()).isEqualTo(2);
+    }
+
+    @Test
+    void testDifferentStackTracesAreSerialized() throws IOException {
+        StackTraceOptions options = StackTraceOptions.builder().setStackTraceDedupWindowSeconds(60).build();
+
+        JsonNode first = serialize(createException("first"), options);
+        JsonNode second = serialize(new IllegalStateException("second"), options);
+        assertThat(second.get("error.stack_trace").textValue()).isNotEmpty();
+        assertThat(second.get("error.stack_trace_hash").textValue()).isNotEqualTo(first.get("error.stack_trace_hash").textValue());
+    }
+
+    @Test
+    void testDisabledByDefault() throws IOException {
+        JsonNode first = serialize(createException("first"), StackTraceOptions.DEFAULT);
+        JsonNode second = serialize(createException("second"), StackTraceOptions.DEFAULT);
+        assertThat(first.get("error.stack_trace_hash")).isNull();
+        assertThat(second.get("error.stack_trace").textValue()).isNotEmpty();
+    }
+
+    @Test
+    void testWindowExpires() {
+        StackTraceDeduplicator deduplicator = new StackTraceDeduplicator(1000);
+        assertThat(deduplicator.recordOccurrence(42, 0)).isEqualTo(0);
+        assertThat(deduplicator.recordOccurrence(42, 500)).isEqualTo(1);
+        assertThat(deduplicator.recordOccurrence(42, 999)).isEqualTo(2);
+        assertThat(deduplicator.recordOccurrence(42, 1000)).isEqualTo(0);
+        assertThat(deduplicator.recordOccurrence(42, 1500)).isEqualTo(1);
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        StackTraceDeduplicator deduplicator = new StackTraceDeduplicator(1000, 4);
+        for (int i = 0; i < 4; i++) {
+            deduplicator.recordOccurrence(i, 0);
+        }
+        assertThat(deduplicator.size()).isEqualTo(4);
+        // the slots of the new stack trace hold active windows, it's always serialized but not tracked
+        assertThat(deduplicator.recordOccurrence(4, 10)).isEqualTo(0);
+        assertThat(deduplicator.recordOccurrence(4, 20)).isEqualTo(0);
+        assertThat(deduplicator.size()).isEqualTo(4);
+        assertThat(deduplicator.recordOccurrence(0, 30)).isEqualTo(1);
+
+        // expired windows are replaced
+        assertThat(deduplicator.recordOccurrence(4, 1000)).isEqualTo(0);
+        assertThat(deduplicator.recordOccurrence(4, 1010)).isEqualTo(1);
+        assertThat(deduplicator.size()).isEqualTo(4);
+    }
+
+    @Test
+    void testDistinctStackTraceStorm() {
+        StackTraceDeduplicator deduplicator = new StackTraceDeduplicator(1000);
+        for (long hash = 0; hash < 1_000_000; hash++) {
+            assertThat(deduplicator.recordOccurrence(hash * 0x9E3779B97F4A7C15L, 0)).isEqualTo(0);
+        }
+        assertThat(deduplicator.size()).isLessThanOrEqualTo(StackTraceDeduplicator.DEFAULT_CAPACITY);
+    }
+
+    private Exception createException(String message) {
+        return new RuntimeException(message);
+    }
+
+    private JsonNode serialize(Throwable thrown, StackTraceOptions options) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append('{');
+        EcsJsonSerializer.serializeException(builder, thrown, false, null, options);
+        EcsJsonSerializer.serializeObjectEnd(builder);
+        return objectMapper.readTree(builder.toString());
+    }
+}
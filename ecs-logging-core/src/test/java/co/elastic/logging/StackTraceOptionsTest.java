@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StackTraceOptionsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testDefaultIfUnlimited() {
+        assertThat(StackTraceOptions.builder().build()).isSameAs(StackTraceOptions.DEFAULT);
+        assertThat(StackTraceOptions.builder().setExcludedFramePackages(" , ").build()).isSameAs(StackTraceOptions.DEFAULT);
+        assertThat(StackTraceOptions.DEFAULT.getMaxStackTraceDepth()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(StackTraceOptions.DEFAULT.getMaxStackTraceBytes()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void testPrefixTrie() {
+        PrefixTrie trie = PrefixTrie.of(Arrays.asList("org.junit", "org.junit.jupiter", "sun.reflect", "java.lang.reflect.Method"));
+        assertThat(trie.matchesPrefixOf("org.junit.Test")).isTrue();
+        assertThat(trie.matchesPrefixOf("org.junit")).isTrue();
+        assertThat(trie.matchesPrefixOf("sun.reflect.GeneratedMethodAccessor1")).isTrue();
+        assertThat(trie.matchesPrefixOf("java.lang.reflect.Method")).isTrue();
+        assertThat(trie.matchesPrefixOf("java.lang.reflect.Field")).isFalse();
+        assertThat(trie.matchesPrefixOf("org.jun")).isFalse();
+        assertThat(trie.matchesPrefixOf("sun.misc.Unsafe")).isFalse();
+        assertThat(trie.matchesPrefixOf("")).isFalse();
+        // prefixes only match at package and class boundaries
+        assertThat(trie.matchesPrefixOf("org.junitx.Test")).isFalse();
+        assertThat(trie.matchesPrefixOf("org.junit$Inner")).isTrue();
+        assertThat(trie.matchesPrefixOf("java.lang.reflect.MethodHandle")).isFalse();
+        assertThat(PrefixTrie.of(Arrays.asList("java.")).matchesPrefixOf("java.lang.Object")).isTrue();
+        assertThat(PrefixTrie.of(Arrays.asList("org.junit", "org.junitx")).matchesPrefixOf("org.junitx.Test")).isTrue();
+        assertThat(PrefixTrie.of(Arrays.<String>asList()).isEmpty()).isTrue();
+    }
+
+    @Test
+    void testExcludedFramePackages() throws IOException {
+        StackTraceOptions options = StackTraceOptions.builder().setExcludedFramePackages("org.junit, java.,jdk.").build();
+        assertThat(options.isExcluded(new StackTraceElement("org.junit.Test", "foo", null, -1))).isTrue();
+        assertThat(options.isExcluded(new StackTraceElement("co.elastic.Foo", "foo", null, -1))).isFalse();
+
+        String stackTrace = serialize(new RuntimeException(), options);
+        assertThat(stackTrace).doesNotContain("at org.junit.", "at java.", "at jdk.");
+        assertThat(stackTrace).contains("frames excluded");
+        assertThat(stackTrace).contains("at " + getClass().getName());
+    }
+
+    @Test
+    void testMaxStackTraceDepth() throws IOException {
+        Exception exception = new RuntimeException("foo", new RuntimeException("bar"));
+        int frames = exception.getStackTrace().length;
+
+        String stackTrace = serialize(exception, StackTraceOptions.builder().setMaxStackTraceDepth(2).build());
+        String[] lines = stackTrace.split(System.lineSeparator());
+        assertThat(lines[0]).isEqualTo("java.lang.RuntimeException: foo");
+        assertThat(lines[1]).startsWith("\tat ");
+        assertThat(lines[2]).startsWith("\tat ");
+        assertThat(lines[3]).isEqualTo("\t... " + (frames - 2) + " more");
+        assertThat(lines[4]).isEqualTo("Caused by: java.lang.RuntimeException: bar");
+    }
+
+    @Test
+    void testMaxStackTraceBytes() throws IOException {
+        Exception exception = new RuntimeException("foo", new RuntimeException("bar", new RuntimeException("baz")));
+        String unlimited = serialize(exception, StackTraceOptions.DEFAULT);
+
+        String stackTrace = serialize(exception, StackTraceOptions.builder().setMaxStackTraceBytes(100).build());
+        assertThat(stackTrace.length()).isLessThan(unlimited.length());
+        assertThat(stackTrace).endsWith("... stack trace truncated" + System.lineSeparator());
+        assertThat(stackTrace).doesNotContain("baz");
+    }
+
+    private String serialize(Throwable throwable, StackTraceOptions options) throws IOException {
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append('{');
+        EcsJsonSerializer.serializeException(jsonBuilder, throwable, false, null, options);
+        jsonBuilder.append('}');
+        return objectMapper.readTree(jsonBuilder.toString()).get("error.stack_trace").textValue();
+    }
+}
@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class StringBuilderProviderTest {
+
+    @Test
+    void testThreadLocalReusesBuffer() {
+        StringBuilderProvider provider = StringBuilderProvider.threadLocal(8192);
+        StringBuilder sb1 = provider.acquire();
+        sb1.append("foo");
+        provider.release(sb1);
+        StringBuilder sb2 = provider.acquire();
+
+        assertThat(sb2).isSameAs(sb1);
+        assertThat(sb2.length()).isZero();
+        assertThat(provider.getAllocations()).isEqualTo(1);
+        assertThat(provider.getReuses()).isEqualTo(1);
+        assertThat(provider.getDiscards()).isZero();
+    }
+
+    @Test
+    void testThreadLocalDiscardsOversizedBuffer() {
+        StringBuilderProvider provider = StringBuilderProvider.threadLocal(8192);
+        StringBuilder sb1 = provider.acquire();
+        sb1.append(new char[8193]);
+        provider.release(sb1);
+        StringBuilder sb2 = provider.acquire();
+
+        assertThat(sb2).isNotSameAs(sb1);
+        assertThat(sb2.capacity()).isLessThanOrEqualTo(8192);
+        assertThat(provider.getAllocations()).isEqualTo(2);
+        assertThat(provider.getDiscards()).isEqualTo(1);
+    }
+
+    @Test
+    void testPoolReusesBuffer() {
+        StringBuilderProvider provider = StringBuilderProvider.pooled(8192, 2);
+        StringBuilder sb1 = provider.acquire();
+        StringBuilder sb2 = provider.acquire();
+        assertThat(sb2).isNotSameAs(sb1);
+        provider.release(sb1);
+        provider.release(sb2);
+
+        StringBuilder sb3 = provider.acquire();
+        assertThat(sb3).isIn(sb1, sb2);
+        assertThat(provider.getAllocations()).isEqualTo(2);
+        assertThat(provider.getReuses()).isEqualTo(1);
+    }
+
+    @Test
+    void testPoolPrefersSmallBuffers() {
+        StringBuilderProvider provider = StringBuilderProvider.pooled(8192, 2);
+        StringBuilder large = provider.acquire();
+        StringBuilder small = provider.acquire();
+        large.append(new char[4096]);
+        provider.release(large);
+        provider.release(small);
+
+        assertThat(provider.acquire()).isSameAs(small);
+        assertThat(provider.acquire()).isSameAs(large);
+    }
+
+    @Test
+    void testPoolIsBounded() {
+        StringBuilderProvider provider = StringBuilderProvider.pooled(8192, 1);
+        StringBuilder sb1 = provider.acquire();
+        StringBuilder sb2 = provider.acquire();
+        StringBuilder oversized = provider.acquire();
+        oversized.append(new char[8193]);
+        provider.release(sb1);
+        provider.release(sb2);
+        provider.release(oversized);
+
+        assertThat(provider.getDiscards()).isEqualTo(2);
+        assertThat(provider.acquire()).isSameAs(sb1);
+        assertThat(provider.acquire()).isNotIn(sb1, sb2, oversized);
+    }
+
+    @Test
+    void testInvalidLimits() {
+        assertThatThrownBy(() -> StringBuilderProvider.threadLocal(10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StringBuilderProvider.pooled(8192, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testVirtualThreadsBorrowFromPool() throws Exception {
+        assumeTrue(VirtualThreads.isSupported(), "requires Java 21+");
+        StringBuilderProvider provider = StringBuilderProvider.threadLocal(8192);
+        // the tests are compiled for an older Java version
+        ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 100_000; i++) {
+                futures.add(executor.submit(() -> {
+                    StringBuilder builder = provider.acquire();
+                    try {
+                        builder.append("message from ").append(Thread.currentThread());
+                        return VirtualThreads.isCurrentThreadVirtual();
+                    } finally {
+                        provider.release(builder);
+                    }
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertThat(future.get()).isTrue();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(provider.getAllocations() + provider.getReuses()).isEqualTo(100_000);
+        // the number of buffers is bounded by the parallelism rather than the number of threads
+        assertThat(provider.getAllocations()).isLessThan(10_000);
+    }
+}
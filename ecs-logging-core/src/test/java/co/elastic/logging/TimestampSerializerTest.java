@@ -86,6 +86,48 @@ class TimestampSerializerTest {
     }
 
 
+    @Test
+    void testSerializeTimestampsWithinSameSecond() {
+        long startOfSecond = Instant.parse("2020-02-29T23:59:59Z").toEpochMilli();
+        for (long millis = 0; millis < 1000; millis++) {
+            assertDateFormattingIsCorrect(Instant.ofEpochMilli(startOfSecond + millis));
+        }
+        // going back to a previous second must not reuse the cached prefix
+        assertDateFormattingIsCorrect(Instant.ofEpochMilli(startOfSecond + 1000));
+        assertDateFormattingIsCorrect(Instant.ofEpochMilli(startOfSecond - 1));
+    }
+
+    @Test
+    void testSerializeTimestampsBeforeEpoch() {
+        assertDateFormattingIsCorrect(Instant.ofEpochMilli(-1));
+        assertDateFormattingIsCorrect(Instant.ofEpochMilli(-999));
+        assertDateFormattingIsCorrect(Instant.ofEpochMilli(-1000));
+        assertDateFormattingIsCorrect(Instant.ofEpochMilli(-1001));
+        assertDateFormattingIsCorrect(Instant.parse("1969-07-20T20:17:40.123Z"));
+        assertDateFormattingIsCorrect(Instant.parse("1900-01-01T00:00:00.001Z"));
+    }
+
+    @Test
+    void testSerializeWithSubMillisecondPrecision() {
+        DateTimeFormatter micros = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'").withZone(ZoneId.of("UTC"));
+        DateTimeFormatter nanos = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSSSS'Z'").withZone(ZoneId.of("UTC"));
+        for (int nanoOfSecond : new int[]{0, 1, 999, 1000, 123456789, 999999999}) {
+            Instant instant = Instant.ofEpochSecond(1565093352L, nanoOfSecond);
+
+            StringBuilder builder = new StringBuilder();
+            dateSerializer.serializeEpochTimestampAsIsoDateTime(builder, instant.getEpochSecond(), instant.getNano(), 3);
+            assertThat(builder.toString()).isEqualTo(dateTimeFormatter.format(instant));
+
+            builder.setLength(0);
+            dateSerializer.serializeEpochTimestampAsIsoDateTime(builder, instant.getEpochSecond(), instant.getNano(), 6);
+            assertThat(builder.toString()).isEqualTo(micros.format(instant));
+
+            builder.setLength(0);
+            dateSerializer.serializeEpochTimestampAsIsoDateTime(builder, instant.getEpochSecond(), instant.getNano(), 9);
+            assertThat(builder.toString()).isEqualTo(nanos.format(instant));
+        }
+    }
+
 
     private void assertDateFormattingIsCorrect(Instant instant) {
         StringBuilder builder = new StringBuilder();
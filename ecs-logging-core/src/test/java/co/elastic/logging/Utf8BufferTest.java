@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Utf8BufferTest {
+
+    private static final String[] SAMPLES = {
+            "",
+            "foo",
+            "föö bär",
+            "€ 100",
+            "emoji 😀 and more",
+            "quote \" backslash \\ tab \t newline \n control \u0001",
+            "lone high surrogate \uD83D at the end \uD83D",
+            "lone low surrogate \uDE00 in the middle",
+    };
+
+    @Test
+    void testToUtf8BytesIsConsistentWithString() {
+        for (String sample : SAMPLES) {
+            assertThat(Utf8Buffer.toUtf8Bytes(sample)).isEqualTo(sample.getBytes(StandardCharsets.UTF_8));
+            assertThat(Utf8Buffer.toUtf8Bytes(new StringBuilder(sample))).isEqualTo(sample.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testAppendGrowsBuffer() throws IOException {
+        Utf8Buffer buffer = new Utf8Buffer(1);
+        StringBuilder expected = new StringBuilder();
+        for (String sample : SAMPLES) {
+            buffer.append(sample);
+            expected.append(sample);
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        buffer.writeTo(os);
+        assertThat(os.toByteArray()).isEqualTo(expected.toString().getBytes(StandardCharsets.UTF_8));
+        assertThat(buffer.toByteArray()).isEqualTo(os.toByteArray());
+
+        buffer.reset();
+        assertThat(buffer.size()).isZero();
+        assertThat(buffer.toByteArray()).isEmpty();
+    }
+}
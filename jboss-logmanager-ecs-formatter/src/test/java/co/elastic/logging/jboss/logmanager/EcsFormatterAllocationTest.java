@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.jboss.logmanager;
+
+import co.elastic.logging.AbstractEcsAllocationTest;
+import org.jboss.logmanager.ExtLogRecord;
+import org.jboss.logmanager.Level;
+
+import java.util.Map;
+
+class EcsFormatterAllocationTest extends AbstractEcsAllocationTest {
+
+    @Override
+    protected Runnable prepareEvent(EventShape shape) {
+        final EcsFormatter formatter = new EcsFormatter();
+        formatter.setServiceName("test");
+        formatter.setStackTraceCacheSize(16);
+        final ExtLogRecord record;
+        if (shape == EventShape.PARAMETERIZED) {
+            record = new ExtLogRecord(Level.INFO, "Processed order {0} for customer {1} in {2} ms", ExtLogRecord.FormatStyle.MESSAGE_FORMAT, "ExampleLogger");
+            record.setParameters(new Object[]{"order-4711", "customer-0815", 42});
+        } else {
+            record = new ExtLogRecord(Level.INFO, MESSAGE, ExtLogRecord.FormatStyle.NO_FORMAT, "ExampleLogger");
+        }
+        if (shape == EventShape.MDC) {
+            for (Map.Entry<String, String> entry : MDC_ENTRIES.entrySet()) {
+                record.putMdc(entry.getKey(), entry.getValue());
+            }
+        }
+        if (shape == EventShape.EXCEPTION) {
+            record.setThrown(EXCEPTION);
+        }
+        record.setLoggerName("ExampleLogger");
+        record.setThreadName("ExampleThread");
+        return () -> formatter.format(record);
+    }
+
+    @Override
+    protected long getAllocationBudget(EventShape shape) {
+        // format returns a String, so the budget accounts for the resulting String and a bit of overhead
+        // about twice what has been measured on JDK 17 (480, 488, 792 and 992 bytes)
+        switch (shape) {
+            case PARAMETERIZED:
+                // java.text.MessageFormat is anything but garbage-free
+                return 8192;
+            case MDC:
+                return 1536;
+            case EXCEPTION:
+                // the cache key is computed from copies of the stack trace arrays of the exception and its cause
+                return 2048;
+            default:
+                return 1024;
+        }
+    }
+}
@@ -26,7 +26,18 @@ package co.elastic.logging.jul;
 
 import co.elastic.logging.AdditionalField;
 import co.elastic.logging.EcsJsonSerializer;
+import co.elastic.logging.EventBatchSerializer;
+import co.elastic.logging.EventSerializer;
+import co.elastic.logging.EventSizeLimits;
+import co.elastic.logging.FieldWriter;
+import co.elastic.logging.FieldWriterPlan;
+import co.elastic.logging.InstantUtils;
+import co.elastic.logging.SerializationContext;
+import co.elastic.logging.StackTraceCache;
+import co.elastic.logging.StackTraceOptions;
+import co.elastic.logging.TimestampPrecision;
 
+import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +48,59 @@ import java.util.logging.LogRecord;
 public class EcsFormatter extends Formatter {
 
     private static final String UNKNOWN_FILE = "<Unknown>";
+    private static final Method GET_INSTANT = InstantUtils.findGetInstantMethod(LogRecord.class);
+    private static final FieldWriter<LogRecord> LOG_LEVEL = new FieldWriter<LogRecord>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogRecord record, SerializationContext context) {
+            EcsJsonSerializer.serializeLogLevel(builder, record.getLevel().getName(), context);
+        }
+    };
+    private static final FieldWriter<LogRecord> THREAD = new FieldWriter<LogRecord>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogRecord record, SerializationContext context) {
+            if (Thread.currentThread().getId() == record.getThreadID()) {
+                EcsJsonSerializer.serializeThreadName(builder, Thread.currentThread().getName(), context);
+            } else {
+                EcsJsonSerializer.serializeThreadId(builder, record.getThreadID(), context);
+            }
+        }
+    };
+    private static final FieldWriter<LogRecord> LOGGER_NAME = new FieldWriter<LogRecord>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogRecord record, SerializationContext context) {
+            EcsJsonSerializer.serializeLoggerName(builder, record.getLoggerName(), context);
+        }
+    };
+    private static final FieldWriter<LogRecord> ORIGIN = new FieldWriter<LogRecord>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogRecord record, SerializationContext context) {
+            if (record.getSourceClassName() != null && record.getSourceMethodName() != null) {
+                EcsJsonSerializer.serializeOrigin(builder, buildFileName(record.getSourceClassName()), record.getSourceMethodName(), -1, context);
+            }
+        }
+    };
+
+    private final FieldWriter<LogRecord> formattedMessage = new FieldWriter<LogRecord>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogRecord record, SerializationContext context) {
+            EcsJsonSerializer.serializeFormattedMessage(builder, EcsFormatter.super.formatMessage(record), context);
+        }
+    };
+    private final FieldWriter<LogRecord> mdc = new FieldWriter<LogRecord>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogRecord record, SerializationContext context) {
+            EcsJsonSerializer.serializeMDC(builder, getMdcEntries(), false, context);
+        }
+    };
+    private final FieldWriter<LogRecord> exception = new FieldWriter<LogRecord>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogRecord record, SerializationContext context) {
+            final Throwable throwableInformation = record.getThrown();
+            if (throwableInformation != null) {
+                EcsJsonSerializer.serializeException(builder, throwableInformation, stackTraceAsArray, stackTraceCache, stackTraceOptions, context);
+            }
+        }
+    };
 
     private boolean stackTraceAsArray;
     private String serviceName;
@@ -44,8 +108,30 @@ public class EcsFormatter extends Formatter {
     private String serviceEnvironment;
     private String serviceNodeName;
     private boolean includeOrigin;
+    private boolean nestedOutput;
     private String eventDataset;
     private List<AdditionalField> additionalFields = Collections.emptyList();
+    private char[] staticFields;
+    private TimestampPrecision timestampPrecision;
+    private StackTraceCache stackTraceCache;
+    private int maxStackTraceDepth;
+    private int maxStackTraceBytes;
+    private String excludedFramePackages;
+    private int errorGroupingKeyFrames;
+    private boolean errorGroupingKeyIgnoreLineNumbers;
+    private int stackTraceDedupWindowSeconds;
+    private StackTraceOptions stackTraceOptions = StackTraceOptions.DEFAULT;
+    private int maxEventBytes;
+    private int maxMessageLength;
+    private int maxMdcValueLength;
+    private EventSizeLimits eventSizeLimits = EventSizeLimits.DEFAULT;
+    private FieldWriterPlan<LogRecord> fieldWriterPlan;
+    private final EventSerializer<LogRecord> eventSerializer = new EventSerializer<LogRecord>() {
+        @Override
+        public void serialize(StringBuilder builder, LogRecord record) {
+            serializeEvent(builder, record);
+        }
+    };
 
     /**
      * Default constructor. Will read configuration from LogManager properties.
@@ -56,41 +142,52 @@ public class EcsFormatter extends Formatter {
         serviceEnvironment = getProperty("co.elastic.logging.jul.EcsFormatter.serviceEnvironment", null);
         serviceNodeName = getProperty("co.elastic.logging.jul.EcsFormatter.serviceNodeName", null);
         includeOrigin = Boolean.parseBoolean(getProperty("co.elastic.logging.jul.EcsFormatter.includeOrigin", "false"));
+        nestedOutput = Boolean.parseBoolean(getProperty("co.elastic.logging.jul.EcsFormatter.nestedOutput", "false"));
         stackTraceAsArray = Boolean.parseBoolean(getProperty("co.elastic.logging.jul.EcsFormatter.stackTraceAsArray", "false"));
         eventDataset = getProperty("co.elastic.logging.jul.EcsFormatter.eventDataset", null);
+        timestampPrecision = TimestampPrecision.parse(getProperty("co.elastic.logging.jul.EcsFormatter.timestampPrecision", null));
+        stackTraceCache = StackTraceCache.createIfEnabled(Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.stackTraceCacheSize", "0")));
+        maxStackTraceDepth = Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.maxStackTraceDepth", "0"));
+        maxStackTraceBytes = Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.maxStackTraceBytes", "0"));
+        excludedFramePackages = getProperty("co.elastic.logging.jul.EcsFormatter.excludedFramePackages", null);
+        errorGroupingKeyFrames = Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.errorGroupingKeyFrames", "0"));
+        errorGroupingKeyIgnoreLineNumbers = Boolean.parseBoolean(getProperty("co.elastic.logging.jul.EcsFormatter.errorGroupingKeyIgnoreLineNumbers", "false"));
+        stackTraceDedupWindowSeconds = Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.stackTraceDedupWindowSeconds", "0"));
+        maxEventBytes = Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.maxEventBytes", "0"));
+        maxMessageLength = Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.maxMessageLength", "0"));
+        maxMdcValueLength = Integer.parseInt(getProperty("co.elastic.logging.jul.EcsFormatter.maxMdcValueLength", "0"));
+        compileStackTraceOptions();
+        compileEventSizeLimits();
         eventDataset = EcsJsonSerializer.computeEventDataset(eventDataset, serviceName);
         setAdditionalFields(getProperty("co.elastic.logging.jul.EcsFormatter.additionalFields", null));
     }
 
     @Override
     public String format(final LogRecord record) {
-        final StringBuilder builder = new StringBuilder();
-        EcsJsonSerializer.serializeObjectStart(builder, record.getMillis());
-        EcsJsonSerializer.serializeLogLevel(builder, record.getLevel().getName());
-        EcsJsonSerializer.serializeFormattedMessage(builder, super.formatMessage(record));
-        EcsJsonSerializer.serializeEcsVersion(builder);
-        EcsJsonSerializer.serializeAdditionalFields(builder, additionalFields);
-        EcsJsonSerializer.serializeMDC(builder, getMdcEntries());
-        EcsJsonSerializer.serializeServiceName(builder, serviceName);
-        EcsJsonSerializer.serializeServiceVersion(builder, serviceVersion);
-        EcsJsonSerializer.serializeServiceEnvironment(builder, serviceEnvironment);
-        EcsJsonSerializer.serializeServiceNodeName(builder, serviceNodeName);
-        EcsJsonSerializer.serializeEventDataset(builder, eventDataset);
-        if (Thread.currentThread().getId() == record.getThreadID()) {
-            EcsJsonSerializer.serializeThreadName(builder, Thread.currentThread().getName());
-        } else {
-            EcsJsonSerializer.serializeThreadId(builder, record.getThreadID());
-        }
-        EcsJsonSerializer.serializeLoggerName(builder, record.getLoggerName());
-        if (includeOrigin && record.getSourceClassName() != null && record.getSourceMethodName() != null) {
-            EcsJsonSerializer.serializeOrigin(builder, buildFileName(record.getSourceClassName()), record.getSourceMethodName(), -1);
+        final StringBuilder builder = EcsJsonSerializer.getEventStringBuilder();
+        try {
+            serializeEvent(builder, record);
+            return builder.toString();
+        } finally {
+            EcsJsonSerializer.releaseEventStringBuilder(builder);
         }
-        final Throwable throwableInformation = record.getThrown();
-        if (throwableInformation != null) {
-            EcsJsonSerializer.serializeException(builder, throwableInformation, stackTraceAsArray);
-        }
-        EcsJsonSerializer.serializeObjectEnd(builder);
-        return builder.toString();
+    }
+
+    /**
+     * Formats the records as newline-delimited JSON,
+     * so that a batch of records can be written with a single call.
+     *
+     * @param records the records to format, see {@link java.util.Arrays#asList(Object[])} to format an array
+     * @return the records, one JSON object per line
+     */
+    public String format(final Iterable<? extends LogRecord> records) {
+        return EventBatchSerializer.serializeBatch(records, eventSerializer).toString();
+    }
+
+    private void serializeEvent(StringBuilder builder, LogRecord record) {
+        int objectStart = builder.length();
+        serializeObjectStart(record, builder);
+        fieldWriterPlan.writeEvent(builder, objectStart, record);
     }
 
     /**
@@ -103,40 +200,213 @@ public class EcsFormatter extends Formatter {
         return Collections.emptyMap();
     }
 
+    private void serializeObjectStart(LogRecord record, StringBuilder builder) {
+        long millis = record.getMillis();
+        if (timestampPrecision == TimestampPrecision.MILLIS) {
+            EcsJsonSerializer.serializeObjectStart(builder, millis);
+        } else {
+            // LogRecord captures the timestamp as an Instant since Java 9
+            int nanoOfSecond = InstantUtils.getNanoOfSecond(GET_INSTANT, record);
+            if (nanoOfSecond < 0) {
+                nanoOfSecond = InstantUtils.getNanoOfSecond(millis);
+            }
+            EcsJsonSerializer.serializeObjectStart(builder, InstantUtils.getEpochSecond(millis), nanoOfSecond, timestampPrecision);
+        }
+    }
+
+    /**
+     * Writes dotted field names, like {@code log.level}, as nested objects, like {@code {"log":{"level":...}}}.
+     */
+    public void setNestedOutput(final boolean nestedOutput) {
+        this.nestedOutput = nestedOutput;
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
     public void setIncludeOrigin(final boolean includeOrigin) {
         this.includeOrigin = includeOrigin;
+        fieldWriterPlan = compileFieldWriterPlan();
     }
 
     public void setServiceName(final String serviceName) {
         this.serviceName = serviceName;
+        compileStaticFields();
     }
 
     public void setServiceVersion(final String serviceVersion) {
         this.serviceVersion = serviceVersion;
+        compileStaticFields();
     }
 
     public void setServiceEnvironment(final String serviceEnvironment) {
         this.serviceEnvironment = serviceEnvironment;
+        compileStaticFields();
     }
 
     public void setServiceNodeName(final String serviceNodeName) {
         this.serviceNodeName = serviceNodeName;
+        compileStaticFields();
     }
 
     public void setStackTraceAsArray(final boolean stackTraceAsArray) {
         this.stackTraceAsArray = stackTraceAsArray;
     }
 
+    /**
+     * Caches up to the given number of serialized stack traces so that exceptions which are logged repeatedly
+     * don't have to be rendered each time. Disabled by default ({@code 0}).
+     */
+    public void setStackTraceCacheSize(final int stackTraceCacheSize) {
+        this.stackTraceCache = StackTraceCache.createIfEnabled(stackTraceCacheSize);
+    }
+
+    public StackTraceCache getStackTraceCache() {
+        return stackTraceCache;
+    }
+
+    /**
+     * The maximum number of frames per exception, {@code 0} (default) for no limit.
+     */
+    public void setMaxStackTraceDepth(final int maxStackTraceDepth) {
+        this.maxStackTraceDepth = maxStackTraceDepth;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * The approximate maximum size of the serialized stack trace, {@code 0} (default) for no limit.
+     */
+    public void setMaxStackTraceBytes(final int maxStackTraceBytes) {
+        this.maxStackTraceBytes = maxStackTraceBytes;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * A comma-separated list of class name prefixes of stack trace frames to exclude, such as {@code sun.reflect,org.junit}.
+     */
+    public void setExcludedFramePackages(final String excludedFramePackages) {
+        this.excludedFramePackages = excludedFramePackages;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * The number of top frames of the exception and each of its causes that are hashed into an {@code error.grouping_key}.
+     * {@code 0} (default) omits the key.
+     */
+    public void setErrorGroupingKeyFrames(final int errorGroupingKeyFrames) {
+        this.errorGroupingKeyFrames = errorGroupingKeyFrames;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * Excludes line numbers from the {@code error.grouping_key} so that it doesn't change when unrelated lines are added or removed.
+     */
+    public void setErrorGroupingKeyIgnoreLineNumbers(final boolean errorGroupingKeyIgnoreLineNumbers) {
+        this.errorGroupingKeyIgnoreLineNumbers = errorGroupingKeyIgnoreLineNumbers;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * If positive, a stack trace is only serialized the first time it occurs within a window of the given number of seconds.
+     * Further occurrences only contain the {@code error.stack_trace_hash} and the {@code error.stack_trace_repeat_count}.
+     * {@code 0} (default) always serializes the stack trace.
+     */
+    public void setStackTraceDedupWindowSeconds(final int stackTraceDedupWindowSeconds) {
+        this.stackTraceDedupWindowSeconds = stackTraceDedupWindowSeconds;
+        compileStackTraceOptions();
+    }
+
+    private void compileStackTraceOptions() {
+        stackTraceOptions = StackTraceOptions.builder()
+                .setMaxStackTraceDepth(maxStackTraceDepth)
+                .setMaxStackTraceBytes(maxStackTraceBytes)
+                .setExcludedFramePackages(excludedFramePackages)
+                .setErrorGroupingKeyFrames(errorGroupingKeyFrames)
+                .setErrorGroupingKeyIgnoreLineNumbers(errorGroupingKeyIgnoreLineNumbers)
+                .setStackTraceDedupWindowSeconds(stackTraceDedupWindowSeconds)
+                .build();
+    }
+
+    /**
+     * The maximum size of an event in UTF-8 bytes, {@code 0} (default) for no limit.
+     * Fields that don't fit are shrunk by truncating their longest string values, or dropped.
+     */
+    public void setMaxEventBytes(final int maxEventBytes) {
+        this.maxEventBytes = maxEventBytes;
+        compileEventSizeLimits();
+    }
+
+    /**
+     * The maximum size of the {@code message} in UTF-8 bytes, {@code 0} (default) for no limit.
+     */
+    public void setMaxMessageLength(final int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+        compileEventSizeLimits();
+    }
+
+    /**
+     * The maximum size of each MDC value in UTF-8 bytes, {@code 0} (default) for no limit.
+     */
+    public void setMaxMdcValueLength(final int maxMdcValueLength) {
+        this.maxMdcValueLength = maxMdcValueLength;
+        compileEventSizeLimits();
+    }
+
+    private void compileEventSizeLimits() {
+        eventSizeLimits = EventSizeLimits.builder()
+                .setMaxEventBytes(maxEventBytes)
+                .setMaxMessageLength(maxMessageLength)
+                .setMaxMdcValueLength(maxMdcValueLength)
+                .build();
+        if (fieldWriterPlan != null) {
+            fieldWriterPlan = compileFieldWriterPlan();
+        }
+    }
+
+    /**
+     * The precision of the {@code @timestamp}: {@code millis} (default), {@code micros} or {@code nanos}.
+     * Sub-millisecond precision requires Java 9+.
+     */
+    public void setTimestampPrecision(String timestampPrecision) {
+        this.timestampPrecision = TimestampPrecision.parse(timestampPrecision);
+    }
+
     public void setEventDataset(String eventDataset) {
         this.eventDataset = eventDataset;
+        compileStaticFields();
     }
 
     public void setAdditionalFields(String additionalFields) {
         this.additionalFields = AdditionalField.parse(additionalFields);
+        compileStaticFields();
     }
 
     public void setAdditionalFields(List<AdditionalField> additionalFields) {
         this.additionalFields = additionalFields;
+        compileStaticFields();
+    }
+
+    /**
+     * Pre-renders the fields that are the same for every event.
+     * Called whenever one of the values changes.
+     */
+    private void compileStaticFields() {
+        staticFields = EcsJsonSerializer.compileStaticFields(serviceName, serviceVersion, serviceEnvironment, serviceNodeName,
+                eventDataset, additionalFields);
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
+    private FieldWriterPlan<LogRecord> compileFieldWriterPlan() {
+        return FieldWriterPlan.<LogRecord>builder()
+                .setNestedOutput(nestedOutput)
+                .setEventSizeLimits(eventSizeLimits)
+                .add("log", LOG_LEVEL)
+                .add(formattedMessage)
+                .addStaticFields(staticFields)
+                .add(mdc)
+                .add("process", THREAD)
+                .add("log", LOGGER_NAME)
+                .addIf(includeOrigin, "log", ORIGIN)
+                .add("error", exception)
+                .build();
     }
 
     private String getProperty(final String name, final String defaultValue) {
@@ -149,7 +419,7 @@ public class EcsFormatter extends Formatter {
         return value;
     }
 
-    private String buildFileName(String className) {
+    private static String buildFileName(String className) {
         String result = UNKNOWN_FILE;
         if (className != null) {
             int fileNameEnd = className.indexOf('$');
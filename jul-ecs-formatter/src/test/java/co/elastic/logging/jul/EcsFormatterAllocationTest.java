@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.jul;
+
+import co.elastic.logging.AbstractEcsAllocationTest;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+class EcsFormatterAllocationTest extends AbstractEcsAllocationTest {
+
+    @Override
+    protected Runnable prepareEvent(EventShape shape) {
+        final Map<String, String> mdc = shape == EventShape.MDC ? MDC_ENTRIES : Collections.<String, String>emptyMap();
+        final EcsFormatter formatter = new EcsFormatter() {
+            @Override
+            protected Map<String, String> getMdcEntries() {
+                return mdc;
+            }
+        };
+        formatter.setServiceName("test");
+        formatter.setStackTraceCacheSize(16);
+        final LogRecord record;
+        if (shape == EventShape.PARAMETERIZED) {
+            record = new LogRecord(Level.INFO, "Processed order {0} for customer {1} in {2} ms");
+            record.setParameters(new Object[]{"order-4711", "customer-0815", 42});
+        } else {
+            record = new LogRecord(Level.INFO, MESSAGE);
+        }
+        if (shape == EventShape.EXCEPTION) {
+            record.setThrown(EXCEPTION);
+        }
+        record.setLoggerName("ExampleLogger");
+        return () -> formatter.format(record);
+    }
+
+    @Override
+    protected long getAllocationBudget(EventShape shape) {
+        // format returns a String, so the budget accounts for the resulting String and a bit of overhead
+        // about twice what has been measured on JDK 17 (272, 3320, 488 and 784 bytes)
+        switch (shape) {
+            case PARAMETERIZED:
+                // java.text.MessageFormat is anything but garbage-free
+                return 8192;
+            case MDC:
+                return 1024;
+            case EXCEPTION:
+                // the cache key is computed from copies of the stack trace arrays of the exception and its cause
+                return 1536;
+            default:
+                return 512;
+        }
+    }
+}
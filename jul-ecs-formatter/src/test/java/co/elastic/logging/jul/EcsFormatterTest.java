@@ -31,6 +31,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -108,6 +109,30 @@ public class EcsFormatterTest {
         assertThat(result.at("/log/origin/function").textValue()).isEqualTo("exampleMethod");
     }
 
+    @Test
+    void testSettersUpdateStaticFields() {
+        formatter.setServiceName("before");
+        assertThat(parseJson(formatter.format(record)).get("service.name").textValue()).isEqualTo("before");
+
+        formatter.setServiceName("after");
+        formatter.setAdditionalFields("key1=value1");
+        JsonNode result = parseJson(formatter.format(record));
+        assertThat(result.get("service.name").textValue()).isEqualTo("after");
+        assertThat(result.get("key1").textValue()).isEqualTo("value1");
+    }
+
+    @Test
+    void testTimestampPrecision() {
+        record.setInstant(Instant.ofEpochSecond(5, 123456789));
+        assertThat(parseJson(formatter.format(record)).get("@timestamp").textValue()).isEqualTo("1970-01-01T00:00:05.123Z");
+
+        formatter.setTimestampPrecision("micros");
+        assertThat(parseJson(formatter.format(record)).get("@timestamp").textValue()).isEqualTo("1970-01-01T00:00:05.123456Z");
+
+        formatter.setTimestampPrecision("nanos");
+        assertThat(parseJson(formatter.format(record)).get("@timestamp").textValue()).isEqualTo("1970-01-01T00:00:05.123456789Z");
+    }
+
     @Test
     void testMdcSerialization_singleEntry() {
         Map<String, String> mdc = new HashMap<String, String>();
@@ -127,6 +152,21 @@ public class EcsFormatterTest {
         assertThat(result.get("message").textValue()).isEqualTo(record.getMessage());
     }
 
+    @Test
+    void testFormatBatch() {
+        formatter.setNestedOutput(true);
+        LogRecord second = new LogRecord(Level.WARNING, "Second Message");
+        second.setLoggerName("ExampleLogger");
+
+        String batch = formatter.format(Arrays.asList(record, second));
+
+        assertThat(batch).isEqualTo(formatter.format(record) + formatter.format(second));
+        String[] lines = batch.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(parseJson(lines[0]).get("message").textValue()).isEqualTo("Example Message");
+        assertThat(parseJson(lines[1]).at("/log/level").textValue()).isEqualTo("WARNING");
+    }
+
     private static JsonNode parseJson(String formatter) {
         try {
             return objectMapper.readTree(formatter);
@@ -25,7 +25,15 @@
 package co.elastic.logging.log4j;
 
 import co.elastic.logging.EcsJsonSerializer;
+import co.elastic.logging.EventBatchSerializer;
+import co.elastic.logging.EventSerializer;
 import co.elastic.logging.AdditionalField;
+import co.elastic.logging.EventSizeLimits;
+import co.elastic.logging.FieldWriter;
+import co.elastic.logging.FieldWriterPlan;
+import co.elastic.logging.SerializationContext;
+import co.elastic.logging.StackTraceCache;
+import co.elastic.logging.StackTraceOptions;
 import org.apache.log4j.Layout;
 import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
@@ -37,6 +45,39 @@ import java.util.List;
 public class EcsLayout extends Layout {
 
     private static final MdcAccess MDC_ACCESS = MdcAccess.Resolver.resolve();
+    private static final FieldWriter<LoggingEvent> LOG_LEVEL = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeLogLevel(builder, event.level.toString(), context);
+        }
+    };
+    private static final FieldWriter<LoggingEvent> THREAD_NAME = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeThreadName(builder, event.getThreadName(), context);
+        }
+    };
+    private static final FieldWriter<LoggingEvent> LOGGER_NAME = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeLoggerName(builder, event.categoryName, context);
+        }
+    };
+    private static final FieldWriter<LoggingEvent> TAGS = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeTag(builder, event.getNDC(), context);
+        }
+    };
+    private static final FieldWriter<LoggingEvent> ORIGIN = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            LocationInfo locationInformation = event.getLocationInformation();
+            if (locationInformation != null) {
+                EcsJsonSerializer.serializeOrigin(builder, locationInformation.getFileName(), locationInformation.getMethodName(), getLineNumber(locationInformation), context);
+            }
+        }
+    };
 
     private boolean stackTraceAsArray = false;
     private String serviceName;
@@ -44,38 +85,78 @@ public class EcsLayout extends Layout {
     private String serviceEnvironment;
     private String serviceNodeName;
     private boolean includeOrigin;
+    private boolean nestedOutput;
+    private boolean typedMdcValues;
     private String eventDataset;
     private List<AdditionalField> additionalFields = new ArrayList<AdditionalField>();
+    private StackTraceCache stackTraceCache;
+    private int maxStackTraceDepth;
+    private int maxStackTraceBytes;
+    private String excludedFramePackages;
+    private int errorGroupingKeyFrames;
+    private boolean errorGroupingKeyIgnoreLineNumbers;
+    private int stackTraceDedupWindowSeconds;
+    private StackTraceOptions stackTraceOptions = StackTraceOptions.DEFAULT;
+    private int maxEventBytes;
+    private int maxMessageLength;
+    private int maxMdcValueLength;
+    private EventSizeLimits eventSizeLimits = EventSizeLimits.DEFAULT;
+    private char[] staticFields = EcsJsonSerializer.compileStaticFields(null, null, null, null, null, null);
+    private final FieldWriter<LoggingEvent> formattedMessage = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeFormattedMessage(builder, event.getRenderedMessage(), context);
+        }
+    };
+    private final FieldWriter<LoggingEvent> mdc = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeMDC(builder, MDC_ACCESS.getMDC(event), typedMdcValues, context);
+        }
+    };
+    private final FieldWriter<LoggingEvent> exception = new FieldWriter<LoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LoggingEvent event, SerializationContext context) {
+            ThrowableInformation throwableInformation = event.getThrowableInformation();
+            if (throwableInformation != null) {
+                EcsJsonSerializer.serializeException(builder, throwableInformation.getThrowable(), stackTraceAsArray, stackTraceCache, stackTraceOptions, context);
+            }
+        }
+    };
+    private FieldWriterPlan<LoggingEvent> fieldWriterPlan = compileFieldWriterPlan();
+    private final EventSerializer<LoggingEvent> eventSerializer = new EventSerializer<LoggingEvent>() {
+        @Override
+        public void serialize(StringBuilder builder, LoggingEvent event) {
+            serializeEvent(builder, event);
+        }
+    };
 
     @Override
     public String format(LoggingEvent event) {
-        StringBuilder builder = new StringBuilder();
-        EcsJsonSerializer.serializeObjectStart(builder, event.timeStamp);
-        EcsJsonSerializer.serializeLogLevel(builder, event.level.toString());
-        EcsJsonSerializer.serializeFormattedMessage(builder, event.getRenderedMessage());
-        EcsJsonSerializer.serializeEcsVersion(builder);
-        EcsJsonSerializer.serializeServiceName(builder, serviceName);
-        EcsJsonSerializer.serializeServiceVersion(builder, serviceVersion);
-        EcsJsonSerializer.serializeServiceEnvironment(builder, serviceEnvironment);
-        EcsJsonSerializer.serializeServiceNodeName(builder, serviceNodeName);
-        EcsJsonSerializer.serializeEventDataset(builder, eventDataset);
-        EcsJsonSerializer.serializeThreadName(builder, event.getThreadName());
-        EcsJsonSerializer.serializeLoggerName(builder, event.categoryName);
-        EcsJsonSerializer.serializeAdditionalFields(builder, additionalFields);
-        EcsJsonSerializer.serializeMDC(builder, MDC_ACCESS.getMDC(event));
-        EcsJsonSerializer.serializeTag(builder, event.getNDC());
-        if (includeOrigin) {
-            LocationInfo locationInformation = event.getLocationInformation();
-            if (locationInformation != null) {
-                EcsJsonSerializer.serializeOrigin(builder, locationInformation.getFileName(), locationInformation.getMethodName(), getLineNumber(locationInformation));
-            }
+        StringBuilder builder = EcsJsonSerializer.getEventStringBuilder();
+        try {
+            serializeEvent(builder, event);
+            return builder.toString();
+        } finally {
+            EcsJsonSerializer.releaseEventStringBuilder(builder);
         }
-        ThrowableInformation throwableInformation = event.getThrowableInformation();
-        if (throwableInformation != null) {
-            EcsJsonSerializer.serializeException(builder, throwableInformation.getThrowable(), stackTraceAsArray);
-        }
-        EcsJsonSerializer.serializeObjectEnd(builder);
-        return builder.toString();
+    }
+
+    /**
+     * Formats the events as newline-delimited JSON,
+     * so that a batch of events can be written with a single call.
+     *
+     * @param events the events to format, see {@link java.util.Arrays#asList(Object[])} to format an array
+     * @return the events, one JSON object per line
+     */
+    public String format(Iterable<? extends LoggingEvent> events) {
+        return EventBatchSerializer.serializeBatch(events, eventSerializer).toString();
+    }
+
+    private void serializeEvent(StringBuilder builder, LoggingEvent event) {
+        int objectStart = builder.length();
+        EcsJsonSerializer.serializeObjectStart(builder, event.timeStamp);
+        fieldWriterPlan.writeEvent(builder, objectStart, event);
     }
 
     private static int getLineNumber(LocationInfo locationInformation) {
@@ -99,37 +180,194 @@ public class EcsLayout extends Layout {
     @Override
     public void activateOptions() {
         eventDataset = EcsJsonSerializer.computeEventDataset(eventDataset, serviceName);
+        compileStaticFields();
+    }
+
+    /**
+     * Pre-renders the fields that are the same for every event.
+     * Called whenever one of the values changes.
+     */
+    private void compileStaticFields() {
+        staticFields = EcsJsonSerializer.compileStaticFields(serviceName, serviceVersion, serviceEnvironment, serviceNodeName,
+                eventDataset, additionalFields);
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
+    private FieldWriterPlan<LoggingEvent> compileFieldWriterPlan() {
+        return FieldWriterPlan.<LoggingEvent>builder()
+                .setNestedOutput(nestedOutput)
+                .setEventSizeLimits(eventSizeLimits)
+                .add("log", LOG_LEVEL)
+                .add(formattedMessage)
+                .addStaticFields(staticFields)
+                .add("process", THREAD_NAME)
+                .add("log", LOGGER_NAME)
+                .add(mdc)
+                .add(TAGS)
+                .addIf(includeOrigin, "log", ORIGIN)
+                .add("error", exception)
+                .build();
     }
 
     public void setServiceName(String serviceName) {
         this.serviceName = serviceName;
+        compileStaticFields();
     }
 
     public void setServiceVersion(String serviceVersion) {
         this.serviceVersion = serviceVersion;
+        compileStaticFields();
     }
 
     public void setServiceEnvironment(String serviceEnvironment) {
         this.serviceEnvironment = serviceEnvironment;
+        compileStaticFields();
     }
 
     public void setServiceNodeName(String serviceNodeName) {
         this.serviceNodeName = serviceNodeName;
+        compileStaticFields();
+    }
+
+    /**
+     * Writes dotted field names, like {@code log.level}, as nested objects, like {@code {"log":{"level":...}}}.
+     */
+    public void setNestedOutput(boolean nestedOutput) {
+        this.nestedOutput = nestedOutput;
+        fieldWriterPlan = compileFieldWriterPlan();
     }
 
     public void setIncludeOrigin(boolean includeOrigin) {
         this.includeOrigin = includeOrigin;
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
+    /**
+     * Serializes numbers and booleans in the MDC as JSON numbers and booleans instead of strings.
+     */
+    public void setTypedMdcValues(boolean typedMdcValues) {
+        this.typedMdcValues = typedMdcValues;
     }
 
     public void setStackTraceAsArray(boolean stackTraceAsArray) {
         this.stackTraceAsArray = stackTraceAsArray;
     }
 
+    /**
+     * Caches up to the given number of serialized stack traces so that exceptions which are logged repeatedly
+     * don't have to be rendered each time. Disabled by default ({@code 0}).
+     */
+    public void setStackTraceCacheSize(int stackTraceCacheSize) {
+        this.stackTraceCache = StackTraceCache.createIfEnabled(stackTraceCacheSize);
+    }
+
+    public StackTraceCache getStackTraceCache() {
+        return stackTraceCache;
+    }
+
+    /**
+     * The maximum number of frames per exception, {@code 0} (default) for no limit.
+     */
+    public void setMaxStackTraceDepth(int maxStackTraceDepth) {
+        this.maxStackTraceDepth = maxStackTraceDepth;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * The approximate maximum size of the serialized stack trace, {@code 0} (default) for no limit.
+     */
+    public void setMaxStackTraceBytes(int maxStackTraceBytes) {
+        this.maxStackTraceBytes = maxStackTraceBytes;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * A comma-separated list of class name prefixes of stack trace frames to exclude, such as {@code sun.reflect,org.junit}.
+     */
+    public void setExcludedFramePackages(String excludedFramePackages) {
+        this.excludedFramePackages = excludedFramePackages;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * The number of top frames of the exception and each of its causes that are hashed into an {@code error.grouping_key}.
+     * {@code 0} (default) omits the key.
+     */
+    public void setErrorGroupingKeyFrames(int errorGroupingKeyFrames) {
+        this.errorGroupingKeyFrames = errorGroupingKeyFrames;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * Excludes line numbers from the {@code error.grouping_key} so that it doesn't change when unrelated lines are added or removed.
+     */
+    public void setErrorGroupingKeyIgnoreLineNumbers(boolean errorGroupingKeyIgnoreLineNumbers) {
+        this.errorGroupingKeyIgnoreLineNumbers = errorGroupingKeyIgnoreLineNumbers;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * If positive, a stack trace is only serialized the first time it occurs within a window of the given number of seconds.
+     * Further occurrences only contain the {@code error.stack_trace_hash} and the {@code error.stack_trace_repeat_count}.
+     * {@code 0} (default) always serializes the stack trace.
+     */
+    public void setStackTraceDedupWindowSeconds(int stackTraceDedupWindowSeconds) {
+        this.stackTraceDedupWindowSeconds = stackTraceDedupWindowSeconds;
+        compileStackTraceOptions();
+    }
+
+    private void compileStackTraceOptions() {
+        stackTraceOptions = StackTraceOptions.builder()
+                .setMaxStackTraceDepth(maxStackTraceDepth)
+                .setMaxStackTraceBytes(maxStackTraceBytes)
+                .setExcludedFramePackages(excludedFramePackages)
+                .setErrorGroupingKeyFrames(errorGroupingKeyFrames)
+                .setErrorGroupingKeyIgnoreLineNumbers(errorGroupingKeyIgnoreLineNumbers)
+                .setStackTraceDedupWindowSeconds(stackTraceDedupWindowSeconds)
+                .build();
+    }
+
+    /**
+     * The maximum size of an event in UTF-8 bytes, {@code 0} (default) for no limit.
+     * Fields that don't fit are shrunk by truncating their longest string values, or dropped.
+     */
+    public void setMaxEventBytes(int maxEventBytes) {
+        this.maxEventBytes = maxEventBytes;
+        compileEventSizeLimits();
+    }
+
+    /**
+     * The maximum size of the {@code message} in UTF-8 bytes, {@code 0} (default) for no limit.
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+        compileEventSizeLimits();
+    }
+
+    /**
+     * The maximum size of each MDC value in UTF-8 bytes, {@code 0} (default) for no limit.
+     */
+    public void setMaxMdcValueLength(int maxMdcValueLength) {
+        this.maxMdcValueLength = maxMdcValueLength;
+        compileEventSizeLimits();
+    }
+
+    private void compileEventSizeLimits() {
+        eventSizeLimits = EventSizeLimits.builder()
+                .setMaxEventBytes(maxEventBytes)
+                .setMaxMessageLength(maxMessageLength)
+                .setMaxMdcValueLength(maxMdcValueLength)
+                .build();
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
     public void setEventDataset(String eventDataset) {
         this.eventDataset = eventDataset;
+        compileStaticFields();
     }
 
     public void setAdditionalField(String additionalField) {
         this.additionalFields.add(AdditionalField.of(additionalField));
+        compileStaticFields();
     }
 }
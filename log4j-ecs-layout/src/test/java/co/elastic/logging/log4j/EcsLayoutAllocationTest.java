@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.log4j;
+
+import co.elastic.logging.AbstractEcsAllocationTest;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+import java.util.Collections;
+
+class EcsLayoutAllocationTest extends AbstractEcsAllocationTest {
+
+    @Override
+    protected Runnable prepareEvent(EventShape shape) {
+        if (shape == EventShape.PARAMETERIZED) {
+            // log4j 1.x doesn't support parameterized logging
+            return null;
+        }
+        final EcsLayout layout = new EcsLayout();
+        layout.setServiceName("test");
+        layout.setStackTraceCacheSize(16);
+        layout.activateOptions();
+        final LoggingEvent event = new LoggingEvent(Logger.class.getName(), Logger.getLogger("ExampleLogger"), System.currentTimeMillis(), Level.INFO,
+                MESSAGE, "ExampleThread", shape == EventShape.EXCEPTION ? new ThrowableInformation(EXCEPTION) : null,
+                null, null, shape == EventShape.MDC ? MDC_ENTRIES : Collections.emptyMap());
+        return () -> layout.format(event);
+    }
+
+    @Override
+    protected long getAllocationBudget(EventShape shape) {
+        // format returns a String, so the budget accounts for the resulting String and a bit of overhead
+        // about twice what has been measured on JDK 17 (336, 584 and 848 bytes)
+        switch (shape) {
+            case MDC:
+                return 1024;
+            case EXCEPTION:
+                // the cache key is computed from copies of the stack trace arrays of the exception and its cause
+                return 1536;
+            default:
+                return 768;
+        }
+    }
+}
@@ -25,20 +25,31 @@
 package co.elastic.logging.log4j2;
 
 import co.elastic.logging.EcsJsonSerializer;
-import co.elastic.logging.JsonUtils;
+import co.elastic.logging.SerializationContext;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.util.TriConsumer;
 
 interface DefaultMdcSerializer extends MdcSerializer {
 
+    /**
+     * Writes the keys via the context, so that they are nested in nested output mode,
+     * and cuts string values to the maximum MDC value length of the context's limits.
+     */
+    void serializeMdc(LogEvent event, StringBuilder builder, SerializationContext context);
+
     /**
      * Garbage free MDC serialization for log4j2 2.7+
      * Never reference directly in prod code so avoid linkage errors when TriConsumer or getContextData are not available
      */
-    enum UsingContextData implements MdcSerializer {
+    enum UsingContextData implements DefaultMdcSerializer {
 
         @SuppressWarnings("unused")
-        INSTANCE;
+        INSTANCE(false),
+        /**
+         * Serializes numbers and booleans as JSON numbers and booleans
+         */
+        @SuppressWarnings("unused")
+        TYPED(true);
 
         private static final TriConsumer<String, Object, StringBuilder> WRITE_MDC = new TriConsumer<String, Object, StringBuilder>() {
             @Override
@@ -47,22 +58,64 @@ interface DefaultMdcSerializer extends MdcSerializer {
             }
         };
 
+        private static final TriConsumer<String, Object, StringBuilder> WRITE_TYPED_MDC = new TriConsumer<String, Object, StringBuilder>() {
+            @Override
+            public void accept(final String key, final Object value, final StringBuilder stringBuilder) {
+                EcsJsonSerializer.serializeMdcEntry(stringBuilder, key, value, true);
+            }
+        };
+
+        private static final TriConsumer<String, Object, SerializationContext> WRITE_MDC_WITH_CONTEXT = new TriConsumer<String, Object, SerializationContext>() {
+            @Override
+            public void accept(final String key, final Object value, final SerializationContext context) {
+                EcsJsonSerializer.serializeMdcEntry(context.getBuilder(), key, String.valueOf(value), context);
+            }
+        };
+
+        private static final TriConsumer<String, Object, SerializationContext> WRITE_TYPED_MDC_WITH_CONTEXT = new TriConsumer<String, Object, SerializationContext>() {
+            @Override
+            public void accept(final String key, final Object value, final SerializationContext context) {
+                EcsJsonSerializer.serializeMdcEntry(context.getBuilder(), key, value, true, context);
+            }
+        };
+
+        private final boolean typedMdcValues;
+
+        UsingContextData(boolean typedMdcValues) {
+            this.typedMdcValues = typedMdcValues;
+        }
 
         @Override
         public void serializeMdc(LogEvent event, StringBuilder builder) {
-            event.getContextData().forEach(WRITE_MDC, builder);
+            event.getContextData().forEach(typedMdcValues ? WRITE_TYPED_MDC : WRITE_MDC, builder);
+        }
+
+        @Override
+        public void serializeMdc(LogEvent event, StringBuilder builder, SerializationContext context) {
+            if (context == SerializationContext.DEFAULT) {
+                // the default context doesn't hold a reference to the builder
+                serializeMdc(event, builder);
+            } else {
+                event.getContextData().forEach(typedMdcValues ? WRITE_TYPED_MDC_WITH_CONTEXT : WRITE_MDC_WITH_CONTEXT, context);
+            }
         }
     }
 
     /**
      * Fallback for log4j2 <= 2.6
      */
-    enum UsingContextMap implements MdcSerializer {
+    enum UsingContextMap implements DefaultMdcSerializer {
         INSTANCE;
 
         @Override
         public void serializeMdc(LogEvent event, StringBuilder builder) {
             EcsJsonSerializer.serializeMDC(builder, event.getContextMap());
         }
+
+        @Override
+        public void serializeMdc(LogEvent event, StringBuilder builder, SerializationContext context) {
+            // the context map only contains strings, so there's nothing to type
+            EcsJsonSerializer.serializeMDC(builder, event.getContextMap(), false, context);
+        }
     }
 }
@@ -0,0 +1,245 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.log4j2;
+
+import co.elastic.logging.DropPolicy;
+import co.elastic.logging.SerializedEventWriter;
+import co.elastic.logging.Utf8Buffer;
+import co.elastic.logging.WaitStrategy;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An asynchronous appender that serializes events with an {@link EcsLayout} on the logging thread
+ * and writes them to a file from a background thread.
+ * <p>
+ * As opposed to log4j's {@code AsyncAppender} and async loggers, which run the layout on the background thread,
+ * only the finished bytes are handed over.
+ * The event is serialized into a pooled buffer while the thread name, the context data and the message parameters are still at hand,
+ * so the event doesn't have to be copied via {@link LogEvent#toImmutable()} and serialization scales with the number of logging threads.
+ * The background thread drains up to {@code maxBatchSize} events at a time and writes them with a single call.
+ * </p>
+ */
+@Plugin(name = "EcsAsyncFile", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public final class EcsAsyncFileAppender extends AbstractAppender {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final int DEFAULT_MAX_FLUSH_TIME = 1000;
+
+    private final EcsLayout layout;
+    private final String fileName;
+    private final OutputStream outputStream;
+    private final SerializedEventWriter writer;
+    private final DropPolicy dropPolicy;
+    private final int maxFlushTime;
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private EcsAsyncFileAppender(String name, Filter filter, EcsLayout layout, boolean ignoreExceptions, Property[] properties,
+                                 String fileName, OutputStream outputStream, int bufferSize, int maxBatchSize,
+                                 WaitStrategy waitStrategy, DropPolicy dropPolicy, int maxFlushTime) {
+        super(name, filter, layout, ignoreExceptions, properties);
+        this.layout = layout;
+        this.fileName = fileName;
+        this.outputStream = outputStream;
+        this.dropPolicy = dropPolicy;
+        this.maxFlushTime = maxFlushTime;
+        this.writer = new SerializedEventWriter("ecs-async-file-" + name, outputStream, bufferSize, maxBatchSize, waitStrategy) {
+            @Override
+            protected void onError(String message, Exception e) {
+                error(message, e);
+            }
+        };
+    }
+
+    @PluginBuilderFactory
+    public static <B extends Builder<B>> B newBuilder() {
+        return new Builder<B>().asBuilder();
+    }
+
+    @Override
+    public void start() {
+        writer.start();
+        super.start();
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        boolean block = !dropPolicy.isDroppable(!event.getLevel().isMoreSpecificThan(Level.WARN));
+        Utf8Buffer buffer = writer.acquireBuffer();
+        layout.encode(event, buffer);
+        if (!writer.enqueue(buffer, block)) {
+            writer.releaseBuffer(buffer);
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        boolean stopped = super.stop(timeout, timeUnit, false);
+        if (!writer.stop(maxFlushTime)) {
+            LOGGER.warn("Max flush time of {}ms exceeded, {} events may have been lost.", maxFlushTime, writer.size());
+            stopped = false;
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            LOGGER.error("Failed to close file {}", fileName, e);
+            stopped = false;
+        }
+        setStopped();
+        return stopped;
+    }
+
+    /**
+     * @return the number of events that have been dropped because the buffer was full
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public static class Builder<B extends Builder<B>> extends AbstractAppender.Builder<B>
+            implements org.apache.logging.log4j.core.util.Builder<EcsAsyncFileAppender> {
+
+        @PluginBuilderAttribute("fileName")
+        private String fileName;
+        @PluginBuilderAttribute("append")
+        private boolean append = true;
+        @PluginBuilderAttribute("bufferSize")
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        @PluginBuilderAttribute("maxBatchSize")
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        @PluginBuilderAttribute("maxFlushTime")
+        private int maxFlushTime = DEFAULT_MAX_FLUSH_TIME;
+        @PluginBuilderAttribute("waitStrategy")
+        private String waitStrategy;
+        @PluginBuilderAttribute("dropPolicy")
+        private String dropPolicy;
+
+        @Override
+        public EcsAsyncFileAppender build() {
+            Layout<? extends Serializable> layout = getLayout();
+            if (!(layout instanceof EcsLayout)) {
+                LOGGER.error("The appender named {} requires an EcsLayout", getName());
+                return null;
+            }
+            if (fileName == null) {
+                LOGGER.error("No fileName set for the appender named {}", getName());
+                return null;
+            }
+            WaitStrategy waitStrategy;
+            DropPolicy dropPolicy;
+            try {
+                waitStrategy = WaitStrategy.parse(this.waitStrategy);
+                dropPolicy = DropPolicy.parse(this.dropPolicy);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Invalid configuration of the appender named {}: {}", getName(), e.getMessage());
+                return null;
+            }
+            OutputStream outputStream;
+            try {
+                outputStream = openOutputStream(fileName, append);
+            } catch (IOException e) {
+                LOGGER.error("Failed to open file {} for the appender named {}", fileName, getName(), e);
+                return null;
+            }
+            return new EcsAsyncFileAppender(getName(), getFilter(), (EcsLayout) layout, isIgnoreExceptions(), getPropertyArray(),
+                    fileName, outputStream, bufferSize, Math.max(1, maxBatchSize),
+                    waitStrategy, dropPolicy, maxFlushTime);
+        }
+
+        private static OutputStream openOutputStream(String fileName, boolean append) throws IOException {
+            File logFile = new File(fileName);
+            File parent = logFile.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory " + parent);
+            }
+            return new FileOutputStream(logFile, append);
+        }
+
+        public B setFileName(final String fileName) {
+            this.fileName = fileName;
+            return asBuilder();
+        }
+
+        public B setAppend(final boolean append) {
+            this.append = append;
+            return asBuilder();
+        }
+
+        /**
+         * @param bufferSize the number of events the ring buffer can hold, rounded up to the next power of two
+         */
+        public B setBufferSize(final int bufferSize) {
+            this.bufferSize = bufferSize;
+            return asBuilder();
+        }
+
+        public B setMaxBatchSize(final int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return asBuilder();
+        }
+
+        /**
+         * @param maxFlushTime the maximum number of milliseconds to wait for the buffered events to be written on stop
+         */
+        public B setMaxFlushTime(final int maxFlushTime) {
+            this.maxFlushTime = maxFlushTime;
+            return asBuilder();
+        }
+
+        public B setWaitStrategy(final String waitStrategy) {
+            this.waitStrategy = waitStrategy;
+            return asBuilder();
+        }
+
+        public B setDropPolicy(final String dropPolicy) {
+            this.dropPolicy = dropPolicy;
+            return asBuilder();
+        }
+    }
+}
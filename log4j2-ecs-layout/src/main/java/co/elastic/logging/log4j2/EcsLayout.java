@@ -25,8 +25,20 @@
 package co.elastic.logging.log4j2;
 
 
+import co.elastic.logging.AdditionalField;
 import co.elastic.logging.EcsJsonSerializer;
+import co.elastic.logging.EventBatchSerializer;
+import co.elastic.logging.EventSerializer;
+import co.elastic.logging.EventSizeLimits;
+import co.elastic.logging.FieldWriter;
+import co.elastic.logging.FieldWriterPlan;
 import co.elastic.logging.JsonUtils;
+import co.elastic.logging.SerializationContext;
+import co.elastic.logging.StackTraceCache;
+import co.elastic.logging.StackTraceOptions;
+import co.elastic.logging.TimestampPrecision;
+import co.elastic.logging.Utf8Buffer;
+import co.elastic.logging.VirtualThreads;
 import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Layout;
@@ -52,6 +64,7 @@ import org.apache.logging.log4j.util.PropertiesUtil;
 import org.apache.logging.log4j.util.StringBuilderFormattable;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -63,44 +76,143 @@ public class EcsLayout extends AbstractStringLayout {
     public static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final ObjectMessageJacksonSerializer JACKSON_SERIALIZER = ObjectMessageJacksonSerializer.Resolver.resolve();
     private static final MultiFormatHandler MULTI_FORMAT_HANDLER = MultiFormatHandler.Resolver.resolve();
+    private static final EventTimestampSerializer TIMESTAMP_SERIALIZER = EventTimestampSerializer.Resolver.resolve();
     private static final boolean FORMAT_MESSAGES_PATTERN_DISABLE_LOOKUPS = PropertiesUtil.getProperties().getBooleanProperty(
             "log4j2.formatMsgNoLookups", false);
+    // the number of events a new batch buffer is sized for
+    private static final int DEFAULT_BATCH_SIZE = 128;
+    // batch buffers that have grown larger are trimmed after use, so that a single huge batch doesn't retain its memory
+    private static final int MAX_BATCH_STRING_BUILDER_SIZE = 1 << 18;
+    private static final FieldWriter<LogEvent> LOG_LEVEL = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeLogLevel(builder, event.getLevel().toString(), context);
+        }
+    };
+    private static final FieldWriter<LogEvent> THREAD_NAME = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeThreadName(builder, event.getThreadName(), context);
+        }
+    };
+    private static final FieldWriter<LogEvent> LOGGER_NAME = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeLoggerName(builder, event.getLoggerName(), context);
+        }
+    };
+    private static final FieldWriter<LogEvent> ORIGIN = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeOrigin(builder, event.getSource(), context);
+        }
+    };
 
     private final KeyValuePair[] additionalFields;
+    // the pre-escaped "key": fragments of the additional fields
+    private final String[] additionalFieldKeys;
     private final PatternFormatter[][] fieldValuePatternFormatter;
     private final boolean stackTraceAsArray;
-    private final String serviceName;
-    private final String serviceVersion;
-    private final String serviceEnvironment;
-    private final String serviceNodeName;
-    private final String eventDataset;
+    private final char[] staticFields;
     private final boolean includeMarkers;
     private final boolean includeOrigin;
+    private final boolean nestedOutput;
     private final PatternFormatter[] exceptionPatternFormatter;
     private final ConcurrentMap<Class<? extends MultiformatMessage>, Boolean> supportsJson = new ConcurrentHashMap<Class<? extends MultiformatMessage>, Boolean>();
     private final MdcSerializer mdcSerializer;
+    private final TimestampPrecision timestampPrecision;
+    private final StackTraceCache stackTraceCache;
+    private final StackTraceOptions stackTraceOptions;
+    private final EventSizeLimits eventSizeLimits;
+    private final FieldWriter<LogEvent> message = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            serializeMessage(builder, false, event.getMessage(), context);
+        }
+    };
+    private final FieldWriter<LogEvent> gcFreeMessage = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            serializeMessage(builder, true, event.getMessage(), context);
+        }
+    };
+    private final FieldWriter<LogEvent> additionalFieldsAndMdc = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            serializeAdditionalFieldsAndMDC(event, builder, context);
+        }
+    };
+    private final FieldWriter<LogEvent> tags = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            serializeTags(event, builder, context);
+        }
+    };
+    private final FieldWriter<LogEvent> exception = new FieldWriter<LogEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, LogEvent event, SerializationContext context) {
+            serializeException(builder, event, context);
+        }
+    };
+    private final FieldWriterPlan<LogEvent> fieldWriterPlan;
+    private final FieldWriterPlan<LogEvent> gcFreeFieldWriterPlan;
+    // AbstractStringLayout#getStringBuilder trims its buffer to log4j.layoutStringBuilder.maxSize after each use,
+    // which is too small for a batch, so batches are serialized into a buffer that keeps its capacity
+    private final ThreadLocal<StringBuilder> batchStringBuilders = new ThreadLocal<StringBuilder>();
+    private final EventSerializer<LogEvent> eventSerializer = new EventSerializer<LogEvent>() {
+        @Override
+        public void serialize(StringBuilder builder, LogEvent event) {
+            toText(event, builder, false);
+        }
+    };
+    private final EventSerializer<LogEvent> gcFreeEventSerializer = new EventSerializer<LogEvent>() {
+        @Override
+        public void serialize(StringBuilder builder, LogEvent event) {
+            toText(event, builder, true);
+        }
+    };
 
     private EcsLayout(Configuration config, String serviceName, String serviceVersion, String serviceEnvironment, String serviceNodeName, String eventDataset, boolean includeMarkers,
-                      KeyValuePair[] additionalFields, boolean includeOrigin, String exceptionPattern, boolean stackTraceAsArray, String mdcSerializerFullClassName) {
+                      KeyValuePair[] additionalFields, boolean includeOrigin, boolean nestedOutput, String exceptionPattern, boolean stackTraceAsArray, String mdcSerializerFullClassName,
+                      boolean typedMdcValues, TimestampPrecision timestampPrecision, StackTraceCache stackTraceCache, StackTraceOptions stackTraceOptions,
+                      EventSizeLimits eventSizeLimits) {
         super(config, UTF_8, null, null);
-        this.serviceName = serviceName;
-        this.serviceVersion = serviceVersion;
-        this.serviceEnvironment = serviceEnvironment;
-        this.serviceNodeName = serviceNodeName;
-        this.eventDataset = eventDataset;
+        this.timestampPrecision = timestampPrecision;
+        this.stackTraceCache = stackTraceCache;
+        this.stackTraceOptions = stackTraceOptions;
+        this.eventSizeLimits = eventSizeLimits;
         this.includeMarkers = includeMarkers;
         this.includeOrigin = includeOrigin;
+        this.nestedOutput = nestedOutput;
         this.stackTraceAsArray = stackTraceAsArray;
-        this.additionalFields = additionalFields;
-        fieldValuePatternFormatter = new PatternFormatter[additionalFields.length][];
-        for (int i = 0; i < additionalFields.length; i++) {
-            KeyValuePair additionalField = additionalFields[i];
+        // constant additional fields are pre-rendered together with the service fields,
+        // only the ones containing patterns or lookups are evaluated for each event
+        List<AdditionalField> constantAdditionalFields = new ArrayList<AdditionalField>();
+        List<KeyValuePair> dynamicAdditionalFields = new ArrayList<KeyValuePair>();
+        List<PatternFormatter[]> dynamicFieldFormatters = new ArrayList<PatternFormatter[]>();
+        for (KeyValuePair additionalField : additionalFields) {
             if (additionalField.getValue().contains("%")) {
-                fieldValuePatternFormatter[i] = PatternLayout.createPatternParser(config)
+                dynamicAdditionalFields.add(additionalField);
+                dynamicFieldFormatters.add(PatternLayout.createPatternParser(config)
                         .parse(additionalField.getValue())
-                        .toArray(new PatternFormatter[0]);
+                        .toArray(new PatternFormatter[0]));
+            } else if (valueNeedsLookup(additionalField.getValue()) && !FORMAT_MESSAGES_PATTERN_DISABLE_LOOKUPS) {
+                dynamicAdditionalFields.add(additionalField);
+                dynamicFieldFormatters.add(null);
+            } else {
+                constantAdditionalFields.add(new AdditionalField(additionalField.getKey(), additionalField.getValue()));
             }
         }
+        this.additionalFields = dynamicAdditionalFields.toArray(new KeyValuePair[0]);
+        this.additionalFieldKeys = new String[this.additionalFields.length];
+        for (int i = 0; i < this.additionalFields.length; i++) {
+            StringBuilder key = new StringBuilder().append('"');
+            JsonUtils.quoteAsString(this.additionalFields[i].getKey(), key);
+            additionalFieldKeys[i] = key.append("\":").toString();
+        }
+        this.fieldValuePatternFormatter = dynamicFieldFormatters.toArray(new PatternFormatter[0][]);
+        this.staticFields = EcsJsonSerializer.compileStaticFields(serviceName, serviceVersion, serviceEnvironment, serviceNodeName,
+                eventDataset, constantAdditionalFields);
 
         if (exceptionPattern != null && !exceptionPattern.isEmpty()) {
             exceptionPatternFormatter = PatternLayout.createPatternParser(config)
@@ -109,7 +221,25 @@ public class EcsLayout extends AbstractStringLayout {
         } else {
             exceptionPatternFormatter = null;
         }
-        mdcSerializer = MdcSerializerResolver.resolve(mdcSerializerFullClassName);
+        mdcSerializer = MdcSerializerResolver.resolve(mdcSerializerFullClassName, typedMdcValues);
+        fieldWriterPlan = compileFieldWriterPlan(message);
+        gcFreeFieldWriterPlan = compileFieldWriterPlan(gcFreeMessage);
+    }
+
+    private FieldWriterPlan<LogEvent> compileFieldWriterPlan(FieldWriter<LogEvent> messageWriter) {
+        return FieldWriterPlan.<LogEvent>builder()
+                .setNestedOutput(nestedOutput)
+                .setEventSizeLimits(eventSizeLimits)
+                .add("log", LOG_LEVEL)
+                .add(messageWriter)
+                .addStaticFields(staticFields)
+                .add("process", THREAD_NAME)
+                .add("log", LOGGER_NAME)
+                .add(additionalFieldsAndMdc)
+                .add(tags)
+                .addIf(includeOrigin, "log", ORIGIN)
+                .add("error", exception)
+                .build();
     }
 
     @PluginBuilderFactory
@@ -123,45 +253,139 @@ public class EcsLayout extends AbstractStringLayout {
 
     @Override
     public String toSerializable(LogEvent event) {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            // the thread-local buffer of AbstractStringLayout would hardly ever be reused
+            final StringBuilder text = EcsJsonSerializer.getMessageStringBuilder();
+            try {
+                return toText(event, text, false).toString();
+            } finally {
+                EcsJsonSerializer.releaseMessageStringBuilder(text);
+            }
+        }
         final StringBuilder text = toText(event, getStringBuilder(), false);
         return text.toString();
     }
 
     @Override
     public void encode(LogEvent event, ByteBufferDestination destination) {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            final StringBuilder text = EcsJsonSerializer.getMessageStringBuilder();
+            try {
+                getStringBuilderEncoder().encode(toText(event, text, true), destination);
+            } finally {
+                EcsJsonSerializer.releaseMessageStringBuilder(text);
+            }
+            return;
+        }
         final StringBuilder text = toText(event, getStringBuilder(), true);
         final Encoder<StringBuilder> helper = getStringBuilderEncoder();
         helper.encode(text, destination);
     }
 
+    /**
+     * Serializes the event on the calling thread and appends it to the buffer as UTF-8.
+     */
+    void encode(LogEvent event, Utf8Buffer buffer) {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            final StringBuilder text = EcsJsonSerializer.getMessageStringBuilder();
+            try {
+                buffer.append(toText(event, text, true));
+            } finally {
+                EcsJsonSerializer.releaseMessageStringBuilder(text);
+            }
+            return;
+        }
+        buffer.append(toText(event, getStringBuilder(), true));
+    }
+
+    /**
+     * Serializes the events as newline-delimited JSON.
+     *
+     * @param events the events to serialize, see {@link java.util.Arrays#asList(Object[])} to serialize an array
+     * @return the events, one JSON object per line
+     */
+    public String toSerializable(Iterable<? extends LogEvent> events) {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            final StringBuilder text = EcsJsonSerializer.getMessageStringBuilder();
+            try {
+                EventBatchSerializer.serializeBatch(text, events, eventSerializer);
+                return text.toString();
+            } finally {
+                EcsJsonSerializer.releaseMessageStringBuilder(text);
+            }
+        }
+        final StringBuilder text = getBatchStringBuilder();
+        try {
+            EventBatchSerializer.serializeBatch(text, events, eventSerializer);
+            return text.toString();
+        } finally {
+            trimBatchStringBuilder(text);
+        }
+    }
+
+    /**
+     * Serializes the events as newline-delimited JSON into a single buffer and encodes it to the destination in one go,
+     * so that an appender draining a queue hands over the whole batch at once.
+     * Like {@link #encode(LogEvent, ByteBufferDestination)}, this is garbage-free if the messages are,
+     * as the buffer is reused for subsequent batches on the same thread, up to a capacity of {@value #MAX_BATCH_STRING_BUILDER_SIZE} chars.
+     *
+     * @param events      the events to encode, see {@link java.util.Arrays#asList(Object[])} to encode an array
+     * @param destination the destination to write the UTF-8 encoded events to
+     */
+    public void encode(Iterable<? extends LogEvent> events, ByteBufferDestination destination) {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            final StringBuilder text = EcsJsonSerializer.getMessageStringBuilder();
+            try {
+                EventBatchSerializer.serializeBatch(text, events, gcFreeEventSerializer);
+                getStringBuilderEncoder().encode(text, destination);
+            } finally {
+                EcsJsonSerializer.releaseMessageStringBuilder(text);
+            }
+            return;
+        }
+        final StringBuilder text = getBatchStringBuilder();
+        try {
+            EventBatchSerializer.serializeBatch(text, events, gcFreeEventSerializer);
+            getStringBuilderEncoder().encode(text, destination);
+        } finally {
+            trimBatchStringBuilder(text);
+        }
+    }
+
+    private StringBuilder getBatchStringBuilder() {
+        StringBuilder text = batchStringBuilders.get();
+        if (text == null) {
+            text = new StringBuilder(EventBatchSerializer.estimateBatchCapacity(DEFAULT_BATCH_SIZE));
+            batchStringBuilders.set(text);
+        }
+        text.setLength(0);
+        return text;
+    }
+
+    private static void trimBatchStringBuilder(StringBuilder text) {
+        if (text.capacity() > MAX_BATCH_STRING_BUILDER_SIZE) {
+            text.setLength(MAX_BATCH_STRING_BUILDER_SIZE);
+            text.trimToSize();
+        }
+    }
+
     @Override
     public String getContentType() {
         return "application/json";
     }
 
     private StringBuilder toText(LogEvent event, StringBuilder builder, boolean gcFree) {
-        EcsJsonSerializer.serializeObjectStart(builder, event.getTimeMillis());
-        EcsJsonSerializer.serializeLogLevel(builder, event.getLevel().toString());
-        serializeMessage(builder, gcFree, event.getMessage(), event.getThrown());
-        EcsJsonSerializer.serializeEcsVersion(builder);
-        EcsJsonSerializer.serializeServiceName(builder, serviceName);
-        EcsJsonSerializer.serializeServiceVersion(builder, serviceVersion);
-        EcsJsonSerializer.serializeServiceEnvironment(builder, serviceEnvironment);
-        EcsJsonSerializer.serializeServiceNodeName(builder, serviceNodeName);
-        EcsJsonSerializer.serializeEventDataset(builder, eventDataset);
-        EcsJsonSerializer.serializeThreadName(builder, event.getThreadName());
-        EcsJsonSerializer.serializeLoggerName(builder, event.getLoggerName());
-        serializeAdditionalFieldsAndMDC(event, builder);
-        serializeTags(event, builder);
-        if (includeOrigin) {
-            EcsJsonSerializer.serializeOrigin(builder, event.getSource());
-        }
-        serializeException(builder, event);
-        EcsJsonSerializer.serializeObjectEnd(builder);
+        final int objectStart = builder.length();
+        if (timestampPrecision == TimestampPrecision.MILLIS) {
+            EcsJsonSerializer.serializeObjectStart(builder, event.getTimeMillis());
+        } else {
+            TIMESTAMP_SERIALIZER.serializeObjectStart(builder, event, timestampPrecision);
+        }
+        (gcFree ? gcFreeFieldWriterPlan : fieldWriterPlan).writeEvent(builder, objectStart, event);
         return builder;
     }
 
-    private void serializeAdditionalFieldsAndMDC(LogEvent event, StringBuilder builder) {
+    private void serializeAdditionalFieldsAndMDC(LogEvent event, StringBuilder builder, SerializationContext context) {
         final int length = additionalFields.length;
         if (length > 0) {
             final StrSubstitutor strSubstitutor = getConfiguration().getStrSubstitutor();
@@ -169,32 +393,38 @@ public class EcsLayout extends AbstractStringLayout {
                 KeyValuePair additionalField = additionalFields[i];
                 PatternFormatter[] formatters = fieldValuePatternFormatter[i];
                 CharSequence value = null;
-                if (formatters != null) {
-                    StringBuilder buffer = EcsJsonSerializer.getMessageStringBuilder();
-                    formatPattern(event, formatters, buffer);
-                    if (buffer.length() > 0) {
-                        value = buffer;
-                    }
-                } else if (valueNeedsLookup(additionalField.getValue()) && !FORMAT_MESSAGES_PATTERN_DISABLE_LOOKUPS) {
-                    StringBuilder lookupValue = EcsJsonSerializer.getMessageStringBuilder();
-                    lookupValue.append(additionalField.getValue());
-                    if (strSubstitutor.replaceIn(event, lookupValue)) {
-                        value = lookupValue;
+                StringBuilder buffer = EcsJsonSerializer.getMessageStringBuilder();
+                try {
+                    if (formatters != null) {
+                        formatPattern(event, formatters, buffer);
+                        if (buffer.length() > 0) {
+                            value = buffer;
+                        }
+                    } else {
+                        buffer.append(additionalField.getValue());
+                        if (strSubstitutor.replaceIn(event, buffer)) {
+                            value = buffer;
+                        }
                     }
-                } else {
-                    value = additionalField.getValue();
-                }
 
-                if (value != null) {
-                    builder.append('\"');
-                    JsonUtils.quoteAsString(additionalField.getKey(), builder);
-                    builder.append("\":\"");
-                    JsonUtils.quoteAsString(EcsJsonSerializer.toNullSafeString(value), builder);
-                    builder.append("\",");
+                    if (value != null) {
+                        context.writeKey(builder, additionalFieldKeys[i]);
+                        builder.append('"');
+                        JsonUtils.quoteAsString(EcsJsonSerializer.toNullSafeString(value), builder);
+                        builder.append("\",");
+                    }
+                } finally {
+                    EcsJsonSerializer.releaseMessageStringBuilder(buffer);
                 }
             }
         }
-        mdcSerializer.serializeMdc(event, builder);
+        if (mdcSerializer instanceof DefaultMdcSerializer) {
+            ((DefaultMdcSerializer) mdcSerializer).serializeMdc(event, builder, context);
+        } else {
+            // custom serializers don't write their keys via the context
+            context.closeObjects(builder);
+            mdcSerializer.serializeMdc(event, builder);
+        }
     }
 
     private static void formatPattern(LogEvent event, PatternFormatter[] formatters, StringBuilder buffer) {
@@ -204,7 +434,7 @@ public class EcsLayout extends AbstractStringLayout {
         }
     }
 
-    private void serializeTags(LogEvent event, StringBuilder builder) {
+    private void serializeTags(LogEvent event, StringBuilder builder, SerializationContext context) {
         ThreadContext.ContextStack stack = event.getContextStack();
         List<String> contextStack;
         if (stack == null) {
@@ -215,7 +445,7 @@ public class EcsLayout extends AbstractStringLayout {
         Marker marker = event.getMarker();
         boolean hasTags = !contextStack.isEmpty() || (includeMarkers && marker != null);
         if (hasTags) {
-            EcsJsonSerializer.serializeTagStart(builder);
+            EcsJsonSerializer.serializeTagStart(builder, context);
         }
 
         if (!contextStack.isEmpty()) {
@@ -246,27 +476,38 @@ public class EcsLayout extends AbstractStringLayout {
         }
     }
 
-    private void serializeMessage(StringBuilder builder, boolean gcFree, Message message, Throwable thrown) {
+    private void serializeMessage(StringBuilder builder, boolean gcFree, Message message, SerializationContext context) {
         if (message instanceof MultiformatMessage) {
             MultiformatMessage multiformatMessage = (MultiformatMessage) message;
             if (supportsJson(multiformatMessage)) {
+                // the fields of JSON messages are merged into the root object as-is
+                context.closeObjects(builder);
                 serializeJsonMessage(builder, multiformatMessage);
             } else {
-                serializeSimpleMessage(builder, gcFree, message, thrown);
+                serializeSimpleMessage(builder, gcFree, message, context);
             }
         } else if (JACKSON_SERIALIZER != null && message instanceof ObjectMessage) {
             final StringBuilder jsonBuffer = EcsJsonSerializer.getMessageStringBuilder();
-            JACKSON_SERIALIZER.formatTo(jsonBuffer, (ObjectMessage) message);
-            addJson(builder, jsonBuffer);
+            try {
+                JACKSON_SERIALIZER.formatTo(jsonBuffer, (ObjectMessage) message);
+                context.closeObjects(builder);
+                addJson(builder, jsonBuffer);
+            } finally {
+                EcsJsonSerializer.releaseMessageStringBuilder(jsonBuffer);
+            }
         } else {
-            serializeSimpleMessage(builder, gcFree, message, thrown);
+            serializeSimpleMessage(builder, gcFree, message, context);
         }
     }
 
     private static void serializeJsonMessage(StringBuilder builder, MultiformatMessage message) {
         final StringBuilder messageBuffer = EcsJsonSerializer.getMessageStringBuilder();
-        MULTI_FORMAT_HANDLER.formatJsonTo(message, messageBuffer);
-        addJson(builder, messageBuffer);
+        try {
+            MULTI_FORMAT_HANDLER.formatJsonTo(message, messageBuffer);
+            addJson(builder, messageBuffer);
+        } finally {
+            EcsJsonSerializer.releaseMessageStringBuilder(messageBuffer);
+        }
     }
 
     private static void addJson(StringBuilder buffer, StringBuilder jsonBuffer) {
@@ -288,20 +529,23 @@ public class EcsLayout extends AbstractStringLayout {
         }
     }
 
-    private void serializeSimpleMessage(StringBuilder builder, boolean gcFree, Message message, Throwable thrown) {
-        builder.append("\"message\":\"");
+    private void serializeSimpleMessage(StringBuilder builder, boolean gcFree, Message message, SerializationContext context) {
+        context.writeKey(builder, "\"message\":");
+        builder.append('"');
+        final int maxMessageLength = context.getLimits().getMaxMessageLength();
         if (message instanceof CharSequence) {
-            JsonUtils.quoteAsString(((CharSequence) message), builder);
+            EcsJsonSerializer.serializeLimitedString(builder, (CharSequence) message, maxMessageLength, context);
         } else if (gcFree && message instanceof StringBuilderFormattable) {
             final StringBuilder messageBuffer = EcsJsonSerializer.getMessageStringBuilder();
             try {
                 ((StringBuilderFormattable) message).formatTo(messageBuffer);
-                JsonUtils.quoteAsString(messageBuffer, builder);
+                EcsJsonSerializer.serializeLimitedString(builder, messageBuffer, maxMessageLength, context);
             } finally {
                 trimToMaxSizeCopy(messageBuffer);
+                EcsJsonSerializer.releaseMessageStringBuilder(messageBuffer);
             }
         } else {
-            JsonUtils.quoteAsString(EcsJsonSerializer.toNullSafeString(message.getFormattedMessage()), builder);
+            EcsJsonSerializer.serializeLimitedString(builder, EcsJsonSerializer.toNullSafeString(message.getFormattedMessage()), maxMessageLength, context);
         }
         builder.append("\", ");
     }
@@ -341,19 +585,31 @@ public class EcsLayout extends AbstractStringLayout {
         return supportsJson;
     }
 
-    private void serializeException(StringBuilder messageBuffer, LogEvent event) {
+    private void serializeException(StringBuilder messageBuffer, LogEvent event, SerializationContext context) {
         Throwable thrown = event.getThrown();
         if (thrown != null) {
             if (exceptionPatternFormatter != null) {
                 StringBuilder stackTrace = EcsJsonSerializer.getMessageStringBuilder();
-                formatPattern(event, exceptionPatternFormatter, stackTrace);
-                EcsJsonSerializer.serializeException(messageBuffer, thrown.getClass().getName(), thrown.getMessage(), stackTrace, stackTraceAsArray);
+                try {
+                    formatPattern(event, exceptionPatternFormatter, stackTrace);
+                    EcsJsonSerializer.serializeErrorGroupingKey(messageBuffer, thrown, stackTraceOptions, context);
+                    EcsJsonSerializer.serializeException(messageBuffer, thrown.getClass().getName(), thrown.getMessage(), stackTrace, stackTraceAsArray, context);
+                } finally {
+                    EcsJsonSerializer.releaseMessageStringBuilder(stackTrace);
+                }
             } else {
-                EcsJsonSerializer.serializeException(messageBuffer, thrown, stackTraceAsArray);
+                EcsJsonSerializer.serializeException(messageBuffer, thrown, stackTraceAsArray, stackTraceCache, stackTraceOptions, context);
             }
         }
     }
 
+    /**
+     * @return the cache of serialized stack traces, or {@code null} if disabled
+     */
+    public StackTraceCache getStackTraceCache() {
+        return stackTraceCache;
+    }
+
     public static class Builder implements org.apache.logging.log4j.core.util.Builder<EcsLayout> {
 
         @PluginConfiguration
@@ -378,8 +634,34 @@ public class EcsLayout extends AbstractStringLayout {
         private KeyValuePair[] additionalFields = new KeyValuePair[]{};
         @PluginBuilderAttribute("includeOrigin")
         private boolean includeOrigin = false;
+        @PluginBuilderAttribute("nestedOutput")
+        private boolean nestedOutput = false;
         @PluginBuilderAttribute("mdcSerializer")
         private String mdcSerializerFullClassName = "";
+        @PluginBuilderAttribute("typedMdcValues")
+        private boolean typedMdcValues = false;
+        @PluginBuilderAttribute("timestampPrecision")
+        private String timestampPrecision;
+        @PluginBuilderAttribute("stackTraceCacheSize")
+        private int stackTraceCacheSize = 0;
+        @PluginBuilderAttribute("maxStackTraceDepth")
+        private int maxStackTraceDepth = 0;
+        @PluginBuilderAttribute("maxStackTraceBytes")
+        private int maxStackTraceBytes = 0;
+        @PluginBuilderAttribute("excludedFramePackages")
+        private String excludedFramePackages;
+        @PluginBuilderAttribute("errorGroupingKeyFrames")
+        private int errorGroupingKeyFrames = 0;
+        @PluginBuilderAttribute("errorGroupingKeyIgnoreLineNumbers")
+        private boolean errorGroupingKeyIgnoreLineNumbers = false;
+        @PluginBuilderAttribute("stackTraceDedupWindowSeconds")
+        private int stackTraceDedupWindowSeconds = 0;
+        @PluginBuilderAttribute("maxEventBytes")
+        private int maxEventBytes = 0;
+        @PluginBuilderAttribute("maxMessageLength")
+        private int maxMessageLength = 0;
+        @PluginBuilderAttribute("maxMdcValueLength")
+        private int maxMdcValueLength = 0;
 
         Builder() {
         }
@@ -423,6 +705,10 @@ public class EcsLayout extends AbstractStringLayout {
             return includeOrigin;
         }
 
+        public boolean isNestedOutput() {
+            return nestedOutput;
+        }
+
         public boolean isStackTraceAsArray() {
             return stackTraceAsArray;
         }
@@ -435,6 +721,54 @@ public class EcsLayout extends AbstractStringLayout {
             return mdcSerializerFullClassName;
         }
 
+        public boolean isTypedMdcValues() {
+            return typedMdcValues;
+        }
+
+        public String getTimestampPrecision() {
+            return timestampPrecision;
+        }
+
+        public int getStackTraceCacheSize() {
+            return stackTraceCacheSize;
+        }
+
+        public int getMaxStackTraceDepth() {
+            return maxStackTraceDepth;
+        }
+
+        public int getMaxStackTraceBytes() {
+            return maxStackTraceBytes;
+        }
+
+        public String getExcludedFramePackages() {
+            return excludedFramePackages;
+        }
+
+        public int getErrorGroupingKeyFrames() {
+            return errorGroupingKeyFrames;
+        }
+
+        public boolean isErrorGroupingKeyIgnoreLineNumbers() {
+            return errorGroupingKeyIgnoreLineNumbers;
+        }
+
+        public int getStackTraceDedupWindowSeconds() {
+            return stackTraceDedupWindowSeconds;
+        }
+
+        public int getMaxEventBytes() {
+            return maxEventBytes;
+        }
+
+        public int getMaxMessageLength() {
+            return maxMessageLength;
+        }
+
+        public int getMaxMdcValueLength() {
+            return maxMdcValueLength;
+        }
+
         /**
          * Additional fields to set on each log event.
          *
@@ -480,6 +814,16 @@ public class EcsLayout extends AbstractStringLayout {
             return this;
         }
 
+        /**
+         * Writes dotted field names, like {@code log.level}, as nested objects, like {@code {"log":{"level":...}}}.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setNestedOutput(boolean nestedOutput) {
+            this.nestedOutput = nestedOutput;
+            return this;
+        }
+
         public EcsLayout.Builder setStackTraceAsArray(boolean stackTraceAsArray) {
             this.stackTraceAsArray = stackTraceAsArray;
             return this;
@@ -495,11 +839,158 @@ public class EcsLayout extends AbstractStringLayout {
             return this;
         }
 
+        /**
+         * Serializes numbers and booleans in the context data as JSON numbers and booleans instead of strings.
+         * Not applicable when a custom {@code mdcSerializer} is configured.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setTypedMdcValues(boolean typedMdcValues) {
+            this.typedMdcValues = typedMdcValues;
+            return this;
+        }
+
+        /**
+         * The precision of the {@code @timestamp}: {@code millis} (default), {@code micros} or {@code nanos}.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setTimestampPrecision(String timestampPrecision) {
+            this.timestampPrecision = timestampPrecision;
+            return this;
+        }
+
+        /**
+         * Caches up to the given number of serialized stack traces so that exceptions which are logged repeatedly
+         * don't have to be rendered each time. Disabled by default ({@code 0}).
+         * Not applicable when an {@code exceptionPattern} is configured.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setStackTraceCacheSize(int stackTraceCacheSize) {
+            this.stackTraceCacheSize = stackTraceCacheSize;
+            return this;
+        }
+
+        /**
+         * The maximum number of frames per exception, {@code 0} (default) for no limit.
+         * Not applicable when an {@code exceptionPattern} is configured.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setMaxStackTraceDepth(int maxStackTraceDepth) {
+            this.maxStackTraceDepth = maxStackTraceDepth;
+            return this;
+        }
+
+        /**
+         * The approximate maximum size of the serialized stack trace, {@code 0} (default) for no limit.
+         * Not applicable when an {@code exceptionPattern} is configured.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setMaxStackTraceBytes(int maxStackTraceBytes) {
+            this.maxStackTraceBytes = maxStackTraceBytes;
+            return this;
+        }
+
+        /**
+         * A comma-separated list of class name prefixes of stack trace frames to exclude, such as {@code sun.reflect,org.junit}.
+         * Not applicable when an {@code exceptionPattern} is configured.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setExcludedFramePackages(String excludedFramePackages) {
+            this.excludedFramePackages = excludedFramePackages;
+            return this;
+        }
+
+        /**
+         * The number of top frames of the exception and each of its causes that are hashed into an {@code error.grouping_key}.
+         * {@code 0} (default) omits the key.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setErrorGroupingKeyFrames(int errorGroupingKeyFrames) {
+            this.errorGroupingKeyFrames = errorGroupingKeyFrames;
+            return this;
+        }
+
+        /**
+         * Excludes line numbers from the {@code error.grouping_key} so that it doesn't change when unrelated lines are added or removed.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setErrorGroupingKeyIgnoreLineNumbers(boolean errorGroupingKeyIgnoreLineNumbers) {
+            this.errorGroupingKeyIgnoreLineNumbers = errorGroupingKeyIgnoreLineNumbers;
+            return this;
+        }
+
+        /**
+         * If positive, a stack trace is only serialized the first time it occurs within a window of the given number of seconds.
+         * Further occurrences only contain the {@code error.stack_trace_hash} and the {@code error.stack_trace_repeat_count}.
+         * {@code 0} (default) always serializes the stack trace.
+         * Not applicable when an {@code exceptionPattern} is configured.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setStackTraceDedupWindowSeconds(int stackTraceDedupWindowSeconds) {
+            this.stackTraceDedupWindowSeconds = stackTraceDedupWindowSeconds;
+            return this;
+        }
+
+        /**
+         * The maximum size of an event in UTF-8 bytes, {@code 0} (default) for no limit.
+         * Fields that don't fit are shrunk by truncating their longest string values, or dropped.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setMaxEventBytes(int maxEventBytes) {
+            this.maxEventBytes = maxEventBytes;
+            return this;
+        }
+
+        /**
+         * The maximum size of the {@code message} in UTF-8 bytes, {@code 0} (default) for no limit.
+         * Messages that are serialized as JSON objects are only subject to {@link #setMaxEventBytes(int)}.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setMaxMessageLength(int maxMessageLength) {
+            this.maxMessageLength = maxMessageLength;
+            return this;
+        }
+
+        /**
+         * The maximum size of each MDC value in UTF-8 bytes, {@code 0} (default) for no limit.
+         * Not applicable to custom {@code mdcSerializerFullClassName}s.
+         *
+         * @return this builder
+         */
+        public EcsLayout.Builder setMaxMdcValueLength(int maxMdcValueLength) {
+            this.maxMdcValueLength = maxMdcValueLength;
+            return this;
+        }
+
         @Override
         public EcsLayout build() {
             return new EcsLayout(getConfiguration(), serviceName, serviceVersion, serviceEnvironment, serviceNodeName,
                     EcsJsonSerializer.computeEventDataset(eventDataset, serviceName),
-                    includeMarkers, additionalFields, includeOrigin, exceptionPattern, stackTraceAsArray, mdcSerializerFullClassName);
+                    includeMarkers, additionalFields, includeOrigin, nestedOutput, exceptionPattern, stackTraceAsArray, mdcSerializerFullClassName,
+                    typedMdcValues, TimestampPrecision.parse(timestampPrecision), StackTraceCache.createIfEnabled(stackTraceCacheSize),
+                    StackTraceOptions.builder()
+                            .setMaxStackTraceDepth(maxStackTraceDepth)
+                            .setMaxStackTraceBytes(maxStackTraceBytes)
+                            .setExcludedFramePackages(excludedFramePackages)
+                            .setErrorGroupingKeyFrames(errorGroupingKeyFrames)
+                            .setErrorGroupingKeyIgnoreLineNumbers(errorGroupingKeyIgnoreLineNumbers)
+                            .setStackTraceDedupWindowSeconds(stackTraceDedupWindowSeconds)
+                            .build(),
+                    EventSizeLimits.builder()
+                            .setMaxEventBytes(maxEventBytes)
+                            .setMaxMessageLength(maxMessageLength)
+                            .setMaxMdcValueLength(maxMdcValueLength)
+                            .build());
         }
     }
 }
@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.log4j2;
+
+import co.elastic.logging.EcsJsonSerializer;
+import co.elastic.logging.InstantUtils;
+import co.elastic.logging.TimestampPrecision;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.time.Instant;
+
+/**
+ * Serializes the {@code @timestamp} with sub-millisecond precision, if supported by the log4j2 version.
+ */
+interface EventTimestampSerializer {
+
+    void serializeObjectStart(StringBuilder builder, LogEvent event, TimestampPrecision precision);
+
+    class Resolver {
+        static EventTimestampSerializer resolve() {
+            try {
+                LogEvent.class.getMethod("getInstant");
+                return (EventTimestampSerializer) Class.forName(
+                        "co.elastic.logging.log4j2.EventTimestampSerializer$UsingInstant").getEnumConstants()[0];
+            } catch (Exception ignore) {
+            } catch (LinkageError ignore) {
+            }
+            return UsingTimeMillis.INSTANCE;
+        }
+    }
+
+    /**
+     * Garbage free serialization of the precise timestamp for log4j2 2.11+
+     * Never reference directly in prod code so avoid linkage errors when getInstant is not available
+     */
+    enum UsingInstant implements EventTimestampSerializer {
+
+        @SuppressWarnings("unused")
+        INSTANCE;
+
+        @Override
+        public void serializeObjectStart(StringBuilder builder, LogEvent event, TimestampPrecision precision) {
+            Instant instant = event.getInstant();
+            EcsJsonSerializer.serializeObjectStart(builder, instant.getEpochSecond(), instant.getNanoOfSecond(), precision);
+        }
+    }
+
+    /**
+     * Fallback for log4j2 < 2.11, which only captures milliseconds
+     */
+    enum UsingTimeMillis implements EventTimestampSerializer {
+        INSTANCE;
+
+        @Override
+        public void serializeObjectStart(StringBuilder builder, LogEvent event, TimestampPrecision precision) {
+            long timeMillis = event.getTimeMillis();
+            EcsJsonSerializer.serializeObjectStart(builder, InstantUtils.getEpochSecond(timeMillis), InstantUtils.getNanoOfSecond(timeMillis), precision);
+        }
+    }
+}
@@ -33,8 +33,12 @@ import co.elastic.logging.log4j2.DefaultMdcSerializer.UsingContextMap;
 class MdcSerializerResolver {
 
     static MdcSerializer resolve(String mdcSerializerFullClassName) {
+        return resolve(mdcSerializerFullClassName, false);
+    }
+
+    static MdcSerializer resolve(String mdcSerializerFullClassName, boolean typedMdcValues) {
         if (mdcSerializerFullClassName == null || mdcSerializerFullClassName.isEmpty()) {
-            return resolveDefault();
+            return resolveDefault(typedMdcValues);
         }
         try {
             Class<?> clazz = Class.forName(mdcSerializerFullClassName);
@@ -45,13 +49,19 @@ class MdcSerializerResolver {
         }
     }
 
-    private static MdcSerializer resolveDefault() {
+    /**
+     * Resolves to {@link DefaultMdcSerializer.UsingContextData} if {@link LogEvent#getContextData()} is available (log4j2 2.7+),
+     * otherwise to {@link UsingContextMap}.
+     */
+    private static MdcSerializer resolveDefault(boolean typedMdcValues) {
         try {
             LogEvent.class.getMethod("getContextData");
             return (DefaultMdcSerializer) Class.forName(
-                    "co.elastic.logging.log4j2.DefaultMdcSerializer$UsingContextData").getEnumConstants()[0];
-        } catch (Exception | LinkageError ignore) {
+                    "co.elastic.logging.log4j2.DefaultMdcSerializer$UsingContextData").getEnumConstants()[typedMdcValues ? 1 : 0];
+        } catch (NoSuchMethodException | ClassNotFoundException | LinkageError ignore) {
+            // only the absence of getContextData or TriConsumer is expected, a ClassCastException would be a bug
         }
+        // the context map only contains strings, so there's nothing to type
         return UsingContextMap.INSTANCE;
     }
 
@@ -25,10 +25,20 @@
 package co.elastic.logging.log4j2;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.message.ObjectMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
 import org.apache.logging.log4j.message.StringMapMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class CurrentLog4j2EcsLayoutTest extends Log4j2EcsLayoutTest {
@@ -56,6 +66,83 @@ public class CurrentLog4j2EcsLayoutTest extends Log4j2EcsLayoutTest {
         assertThat(getLastLogLine().get("baz").booleanValue()).isEqualTo(true);
     }
 
+    @Test
+    void testBatch() throws Exception {
+        EcsLayout layout = (EcsLayout) listAppender.getLayout();
+        LogEvent first = createEvent(Level.INFO, "Example Message");
+        LogEvent second = createEvent(Level.WARN, "Second Message");
+
+        String batch = layout.toSerializable(Arrays.asList(first, second));
+
+        assertThat(batch).isEqualTo(layout.toSerializable(first) + layout.toSerializable(second));
+        String[] lines = batch.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).get("message").textValue()).isEqualTo("Example Message");
+        assertThat(objectMapper.readTree(lines[1]).get("log.level").textValue()).isEqualTo("WARN");
+    }
+
+    @Test
+    void testEncodeBatch() {
+        EcsLayout layout = (EcsLayout) listAppender.getLayout();
+        List<LogEvent> events = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        // exceeds log4j.layoutStringBuilder.maxSize and the capacity of the destination
+        for (int i = 0; i < 100; i++) {
+            LogEvent event = createEvent(Level.INFO, "Message " + i);
+            events.add(event);
+            expected.append(layout.toSerializable(event));
+        }
+
+        for (int i = 0; i < 2; i++) {
+            CapturingDestination destination = new CapturingDestination();
+            layout.encode(events, destination);
+            assertThat(destination.getContent()).isEqualTo(expected.toString());
+        }
+    }
+
+    @Test
+    void testTypedMdcValues() throws Exception {
+        EcsLayout layout = EcsLayout.newBuilder()
+                .setConfiguration(new DefaultConfiguration())
+                .setServiceName("test")
+                .setTypedMdcValues(true)
+                .build();
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        contextData.putValue("order.count", 42);
+        contextData.putValue("order.total", 4.2);
+        contextData.putValue("order.express", true);
+        contextData.putValue("order.id", "4711");
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerName("ExampleLogger")
+                .setLevel(Level.INFO)
+                .setMessage(new SimpleMessage("Example Message"))
+                .setContextData(contextData)
+                .build();
+        CapturingDestination destination = new CapturingDestination();
+        layout.encode(event, destination);
+
+        for (String line : Arrays.asList(layout.toSerializable(event), destination.getContent())) {
+            JsonNode log = objectMapper.readTree(line);
+            assertThat(log.get("order.count").isIntegralNumber()).isTrue();
+            assertThat(log.get("order.count").longValue()).isEqualTo(42);
+            assertThat(log.get("order.total").isFloatingPointNumber()).isTrue();
+            assertThat(log.get("order.total").doubleValue()).isEqualTo(4.2);
+            assertThat(log.get("order.express").isBoolean()).isTrue();
+            assertThat(log.get("order.express").booleanValue()).isTrue();
+            assertThat(log.get("order.id").textValue()).isEqualTo("4711");
+        }
+    }
+
+    private static LogEvent createEvent(Level level, String message) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("ExampleLogger")
+                .setThreadName("ExampleThread")
+                .setLevel(level)
+                .setTimeMillis(System.currentTimeMillis())
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+
     public static class TestClass {
         String foo;
         int bar;
@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.log4j2;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EcsAsyncFileAppenderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testWritesEventsOfAllThreads(@TempDir Path tempDir) throws Exception {
+        Path logFile = tempDir.resolve("logs").resolve("app.json");
+        EcsAsyncFileAppender appender = EcsAsyncFileAppender.newBuilder()
+                .setName("async")
+                .setLayout(EcsLayout.newBuilder().setServiceName("test").build())
+                .setFileName(logFile.toString())
+                .setBufferSize(64)
+                .setMaxBatchSize(16)
+                .build();
+        appender.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String threadName = "producer-" + t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    appender.append(Log4jLogEvent.newBuilder()
+                            .setLoggerName("test")
+                            .setLevel(Level.INFO)
+                            .setThreadName(Thread.currentThread().getName())
+                            .setMessage(new SimpleMessage(threadName + " message " + i))
+                            .build());
+                }
+            }, threadName);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(appender.stop(10, TimeUnit.SECONDS)).isTrue();
+
+        List<String> lines = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(4000);
+        Set<String> messages = new HashSet<>();
+        for (String line : lines) {
+            JsonNode json = objectMapper.readTree(line);
+            assertThat(json.get("message").textValue()).startsWith(json.get("process.thread.name").textValue());
+            assertThat(json.get("service.name").textValue()).isEqualTo("test");
+            messages.add(json.get("message").textValue());
+        }
+        assertThat(messages).hasSize(4000);
+        assertThat(appender.getDroppedEvents()).isZero();
+    }
+
+    @Test
+    void testRequiresEcsLayout(@TempDir Path tempDir) {
+        EcsAsyncFileAppender appender = EcsAsyncFileAppender.newBuilder()
+                .setName("async")
+                .setLayout(PatternLayout.createDefaultLayout())
+                .setFileName(tempDir.resolve("app.json").toString())
+                .build();
+
+        assertThat(appender).isNull();
+    }
+
+    @Test
+    void testInvalidOptions(@TempDir Path tempDir) {
+        EcsAsyncFileAppender appender = EcsAsyncFileAppender.newBuilder()
+                .setName("async")
+                .setLayout(EcsLayout.newBuilder().setServiceName("test").build())
+                .setFileName(tempDir.resolve("app.json").toString())
+                .setWaitStrategy("foo")
+                .build();
+
+        assertThat(appender).isNull();
+    }
+}
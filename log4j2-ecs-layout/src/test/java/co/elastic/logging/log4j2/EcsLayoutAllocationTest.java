@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.log4j2;
+
+import co.elastic.logging.AbstractEcsAllocationTest;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.ByteBufferDestinationHelper;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies that {@link EcsLayout#encode(LogEvent, ByteBufferDestination)} is garbage-free for events without an exception
+ * and that events with an exception only allocate what's needed to look up the cached stack trace.
+ * <p>
+ * This only holds for events that fit into {@code log4j.layoutStringBuilder.maxSize} chars (2048 by default),
+ * as {@link org.apache.logging.log4j.core.layout.AbstractStringLayout} trims its buffer to that size after each event.
+ * A larger event, for example one with a deep stack trace, re-grows the buffer every time.
+ * </p>
+ * Also verifies that {@link EcsLayout#encode(Iterable, ByteBufferDestination)} is garbage-free for batches.
+ */
+class EcsLayoutAllocationTest extends AbstractEcsAllocationTest {
+
+    @Override
+    protected Runnable prepareEvent(EventShape shape) {
+        final EcsLayout layout = createLayout();
+        final LogEvent event = createEvent(shape);
+        final NullDestination destination = new NullDestination();
+        return () -> layout.encode(event, destination);
+    }
+
+    @Test
+    void testBatchAllocations() {
+        final EcsLayout layout = createLayout();
+        // larger than log4j.layoutStringBuilder.maxSize, which the buffer of AbstractStringLayout is trimmed to after each use
+        final List<LogEvent> batch = Collections.nCopies(100, createEvent(EventShape.SIMPLE));
+        final NullDestination destination = new NullDestination();
+        long bytesPerBatch = measureAllocatedBytesPerEvent(() -> layout.encode(batch, destination), WARM_UP_EVENTS / 10, MEASURED_EVENTS / 10);
+        assertThat(bytesPerBatch)
+                .describedAs("bytes allocated per batch of %d events", batch.size())
+                .isZero();
+    }
+
+    private static EcsLayout createLayout() {
+        return EcsLayout.newBuilder()
+                .setConfiguration(new DefaultConfiguration())
+                .setServiceName("test")
+                .setStackTraceCacheSize(16)
+                .build();
+    }
+
+    private static LogEvent createEvent(EventShape shape) {
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        if (shape == EventShape.MDC) {
+            for (Map.Entry<String, String> entry : MDC_ENTRIES.entrySet()) {
+                contextData.putValue(entry.getKey(), entry.getValue());
+            }
+        }
+        Message message = shape == EventShape.PARAMETERIZED
+                ? new ParameterizedMessage("Processed order {} for customer {} in {} ms", "order-4711", "customer-0815", 42)
+                : new SimpleMessage(MESSAGE);
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("ExampleLogger")
+                .setThreadName("ExampleThread")
+                .setLevel(Level.INFO)
+                .setTimeMillis(System.currentTimeMillis())
+                .setMessage(message)
+                .setContextData(contextData)
+                .setThrown(shape == EventShape.EXCEPTION ? EXCEPTION : null)
+                .build();
+    }
+
+    @Override
+    protected long getAllocationBudget(EventShape shape) {
+        if (shape == EventShape.EXCEPTION) {
+            // the cache key is computed from copies of the stack trace arrays of the exception and its cause
+            // (128 bytes measured on JDK 17)
+            return 512;
+        }
+        return 0;
+    }
+
+    /**
+     * Discards the encoded bytes, like an appender whose I/O is infinitely fast.
+     */
+    private static class NullDestination implements ByteBufferDestination {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public ByteBuffer drain(ByteBuffer buf) {
+            buf.clear();
+            return buf;
+        }
+
+        @Override
+        public void writeBytes(ByteBuffer data) {
+            ByteBufferDestinationHelper.writeToUnsynchronized(data, this);
+        }
+
+        @Override
+        public void writeBytes(byte[] data, int offset, int length) {
+            ByteBufferDestinationHelper.writeToUnsynchronized(data, offset, length, this);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2020 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.log4j2;
+
+import co.elastic.logging.EcsJsonSerializer;
+import co.elastic.logging.StringBuilderProvider;
+import co.elastic.logging.VirtualThreads;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class EcsLayoutVirtualThreadsTest {
+
+    private static final int EVENTS = 100_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private StringBuilderProvider previousProvider;
+    private StringBuilderProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(VirtualThreads.isSupported(), "requires Java 21+");
+        previousProvider = EcsJsonSerializer.getMessageStringBuilderProvider();
+        provider = StringBuilderProvider.threadLocal(8192);
+        EcsJsonSerializer.setMessageStringBuilderProvider(provider);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (previousProvider != null) {
+            EcsJsonSerializer.setMessageStringBuilderProvider(previousProvider);
+        }
+    }
+
+    @Test
+    void testLogFromVirtualThreads() throws Exception {
+        EcsLayout layout = EcsLayout.newBuilder()
+                .setConfiguration(new DefaultConfiguration())
+                .setServiceName("test")
+                .build();
+        // the tests are compiled for an older Java version
+        ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        List<Future<String>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < EVENTS; i++) {
+                final LogEvent event = createEvent("Message " + i);
+                final boolean encode = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    assertThat(VirtualThreads.isCurrentThreadVirtual()).isTrue();
+                    if (encode) {
+                        CapturingDestination destination = new CapturingDestination();
+                        layout.encode(event, destination);
+                        return destination.getContent();
+                    }
+                    return layout.toSerializable(event);
+                }));
+            }
+            for (int i = 0; i < EVENTS; i++) {
+                String line = futures.get(i).get();
+                assertThat(line).endsWith("\n");
+                JsonNode log = objectMapper.readTree(line);
+                assertThat(log.get("message").textValue()).isEqualTo("Message " + i);
+                assertThat(log.get("service.name").textValue()).isEqualTo("test");
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // each event borrows exactly one buffer, as simple messages are serialized without an intermediate buffer
+        assertThat(provider.getAllocations() + provider.getReuses()).isEqualTo(EVENTS);
+        // the number of buffers is bounded by the parallelism rather than the number of threads
+        assertThat(provider.getAllocations()).isLessThan(10_000);
+    }
+
+    private static LogEvent createEvent(String message) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("ExampleLogger")
+                .setLevel(Level.INFO)
+                .setTimeMillis(System.currentTimeMillis())
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+}
@@ -34,15 +34,19 @@ class MdcSerializerResolverTest {
     @Test
     public void testResolveWithNull() {
         MdcSerializer serializer = MdcSerializerResolver.resolve(null);
-        assertThat(serializer).isNotNull()
-                .isInstanceOf(DefaultMdcSerializer.UsingContextMap.class);
+        assertThat(serializer).isSameAs(DefaultMdcSerializer.UsingContextData.INSTANCE);
     }
 
     @Test
     public void testResolveWithEmptyString() {
         MdcSerializer serializer = MdcSerializerResolver.resolve("");
-        assertThat(serializer).isNotNull()
-                .isInstanceOf(DefaultMdcSerializer.UsingContextMap.class);
+        assertThat(serializer).isSameAs(DefaultMdcSerializer.UsingContextData.INSTANCE);
+    }
+
+    @Test
+    public void testResolveTypedWithNull() {
+        MdcSerializer serializer = MdcSerializerResolver.resolve(null, true);
+        assertThat(serializer).isSameAs(DefaultMdcSerializer.UsingContextData.TYPED);
     }
 
     @Test
@@ -0,0 +1,270 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import co.elastic.logging.AsyncBatchWriter;
+import co.elastic.logging.DropPolicy;
+import co.elastic.logging.EventBatchSerializer;
+import co.elastic.logging.MpscRingBuffer;
+import co.elastic.logging.SerializedEventWriter;
+import co.elastic.logging.Utf8Buffer;
+import co.elastic.logging.WaitStrategy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An asynchronous appender that serializes events with an {@link EcsEncoder} on a background thread
+ * and writes them to a file or to {@code System.out}.
+ * <p>
+ * As opposed to logback's {@code AsyncAppender}, application threads don't contend on the lock of an {@code ArrayBlockingQueue}.
+ * Events are handed over via a preallocated, lock-free {@link MpscRingBuffer}.
+ * The background thread drains up to {@code maxBatchSize} events at a time,
+ * serializes them into a reusable buffer and writes the whole batch with a single call.
+ * </p>
+ * <p>
+ * With {@code serializeInCallingThread}, events are serialized on the application thread into a pooled buffer instead,
+ * and only the finished bytes are handed over.
+ * Serialization then scales with the number of application threads and the MDC, the thread name and the message
+ * don't have to be captured via {@link ILoggingEvent#prepareForDeferredProcessing()}.
+ * </p>
+ */
+public class EcsAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final int DEFAULT_MAX_FLUSH_TIME = 1000;
+    // larger buffers are discarded after a batch so that a single burst doesn't retain memory forever
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 1024 * 1024;
+
+    private EcsEncoder encoder;
+    private String file;
+    private boolean append = true;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private int maxFlushTime = DEFAULT_MAX_FLUSH_TIME;
+    private boolean includeCallerData;
+    private boolean serializeInCallingThread;
+    private WaitStrategy waitStrategy = WaitStrategy.SLEEPING;
+    private DropPolicy dropPolicy = DropPolicy.BLOCK;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private OutputStream outputStream;
+    // exactly one of them is set by start, they are not reset on stop so that concurrent appends see a stopped writer rather than null
+    private volatile AsyncBatchWriter<ILoggingEvent> eventWriter;
+    private volatile SerializedEventWriter serializedEventWriter;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (encoder == null) {
+            addError("No encoder set for the appender named [" + name + "].");
+            return;
+        }
+        if (!encoder.isStarted()) {
+            encoder.start();
+        }
+        try {
+            outputStream = openOutputStream();
+        } catch (IOException e) {
+            addError("Failed to open file [" + file + "] for the appender named [" + name + "].", e);
+            return;
+        }
+        String threadName = "ecs-async-appender-" + name;
+        if (serializeInCallingThread) {
+            eventWriter = null;
+            serializedEventWriter = new SerializedEventWriter(threadName, outputStream, bufferSize, maxBatchSize, waitStrategy) {
+                @Override
+                protected void onError(String message, Exception e) {
+                    addError(message, e);
+                }
+            };
+            serializedEventWriter.start();
+        } else {
+            serializedEventWriter = null;
+            eventWriter = new EventWriter(threadName);
+            eventWriter.start();
+        }
+        super.start();
+    }
+
+    private OutputStream openOutputStream() throws IOException {
+        if (file == null) {
+            return System.out;
+        }
+        File logFile = new File(file);
+        File parent = logFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        return new FileOutputStream(logFile, append);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        boolean block = !dropPolicy.isDroppable(!event.getLevel().isGreaterOrEqual(Level.WARN));
+        // read once, as the appender may be stopped and restarted concurrently
+        SerializedEventWriter serializedEventWriter = this.serializedEventWriter;
+        AsyncBatchWriter<ILoggingEvent> eventWriter = this.eventWriter;
+        if (serializedEventWriter != null) {
+            Utf8Buffer buffer = serializedEventWriter.acquireBuffer();
+            encoder.encode(event, buffer);
+            if (!serializedEventWriter.enqueue(buffer, block)) {
+                serializedEventWriter.releaseBuffer(buffer);
+                droppedEvents.incrementAndGet();
+            }
+        } else if (eventWriter != null) {
+            // the event is serialized on another thread, capture the thread name, the MDC and the formatted message now
+            event.prepareForDeferredProcessing();
+            if (includeCallerData) {
+                event.getCallerData();
+            }
+            if (!eventWriter.enqueue(event, block)) {
+                droppedEvents.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        AsyncBatchWriter<?> writer = serializedEventWriter != null ? serializedEventWriter : eventWriter;
+        if (!writer.stop(maxFlushTime)) {
+            addWarn("Max flush time of " + maxFlushTime + "ms exceeded, " + writer.size() + " events may have been lost.");
+        }
+        if (outputStream != System.out) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                addError("Failed to close file [" + file + "].", e);
+            }
+        }
+    }
+
+    private class EventWriter extends AsyncBatchWriter<ILoggingEvent> {
+
+        private StringBuilder text = new StringBuilder(EventBatchSerializer.estimateBatchCapacity(maxBatchSize));
+        private Utf8Buffer bytes = new Utf8Buffer(text.capacity());
+
+        private EventWriter(String threadName) {
+            super(ILoggingEvent.class, threadName, bufferSize, maxBatchSize, waitStrategy);
+        }
+
+        @Override
+        protected void writeBatch(ILoggingEvent[] batch, int size) throws IOException {
+            try {
+                text.setLength(0);
+                EventBatchSerializer.serializeBatch(text, batch, 0, size, encoder.getEventSerializer());
+                bytes.reset();
+                bytes.append(text);
+                bytes.writeTo(outputStream);
+                outputStream.flush();
+            } finally {
+                if (text.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+                    text = new StringBuilder(EventBatchSerializer.estimateBatchCapacity(maxBatchSize));
+                }
+                if (bytes.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+                    bytes = new Utf8Buffer(text.capacity());
+                }
+            }
+        }
+
+        @Override
+        protected void onError(String message, Exception e) {
+            addError(message, e);
+        }
+    }
+
+    /**
+     * @return the number of events that have been dropped because the buffer was full
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public void setEncoder(EcsEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * @param file the file to append the events to, {@code System.out} if not set
+     */
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    /**
+     * @param bufferSize the number of events the ring buffer can hold, rounded up to the next power of two
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * @param maxFlushTime the maximum number of milliseconds to wait for the buffered events to be written on {@link #stop()}
+     */
+    public void setMaxFlushTime(int maxFlushTime) {
+        this.maxFlushTime = maxFlushTime;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+    /**
+     * @param serializeInCallingThread whether to serialize events on the logging thread and only hand over the bytes
+     *                                 to the background thread
+     */
+    public void setSerializeInCallingThread(boolean serializeInCallingThread) {
+        this.serializeInCallingThread = serializeInCallingThread;
+    }
+
+    public void setWaitStrategy(String waitStrategy) {
+        this.waitStrategy = WaitStrategy.parse(waitStrategy);
+    }
+
+    public void setDropPolicy(String dropPolicy) {
+        this.dropPolicy = DropPolicy.parse(dropPolicy);
+    }
+}
@@ -25,26 +25,68 @@
 package co.elastic.logging.logback;
 
 import ch.qos.logback.classic.pattern.ThrowableHandlingConverter;
-import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
 import ch.qos.logback.classic.spi.ThrowableProxy;
 import ch.qos.logback.core.Layout;
 import ch.qos.logback.core.encoder.EncoderBase;
 import co.elastic.logging.AdditionalField;
 import co.elastic.logging.EcsJsonSerializer;
+import co.elastic.logging.EventBatchSerializer;
+import co.elastic.logging.EventSerializer;
+import co.elastic.logging.EventSizeLimits;
+import co.elastic.logging.FieldWriter;
+import co.elastic.logging.FieldWriterPlan;
+import co.elastic.logging.InstantUtils;
+import co.elastic.logging.SerializationContext;
+import co.elastic.logging.StackTraceCache;
+import co.elastic.logging.StackTraceOptions;
+import co.elastic.logging.TimestampPrecision;
+import co.elastic.logging.Utf8Buffer;
+import co.elastic.logging.VirtualThreads;
 import org.slf4j.Marker;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
 public class EcsEncoder extends EncoderBase<ILoggingEvent> {
 
-    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Method GET_INSTANT = InstantUtils.findGetInstantMethod(ILoggingEvent.class);
+    private static final int INITIAL_UTF8_BUFFER_CAPACITY = 1024;
+    // appending reserves up to 3 bytes per char, so this retains a buffer that has encoded an event of about 21K chars
+    private static final int MAX_UTF8_BUFFER_CAPACITY = 64 * 1024;
+    private static final FieldWriter<ILoggingEvent> LOG_LEVEL = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeLogLevel(builder, event.getLevel().toString(), context);
+        }
+    };
+    private static final FieldWriter<ILoggingEvent> THREAD_NAME = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeThreadName(builder, event.getThreadName(), context);
+        }
+    };
+    private static final FieldWriter<ILoggingEvent> LOGGER_NAME = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeLoggerName(builder, event.getLoggerName(), context);
+        }
+    };
+    private static final FieldWriter<ILoggingEvent> ORIGIN = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            StackTraceElement[] callerData = event.getCallerData();
+            if (callerData != null && callerData.length > 0) {
+                EcsJsonSerializer.serializeOrigin(builder, callerData[0], context);
+            }
+        }
+    };
     private boolean stackTraceAsArray = false;
     private String serviceName;
     private String serviceVersion;
@@ -53,11 +95,66 @@ public class EcsEncoder extends EncoderBase<ILoggingEvent> {
     private String eventDataset;
     private boolean includeMarkers = false;
     private ThrowableHandlingConverter throwableConverter = null;
-    private final ThrowableProxyConverter throwableProxyConverter = new ThrowableProxyConverter();
     private boolean includeOrigin;
+    private boolean nestedOutput;
     private final List<AdditionalField> additionalFields = new ArrayList<AdditionalField>();
+    // encode(ILoggingEvent) copies the bytes into an exactly sized array, so the buffer can be reused by the next event
+    private final ThreadLocal<Utf8Buffer> utf8Buffers = new ThreadLocal<Utf8Buffer>();
+    private char[] staticFields = EcsJsonSerializer.compileStaticFields(null, null, null, null, null, null);
+    private TimestampPrecision timestampPrecision = TimestampPrecision.MILLIS;
+    private StackTraceCache stackTraceCache;
+    private int maxStackTraceDepth;
+    private int maxStackTraceBytes;
+    private String excludedFramePackages;
+    private int errorGroupingKeyFrames;
+    private boolean errorGroupingKeyIgnoreLineNumbers;
+    private int stackTraceDedupWindowSeconds;
+    private StackTraceOptions stackTraceOptions = StackTraceOptions.DEFAULT;
+    private int maxEventBytes;
+    private int maxMessageLength;
+    private int maxMdcValueLength;
+    private EventSizeLimits eventSizeLimits = EventSizeLimits.DEFAULT;
     private OutputStream os;
     protected Layout<ILoggingEvent> messageLayout;
+    private final FieldWriter<ILoggingEvent> message = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            serializeMessage(event, builder, context);
+        }
+    };
+    private final FieldWriter<ILoggingEvent> mdc = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            EcsJsonSerializer.serializeMDC(builder, event.getMDCPropertyMap(), false, context);
+        }
+    };
+    private final FieldWriter<ILoggingEvent> markers = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            serializeMarkers(event, builder, context);
+        }
+    };
+    private final FieldWriter<ILoggingEvent> customFields = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            // custom fields are not nested as their keys are not written via the context
+            context.closeObjects(builder);
+            addCustomFields(event, builder);
+        }
+    };
+    private final FieldWriter<ILoggingEvent> exception = new FieldWriter<ILoggingEvent>() {
+        @Override
+        public void writeTo(StringBuilder builder, ILoggingEvent event, SerializationContext context) {
+            serializeException(event, builder, context);
+        }
+    };
+    private FieldWriterPlan<ILoggingEvent> fieldWriterPlan = compileFieldWriterPlan();
+    private final EventSerializer<ILoggingEvent> eventSerializer = new EventSerializer<ILoggingEvent>() {
+        @Override
+        public void serialize(StringBuilder builder, ILoggingEvent event) {
+            serializeEvent(builder, event);
+        }
+    };
 
     @Override
     public byte[] headerBytes() {
@@ -67,11 +164,45 @@ public class EcsEncoder extends EncoderBase<ILoggingEvent> {
     @Override
     public void start() {
         super.start();
-        throwableProxyConverter.start();
         if (throwableConverter != null) {
             throwableConverter.start();
         }
         eventDataset = EcsJsonSerializer.computeEventDataset(eventDataset, serviceName);
+        compileStaticFields();
+    }
+
+    /**
+     * Pre-renders the fields that are the same for every event.
+     * Called on {@link #start()} and when a setter changes one of the values after the encoder has been started.
+     */
+    private void compileStaticFields() {
+        staticFields = EcsJsonSerializer.compileStaticFields(serviceName, serviceVersion, serviceEnvironment, serviceNodeName,
+                eventDataset, additionalFields);
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
+    private FieldWriterPlan<ILoggingEvent> compileFieldWriterPlan() {
+        return FieldWriterPlan.<ILoggingEvent>builder()
+                .setNestedOutput(nestedOutput)
+                .setEventSizeLimits(eventSizeLimits)
+                .add("log", LOG_LEVEL)
+                .add(message)
+                .addStaticFields(staticFields)
+                .addIf(includeMarkers, markers)
+                .add("process", THREAD_NAME)
+                .add("log", LOGGER_NAME)
+                .add(mdc)
+                .addIf(includeOrigin, "log", ORIGIN)
+                // Allow subclasses to add custom fields. Calling this before the throwable serialization so we don't need to check for presence/absence of an ending comma.
+                .add(customFields)
+                .add("error", exception)
+                .build();
+    }
+
+    private void recompileStaticFieldsIfStarted() {
+        if (isStarted()) {
+            compileStaticFields();
+        }
     }
 
     /**
@@ -104,49 +235,165 @@ public class EcsEncoder extends EncoderBase<ILoggingEvent> {
 
     @Override
     public byte[] encode(ILoggingEvent event) {
-        StringBuilder builder = new StringBuilder(256);
-        EcsJsonSerializer.serializeObjectStart(builder, event.getTimeStamp());
-        EcsJsonSerializer.serializeLogLevel(builder, event.getLevel().toString());
-        serializeMessage(event, builder);
-        EcsJsonSerializer.serializeEcsVersion(builder);
-        serializeMarkers(event, builder);
-        EcsJsonSerializer.serializeServiceName(builder, serviceName);
-        EcsJsonSerializer.serializeServiceVersion(builder, serviceVersion);
-        EcsJsonSerializer.serializeServiceEnvironment(builder, serviceEnvironment);
-        EcsJsonSerializer.serializeServiceNodeName(builder, serviceNodeName);
-        EcsJsonSerializer.serializeEventDataset(builder, eventDataset);
-        EcsJsonSerializer.serializeThreadName(builder, event.getThreadName());
-        EcsJsonSerializer.serializeLoggerName(builder, event.getLoggerName());
-        EcsJsonSerializer.serializeAdditionalFields(builder, additionalFields);
-        EcsJsonSerializer.serializeMDC(builder, event.getMDCPropertyMap());
-        if (includeOrigin) {
-            StackTraceElement[] callerData = event.getCallerData();
-            if (callerData != null && callerData.length > 0) {
-                EcsJsonSerializer.serializeOrigin(builder, callerData[0]);
+        StringBuilder builder = EcsJsonSerializer.getEventStringBuilder();
+        try {
+            serializeEvent(builder, event);
+            if (VirtualThreads.isCurrentThreadVirtual()) {
+                // a buffer per virtual thread would hardly ever be reused
+                return Utf8Buffer.toUtf8Bytes(builder);
+            }
+            // encodes the chars in a single pass instead of going through builder.toString().getBytes(UTF_8)
+            Utf8Buffer buffer = utf8Buffers.get();
+            if (buffer == null || buffer.capacity() > MAX_UTF8_BUFFER_CAPACITY) {
+                buffer = new Utf8Buffer(INITIAL_UTF8_BUFFER_CAPACITY);
+                utf8Buffers.set(buffer);
             }
+            buffer.reset();
+            buffer.append(builder);
+            return buffer.toByteArray();
+        } finally {
+            EcsJsonSerializer.releaseEventStringBuilder(builder);
+        }
+    }
+
+    /**
+     * Encodes the events as newline-delimited JSON into a single array,
+     * so that a batch of events can be written with a single call.
+     *
+     * @param events the events to encode, see {@link java.util.Arrays#asList(Object[])} to encode an array
+     * @return the UTF-8 encoded events, one JSON object per line
+     */
+    public byte[] encode(Iterable<? extends ILoggingEvent> events) {
+        return EventBatchSerializer.toUtf8Bytes(events, eventSerializer);
+    }
+
+    EventSerializer<ILoggingEvent> getEventSerializer() {
+        return eventSerializer;
+    }
+
+    /**
+     * Serializes the event on the calling thread and appends it to the buffer as UTF-8.
+     */
+    void encode(ILoggingEvent event, Utf8Buffer buffer) {
+        StringBuilder builder = EcsJsonSerializer.getEventStringBuilder();
+        try {
+            serializeEvent(builder, event);
+            buffer.append(builder);
+        } finally {
+            EcsJsonSerializer.releaseEventStringBuilder(builder);
         }
-        // Allow subclasses to add custom fields. Calling this before the throwable serialization so we don't need to check for presence/absence of an ending comma.
-        addCustomFields(event, builder);
+    }
+
+    private void serializeEvent(StringBuilder builder, ILoggingEvent event) {
+        int objectStart = builder.length();
+        serializeObjectStart(event, builder);
+        fieldWriterPlan.writeEvent(builder, objectStart, event);
+    }
+
+    private void serializeException(ILoggingEvent event, StringBuilder builder, SerializationContext context) {
         IThrowableProxy throwableProxy = event.getThrowableProxy();
         if (throwableProxy != null) {
             if (throwableConverter != null) {
-                EcsJsonSerializer.serializeException(builder, throwableProxy.getClassName(), throwableProxy.getMessage(), throwableConverter.convert(event), stackTraceAsArray);
+                if (throwableProxy instanceof ThrowableProxy) {
+                    EcsJsonSerializer.serializeErrorGroupingKey(builder, ((ThrowableProxy) throwableProxy).getThrowable(), stackTraceOptions, context);
+                }
+                EcsJsonSerializer.serializeException(builder, throwableProxy.getClassName(), throwableProxy.getMessage(), throwableConverter.convert(event), stackTraceAsArray, context);
             } else if (throwableProxy instanceof ThrowableProxy) {
-                EcsJsonSerializer.serializeException(builder, ((ThrowableProxy) throwableProxy).getThrowable(), stackTraceAsArray);
+                EcsJsonSerializer.serializeException(builder, ((ThrowableProxy) throwableProxy).getThrowable(), stackTraceAsArray, stackTraceCache, stackTraceOptions, context);
             } else {
-                EcsJsonSerializer.serializeException(builder, throwableProxy.getClassName(), throwableProxy.getMessage(), throwableProxyConverter.convert(event), stackTraceAsArray);
+                serializeThrowableProxy(builder, throwableProxy, context);
+            }
+        }
+    }
+
+    /**
+     * Serializes the stack trace in the same format as logback's {@code ThrowableProxyConverter} ({@code %ex})
+     * without rendering it to a string first.
+     */
+    private void serializeThrowableProxy(StringBuilder builder, IThrowableProxy throwableProxy, SerializationContext context) {
+        EcsJsonSerializer.serializeStackTraceStart(builder, throwableProxy.getClassName(), throwableProxy.getMessage(), stackTraceAsArray, context);
+        serializeThrowableProxy(builder, null, 1, throwableProxy, builder.length());
+        EcsJsonSerializer.serializeStackTraceEnd(builder, stackTraceAsArray);
+        builder.append(',');
+    }
+
+    /**
+     * @return {@code false} if the stack trace has been truncated because it exceeds {@code maxStackTraceBytes}
+     */
+    private boolean serializeThrowableProxy(StringBuilder builder, String caption, int indent, IThrowableProxy throwableProxy, int start) {
+        if (stackTraceOptions.isOverBudget(builder, start)) {
+            EcsJsonSerializer.serializeStackTraceTruncated(builder, stackTraceAsArray);
+            return false;
+        }
+        String firstLine = throwableProxy.getClassName() + ": " + throwableProxy.getMessage();
+        EcsJsonSerializer.serializeStackTraceLine(builder, indent - 1, caption != null ? caption + firstLine : firstLine, stackTraceAsArray);
+        StackTraceElementProxy[] stepArray = throwableProxy.getStackTraceElementProxyArray();
+        int commonFrames = Math.max(throwableProxy.getCommonFrames(), 0);
+        int end = stepArray.length - commonFrames;
+        int maxDepth = stackTraceOptions.getMaxStackTraceDepth();
+        int serialized = 0;
+        int excluded = 0;
+        int i = 0;
+        for (; i < end && serialized < maxDepth; i++) {
+            StackTraceElement element = stepArray[i].getStackTraceElement();
+            if (stackTraceOptions.isExcluded(element)) {
+                excluded++;
+                continue;
+            }
+            if (stackTraceOptions.isOverBudget(builder, start)) {
+                EcsJsonSerializer.serializeStackTraceTruncated(builder, stackTraceAsArray);
+                return false;
+            }
+            if (excluded > 0) {
+                EcsJsonSerializer.serializeStackTraceLine(builder, indent, "... " + excluded + " frames excluded", stackTraceAsArray);
+                excluded = 0;
+            }
+            EcsJsonSerializer.serializeStackTraceElement(builder, indent, element, stackTraceAsArray);
+            serialized++;
+        }
+        if (excluded > 0) {
+            EcsJsonSerializer.serializeStackTraceLine(builder, indent, "... " + excluded + " frames excluded", stackTraceAsArray);
+        }
+        if (i < end) {
+            EcsJsonSerializer.serializeStackTraceLine(builder, indent, "... " + (end - i) + " more", stackTraceAsArray);
+        }
+        if (commonFrames > 0) {
+            EcsJsonSerializer.serializeStackTraceLine(builder, indent, "... " + commonFrames + " common frames omitted", stackTraceAsArray);
+        }
+        IThrowableProxy[] suppressed = throwableProxy.getSuppressed();
+        if (suppressed != null) {
+            for (IThrowableProxy current : suppressed) {
+                if (!serializeThrowableProxy(builder, "Suppressed: ", indent + 1, current, start)) {
+                    return false;
+                }
+            }
+        }
+        IThrowableProxy cause = throwableProxy.getCause();
+        if (cause != null) {
+            return serializeThrowableProxy(builder, "Caused by: ", indent, cause, start);
+        }
+        return true;
+    }
+
+    private void serializeObjectStart(ILoggingEvent event, StringBuilder builder) {
+        long timeStamp = event.getTimeStamp();
+        if (timestampPrecision == TimestampPrecision.MILLIS) {
+            EcsJsonSerializer.serializeObjectStart(builder, timeStamp);
+        } else {
+            // logback 1.3+ captures the timestamp as an Instant
+            int nanoOfSecond = InstantUtils.getNanoOfSecond(GET_INSTANT, event);
+            if (nanoOfSecond < 0) {
+                nanoOfSecond = InstantUtils.getNanoOfSecond(timeStamp);
             }
+            EcsJsonSerializer.serializeObjectStart(builder, InstantUtils.getEpochSecond(timeStamp), nanoOfSecond, timestampPrecision);
         }
-        EcsJsonSerializer.serializeObjectEnd(builder);
-        // all these allocations kinda hurt
-        return builder.toString().getBytes(UTF_8);
     }
 
-    private void serializeMessage(ILoggingEvent event, StringBuilder builder) {
+    private void serializeMessage(ILoggingEvent event, StringBuilder builder, SerializationContext context) {
         if (messageLayout == null) {
-            EcsJsonSerializer.serializeFormattedMessage(builder, event.getFormattedMessage());
+            EcsJsonSerializer.serializeFormattedMessage(builder, event.getFormattedMessage(), context);
         } else {
-            EcsJsonSerializer.serializeFormattedMessage(builder, messageLayout.doLayout(event));
+            EcsJsonSerializer.serializeFormattedMessage(builder, messageLayout.doLayout(event), context);
         }
     }
 
@@ -158,10 +405,10 @@ public class EcsEncoder extends EncoderBase<ILoggingEvent> {
     protected void addCustomFields(ILoggingEvent event, StringBuilder builder) {
     }
 
-    private void serializeMarkers(ILoggingEvent event, StringBuilder builder) {
+    private void serializeMarkers(ILoggingEvent event, StringBuilder builder, SerializationContext context) {
         Marker marker = event.getMarker();
-        if (includeMarkers && marker != null) {
-            EcsJsonSerializer.serializeTagStart(builder);
+        if (marker != null) {
+            EcsJsonSerializer.serializeTagStart(builder, context);
             serializeMarker(builder, marker);
             EcsJsonSerializer.serializeTagEnd(builder);
         }
@@ -184,38 +431,171 @@ public class EcsEncoder extends EncoderBase<ILoggingEvent> {
 
     public void setServiceName(String serviceName) {
         this.serviceName = serviceName;
+        recompileStaticFieldsIfStarted();
     }
 
     public void setServiceVersion(String serviceVersion) {
         this.serviceVersion = serviceVersion;
+        recompileStaticFieldsIfStarted();
     }
 
     public void setServiceEnvironment(String serviceEnvironment) {
         this.serviceEnvironment = serviceEnvironment;
+        recompileStaticFieldsIfStarted();
     }
 
     public void setServiceNodeName(String serviceNodeName) {
         this.serviceNodeName = serviceNodeName;
+        recompileStaticFieldsIfStarted();
     }
 
     public void setIncludeMarkers(boolean includeMarkers) {
         this.includeMarkers = includeMarkers;
+        fieldWriterPlan = compileFieldWriterPlan();
     }
 
     public void setStackTraceAsArray(boolean stackTraceAsArray) {
         this.stackTraceAsArray = stackTraceAsArray;
     }
 
+    /**
+     * Caches up to the given number of serialized stack traces so that exceptions which are logged repeatedly
+     * don't have to be rendered each time. Disabled by default ({@code 0}).
+     * Not applicable when a custom {@code throwableConverter} is configured.
+     */
+    public void setStackTraceCacheSize(int stackTraceCacheSize) {
+        this.stackTraceCache = StackTraceCache.createIfEnabled(stackTraceCacheSize);
+    }
+
+    public StackTraceCache getStackTraceCache() {
+        return stackTraceCache;
+    }
+
+    /**
+     * The maximum number of frames per exception, {@code 0} (default) for no limit.
+     */
+    public void setMaxStackTraceDepth(int maxStackTraceDepth) {
+        this.maxStackTraceDepth = maxStackTraceDepth;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * The approximate maximum size of the serialized stack trace, {@code 0} (default) for no limit.
+     */
+    public void setMaxStackTraceBytes(int maxStackTraceBytes) {
+        this.maxStackTraceBytes = maxStackTraceBytes;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * A comma-separated list of class name prefixes of stack trace frames to exclude, such as {@code sun.reflect,org.junit}.
+     */
+    public void setExcludedFramePackages(String excludedFramePackages) {
+        this.excludedFramePackages = excludedFramePackages;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * The number of top frames of the exception and each of its causes that are hashed into an {@code error.grouping_key}.
+     * {@code 0} (default) omits the key.
+     */
+    public void setErrorGroupingKeyFrames(int errorGroupingKeyFrames) {
+        this.errorGroupingKeyFrames = errorGroupingKeyFrames;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * Excludes line numbers from the {@code error.grouping_key} so that it doesn't change when unrelated lines are added or removed.
+     */
+    public void setErrorGroupingKeyIgnoreLineNumbers(boolean errorGroupingKeyIgnoreLineNumbers) {
+        this.errorGroupingKeyIgnoreLineNumbers = errorGroupingKeyIgnoreLineNumbers;
+        compileStackTraceOptions();
+    }
+
+    /**
+     * If positive, a stack trace is only serialized the first time it occurs within a window of the given number of seconds.
+     * Further occurrences only contain the {@code error.stack_trace_hash} and the {@code error.stack_trace_repeat_count}.
+     * {@code 0} (default) always serializes the stack trace.
+     */
+    public void setStackTraceDedupWindowSeconds(int stackTraceDedupWindowSeconds) {
+        this.stackTraceDedupWindowSeconds = stackTraceDedupWindowSeconds;
+        compileStackTraceOptions();
+    }
+
+    private void compileStackTraceOptions() {
+        stackTraceOptions = StackTraceOptions.builder()
+                .setMaxStackTraceDepth(maxStackTraceDepth)
+                .setMaxStackTraceBytes(maxStackTraceBytes)
+                .setExcludedFramePackages(excludedFramePackages)
+                .setErrorGroupingKeyFrames(errorGroupingKeyFrames)
+                .setErrorGroupingKeyIgnoreLineNumbers(errorGroupingKeyIgnoreLineNumbers)
+                .setStackTraceDedupWindowSeconds(stackTraceDedupWindowSeconds)
+                .build();
+    }
+
+    /**
+     * The maximum size of an event in UTF-8 bytes, {@code 0} (default) for no limit.
+     * Fields that don't fit are shrunk by truncating their longest string values, or dropped.
+     */
+    public void setMaxEventBytes(int maxEventBytes) {
+        this.maxEventBytes = maxEventBytes;
+        compileEventSizeLimits();
+    }
+
+    /**
+     * The maximum size of the {@code message} in UTF-8 bytes, {@code 0} (default) for no limit.
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+        compileEventSizeLimits();
+    }
+
+    /**
+     * The maximum size of each MDC value in UTF-8 bytes, {@code 0} (default) for no limit.
+     */
+    public void setMaxMdcValueLength(int maxMdcValueLength) {
+        this.maxMdcValueLength = maxMdcValueLength;
+        compileEventSizeLimits();
+    }
+
+    private void compileEventSizeLimits() {
+        eventSizeLimits = EventSizeLimits.builder()
+                .setMaxEventBytes(maxEventBytes)
+                .setMaxMessageLength(maxMessageLength)
+                .setMaxMdcValueLength(maxMdcValueLength)
+                .build();
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
+    /**
+     * Writes dotted field names, like {@code log.level}, as nested objects, like {@code {"log":{"level":...}}}.
+     */
+    public void setNestedOutput(boolean nestedOutput) {
+        this.nestedOutput = nestedOutput;
+        fieldWriterPlan = compileFieldWriterPlan();
+    }
+
     public void setIncludeOrigin(boolean includeOrigin) {
         this.includeOrigin = includeOrigin;
+        fieldWriterPlan = compileFieldWriterPlan();
     }
 
     public void addAdditionalField(AdditionalField pair) {
         this.additionalFields.add(pair);
+        recompileStaticFieldsIfStarted();
     }
 
     public void setEventDataset(String eventDataset) {
         this.eventDataset = eventDataset;
+        recompileStaticFieldsIfStarted();
+    }
+
+    /**
+     * The precision of the {@code @timestamp}: {@code millis} (default), {@code micros} or {@code nanos}.
+     * Sub-millisecond precision requires logback 1.3+.
+     */
+    public void setTimestampPrecision(String timestampPrecision) {
+        this.timestampPrecision = TimestampPrecision.parse(timestampPrecision);
     }
 
     public void setThrowableConverter(ThrowableHandlingConverter throwableConverter) {
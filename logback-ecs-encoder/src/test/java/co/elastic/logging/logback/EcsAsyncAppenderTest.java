@@ -0,0 +1,167 @@
+/*-
+ * #%L
+ * Java ECS logging
+ * %%
+ * Copyright (C) 2019 - 2026 Elastic and contributors
+ * %%
+ * Licensed to Elasticsearch B.V. under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch B.V. licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+package co.elastic.logging.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EcsAsyncAppenderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LoggerContext context;
+    private Logger logger;
+    private EcsAsyncAppender appender;
+    private File logFile;
+
+    @BeforeEach
+    void setUp(@TempDir Path tempDir) {
+        logFile = tempDir.resolve("logs").resolve("app.json").toFile();
+        context = new LoggerContext();
+        EcsEncoder encoder = new EcsEncoder();
+        encoder.setContext(context);
+        encoder.setServiceName("test");
+        appender = new EcsAsyncAppender();
+        appender.setContext(context);
+        appender.setName("async");
+        appender.setEncoder(encoder);
+        appender.setFile(logFile.getPath());
+        appender.setBufferSize(64);
+        appender.setMaxBatchSize(16);
+        logger = context.getLogger(getClass());
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        appender.stop();
+        context.stop();
+        MDC.clear();
+    }
+
+    @Test
+    void testWritesEventsOfAllThreads() throws Exception {
+        appender.setWaitStrategy("yielding");
+        appender.start();
+        assertWritesEventsOfAllThreads();
+    }
+
+    @Test
+    void testSerializeInCallingThread() throws Exception {
+        appender.setSerializeInCallingThread(true);
+        appender.start();
+        assertWritesEventsOfAllThreads();
+    }
+
+    private void assertWritesEventsOfAllThreads() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String threadName = "producer-" + t;
+            Thread thread = new Thread(() -> {
+                MDC.put("producer", threadName);
+                for (int i = 0; i < 1000; i++) {
+                    logger.info("{} message {}", threadName, i);
+                }
+            }, threadName);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        appender.stop();
+
+        List<String> lines = Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(4000);
+        Set<String> messages = new HashSet<>();
+        for (String line : lines) {
+            JsonNode json = objectMapper.readTree(line);
+            // the thread name and MDC are captured on the logging thread
+            assertThat(json.get("message").textValue()).startsWith(json.get("process.thread.name").textValue());
+            assertThat(json.get("producer").textValue()).isEqualTo(json.get("process.thread.name").textValue());
+            messages.add(json.get("message").textValue());
+        }
+        assertThat(messages).hasSize(4000);
+        assertThat(appender.getDroppedEvents()).isZero();
+    }
+
+    @Test
+    void testBlockingWaitStrategy() throws Exception {
+        appender.setWaitStrategy("blocking");
+        appender.start();
+        for (int i = 0; i < 500; i++) {
+            logger.info("message {}", i);
+        }
+        appender.stop();
+
+        List<String> lines = Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(500);
+        assertThat(objectMapper.readTree(lines.get(499)).get("message").textValue()).isEqualTo("message 499");
+    }
+
+    @Test
+    void testAppendAfterStop() {
+        appender.start();
+        appender.stop();
+        // an append that has passed the isStarted check right before stop must not fail
+        appender.append(new LoggingEvent(getClass().getName(), logger, Level.INFO, "message", null, null));
+
+        assertThat(appender.getDroppedEvents()).isEqualTo(1);
+    }
+
+    @Test
+    void testDoesNotStartWithoutEncoder() {
+        appender.setEncoder(null);
+        appender.start();
+
+        assertThat(appender.isStarted()).isFalse();
+    }
+
+    @Test
+    void testInvalidOptions() {
+        assertThatThrownBy(() -> appender.setWaitStrategy("foo")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> appender.setDropPolicy("foo")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -24,12 +24,24 @@
  */
 package co.elastic.logging.logback;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEventVO;
 import co.elastic.logging.AdditionalField;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class EcsEncoderTest extends AbstractEcsEncoderTest {
 
@@ -57,6 +69,44 @@ public class EcsEncoderTest extends AbstractEcsEncoderTest {
         appender.start();
     }
 
+    @Test
+    void testSerializedThrowableProxy() throws IOException {
+        RuntimeException exception = new RuntimeException("foo", new IllegalStateException("bar"));
+        exception.addSuppressed(new IllegalArgumentException());
+        // a deserialized event carries a ThrowableProxyVO instead of a ThrowableProxy
+        ILoggingEvent event = LoggingEventVO.build(new LoggingEvent(getClass().getName(), logger, Level.ERROR, "test", exception, null));
+        ThrowableProxyConverter throwableProxyConverter = new ThrowableProxyConverter();
+        throwableProxyConverter.start();
+        String expected = throwableProxyConverter.convert(event);
+
+        EcsEncoder encoder = new EcsEncoder();
+        encoder.start();
+        assertThat(objectMapper.readTree(encoder.encode(event)).get("error.stack_trace").textValue()).isEqualTo(expected);
+
+        encoder.setStackTraceAsArray(true);
+        assertThat(StreamSupport.stream(objectMapper.readTree(encoder.encode(event)).get("error.stack_trace").spliterator(), false)
+                .map(JsonNode::textValue)
+                .collect(Collectors.joining(System.lineSeparator(), "", System.lineSeparator())))
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void testEncodeBatch() throws IOException {
+        ILoggingEvent first = new LoggingEvent(getClass().getName(), logger, Level.INFO, "Example Message", null, null);
+        ILoggingEvent second = new LoggingEvent(getClass().getName(), logger, Level.WARN, "Second Message", null, null);
+        EcsEncoder encoder = new EcsEncoder();
+        encoder.setServiceName("test");
+        encoder.start();
+
+        String batch = new String(encoder.encode(Arrays.asList(first, second)), StandardCharsets.UTF_8);
+
+        assertThat(batch).isEqualTo(new String(encoder.encode(first), StandardCharsets.UTF_8) + new String(encoder.encode(second), StandardCharsets.UTF_8));
+        String[] lines = batch.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).get("message").textValue()).isEqualTo("Example Message");
+        assertThat(objectMapper.readTree(lines[1]).get("log.level").textValue()).isEqualTo("WARN");
+    }
+
     @Override
     public JsonNode getLastLogLine() throws IOException {
         return objectMapper.readTree(appender.getBytes());